@@ -32,6 +32,14 @@ android {
     buildFeatures {
         viewBinding = true
     }
+    testOptions {
+        // android.util.Log e afins devolvem valores padrão nos testes de JVM
+        unitTests.isReturnDefaultValues = true
+        // Benchmarks e testes de carga só com ./gradlew test -Pbenchmarks
+        unitTests.all {
+            it.systemProperty("pisaude.benchmarks", project.hasProperty("benchmarks").toString())
+        }
+    }
 }
 
 dependencies {
@@ -46,6 +54,7 @@ dependencies {
     implementation(libs.volley)
     implementation(libs.gridlayout)
     testImplementation(libs.junit)
+    testImplementation(libs.json)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
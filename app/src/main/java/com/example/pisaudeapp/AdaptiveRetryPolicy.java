@@ -0,0 +1,45 @@
+package com.example.pisaudeapp;
+
+import com.android.volley.RetryPolicy;
+import com.android.volley.VolleyError;
+
+// RetryPolicy do Volley com o timeout inicial vindo das latências
+// observadas (CircuitBreaker.getAdaptiveTimeoutMs) em vez de um valor fixo.
+// Não repete quando o circuito está aberto.
+public class AdaptiveRetryPolicy implements RetryPolicy {
+    private final CircuitBreaker breaker;
+    private final int maxRetries;
+    private final float backoffMultiplier;
+    private int currentTimeoutMs;
+    private int currentRetryCount = 0;
+
+    public AdaptiveRetryPolicy(int maxRetries) {
+        this(CircuitBreaker.getInstance(), maxRetries, 1f);
+    }
+
+    public AdaptiveRetryPolicy(CircuitBreaker breaker, int maxRetries, float backoffMultiplier) {
+        this.breaker = breaker;
+        this.maxRetries = maxRetries;
+        this.backoffMultiplier = backoffMultiplier;
+        this.currentTimeoutMs = breaker.getAdaptiveTimeoutMs();
+    }
+
+    @Override
+    public int getCurrentTimeout() {
+        return currentTimeoutMs;
+    }
+
+    @Override
+    public int getCurrentRetryCount() {
+        return currentRetryCount;
+    }
+
+    @Override
+    public void retry(VolleyError error) throws VolleyError {
+        currentRetryCount++;
+        if (currentRetryCount > maxRetries || breaker.isOpen()) {
+            throw error;
+        }
+        currentTimeoutMs += (int) (currentTimeoutMs * backoffMultiplier);
+    }
+}
@@ -1,40 +1,67 @@
 package com.example.pisaudeapp;
 
 import android.app.Activity;
-import android.app.PendingIntent;
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
 import android.telephony.SmsManager;
 import android.util.Log;
 import android.widget.Toast;
 
-import com.android.volley.DefaultRetryPolicy;
 import com.android.volley.Request;
-import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonArrayRequest;
-import com.android.volley.toolbox.StringRequest;
-import com.android.volley.toolbox.Volley;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ApiService {
     private Context context;
-    private RequestQueue requestQueue;
-    private SmsManager smsManager;
+    private SmsStatusBuffer statusBuffer;
+    private SyncCheckpointStore checkpointStore;
+    private PatientStore patientStore;
+    private Handler mainHandler;
+    // Uma só thread para o disco: leituras e gravações do PatientStore, do
+    // checkpoint e do cache de respostas correm por ordem, nunca em paralelo
+    private final ExecutorService storeExecutor;
+    // Envio em massa manual (sendBulkSMS), um de cada vez
+    private final ExecutorService bulkSendExecutor;
+
+    // Single-flight de getPatients: quem chega com um pedido em curso só
+    // acrescenta o callback e recebe o mesmo resultado
+    private final Object patientsLock = new Object();
+    private List<ApiCallback> patientsWaiters;
+    // Última lista completa, reaproveitada durante patientsSnapshotTtlMs
+    private List<Patient> patientsSnapshot;
+    private long patientsSnapshotAt = 0;
+    private long patientsSnapshotTtlMs;
+    // Lista do disco já entregue, revalidação com o servidor em curso
+    private boolean patientsRevalidating = false;
+    private ResponseDiskCache responseCache;
 
     // URL base da API
-    private static final String BASE_URL = "http://10.101.10.178:5000";
+    static final String BASE_URL = "http://10.101.10.178:5000";
+    private static final String OBSERVATION_ENDPOINT = "/api/observation";
+
+    // Sincronização incremental
+    private static final long FULL_RESYNC_INTERVAL_MS = 6 * 60 * 60 * 1000L; // 6 horas
+    private static final long SYNC_OVERLAP_MS = 60 * 1000L; // margem para relógios/transações
+
+    // Validade da lista em memória (0 desativa)
+    private static final String PREFS = "AppPrefs";
+    private static final String KEY_SNAPSHOT_TTL = "patients_snapshot_ttl_ms";
+    public static final long DEFAULT_SNAPSHOT_TTL_MS = 60 * 1000L;
+    // Resposta em disco mais velha do que isto não é mostrada antes de revalidar
+    private static final long MAX_STALE_MS = 24 * 60 * 60 * 1000L;
+    // Limite de páginas por busca, contra servidores que repetem a mesma página
+    private static final int MAX_PAGES = 1000;
 
     // Interface para callback
     public interface ApiCallback {
@@ -51,6 +78,56 @@ public class ApiService {
         void onStatusUpdated(boolean success, String message);
     }
 
+    // Callback da busca paginada: cada página é entregue assim que chega
+    public interface PageCallback {
+        void onPage(List<Patient> page, int pageIndex, boolean hasMore);
+        void onComplete(int totalPatients);
+        void onError(String error);
+    }
+
+    // Resultado de um GET em /api/observation (completo ou uma página)
+    public static class PatientPage {
+        public final List<Patient> patients;   // Pacientes válidos
+        public final int recordCount;          // Registos recebidos (válidos ou não)
+        public final String nextCursor;        // null quando o servidor pagina por offset
+        public final boolean notModified;      // 304 em resposta ao If-None-Match
+        public final String etag;
+        public final long serverDate;          // Header Date do servidor (0 se ausente)
+        public final List<Integer> deletedIds; // Tombstones ("deleted": true) desta página
+        public final boolean tombstones;       // O servidor anuncia tombstones no feed incremental
+        public final String digest;            // Hash do corpo recebido (null sem corpo)
+
+        public PatientPage(List<Patient> patients, int recordCount, String nextCursor) {
+            this(patients, recordCount, nextCursor, false, null, 0);
+        }
+
+        public PatientPage(List<Patient> patients, int recordCount, String nextCursor,
+                           boolean notModified, String etag, long serverDate) {
+            this(patients, recordCount, nextCursor, notModified, etag, serverDate,
+                    new ArrayList<Integer>(), false);
+        }
+
+        public PatientPage(List<Patient> patients, int recordCount, String nextCursor,
+                           boolean notModified, String etag, long serverDate,
+                           List<Integer> deletedIds, boolean tombstones) {
+            this(patients, recordCount, nextCursor, notModified, etag, serverDate, deletedIds, tombstones, null);
+        }
+
+        public PatientPage(List<Patient> patients, int recordCount, String nextCursor,
+                           boolean notModified, String etag, long serverDate,
+                           List<Integer> deletedIds, boolean tombstones, String digest) {
+            this.patients = patients;
+            this.recordCount = recordCount;
+            this.nextCursor = nextCursor;
+            this.notModified = notModified;
+            this.etag = etag;
+            this.serverDate = serverDate;
+            this.deletedIds = deletedIds;
+            this.tombstones = tombstones;
+            this.digest = digest;
+        }
+    }
+
     // Classe Patient atualizada com ID
     public static class Patient {
         public int id; // ID do paciente no banco de dados
@@ -59,6 +136,8 @@ public class ApiService {
         public String gender;
         public String textMessageDescription;
         public String stateDescription;
+        // Tombstone do feed incremental: o paciente saiu da lista
+        public boolean deleted;
 
         public Patient(int id, String fullname, String contact, String gender,
                        String stateDescription, String textMessageDescription) {
@@ -86,40 +165,152 @@ public class ApiService {
         }
     }
 
-    public ApiService(Context context) {
+    private static ApiService instance;
+
+    // Uma instância por processo; os pedidos vão para a fila partilhada do NetworkClient
+    public static synchronized ApiService getInstance(Context context) {
+        if (instance == null) {
+            instance = new ApiService(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ApiService(Context context) {
         this.context = context;
-        this.requestQueue = Volley.newRequestQueue(context.getApplicationContext());
-        this.smsManager = SmsManager.getDefault();
+        this.statusBuffer = SmsStatusBuffer.getInstance(context);
+        this.checkpointStore = new SyncCheckpointStore(context.getApplicationContext());
+        this.patientStore = PatientStore.getInstance(context);
+        this.responseCache = ResponseDiskCache.getInstance(context);
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.storeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "api-store");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        this.bulkSendExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "bulk-sms"));
+        this.patientsSnapshotTtlMs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+                .getLong(KEY_SNAPSHOT_TTL, DEFAULT_SNAPSHOT_TTL_MS);
+    }
+
+    // Grava a validade da lista em memória e aplica-a já
+    public static void updateSnapshotTtl(Context context, long ttlMs) {
+        try {
+            context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+                    .edit().putLong(KEY_SNAPSHOT_TTL, Math.max(0, ttlMs)).apply();
+            ApiService service = getInstance(context);
+            synchronized (service.patientsLock) {
+                service.patientsSnapshotTtlMs = Math.max(0, ttlMs);
+            }
+        } catch (Exception e) {
+            Log.e("API_DEBUG", "❌ Erro ao atualizar validade da lista", e);
+        }
     }
 
-    // Buscar pacientes da API
+    // Esquecer a lista em memória (próximo getPatients vai à rede)
+    public void invalidatePatientsSnapshot() {
+        synchronized (patientsLock) {
+            patientsSnapshot = null;
+        }
+    }
+
+    // Buscar pacientes da API.
+    // Chamadas sobrepostas partilham um único pedido e um único parse; dentro
+    // da validade da última lista completa não há tráfego de rede.
+    // O callback chega sempre na thread principal.
     public void getPatients(final ApiCallback callback) {
-        String url = BASE_URL + "/api/observation";
+        synchronized (patientsLock) {
+            long now = System.currentTimeMillis();
+            if (patientsSnapshot != null && now - patientsSnapshotAt < patientsSnapshotTtlMs) {
+                final List<Patient> cached = new ArrayList<>(patientsSnapshot);
+                Log.d("API_DEBUG", "📦 " + cached.size() + " pacientes da memória (" +
+                        ((now - patientsSnapshotAt) / 1000) + "s)");
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuccess(cached);
+                    }
+                });
+                return;
+            }
+            if (patientsWaiters != null || patientsRevalidating) {
+                Log.d("API_DEBUG", "🔗 Pedido de pacientes já em curso, aguardando o mesmo resultado");
+                if (patientsWaiters == null) {
+                    patientsWaiters = new ArrayList<>();
+                }
+                patientsWaiters.add(callback);
+                return;
+            }
+            patientsWaiters = new ArrayList<>();
+            patientsWaiters.add(callback);
+        }
+        fetchPatients();
+    }
+
+    // Stale-while-revalidate: se houver resposta em disco, entrega-a logo e
+    // revalida em segundo plano (If-None-Match / If-Modified-Since); sem ela,
+    // espera pela rede
+    private void fetchPatients() {
+        storeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String url = BASE_URL + OBSERVATION_ENDPOINT;
+                ResponseDiskCache.Entry entry = responseCache.get(url);
+                if (entry != null && entry.ageMs() < MAX_STALE_MS) {
+                    byte[] body = responseCache.readBody(entry);
+                    if (body != null) {
+                        try {
+                            final PatientPage page = PatientStreamRequest.parseCached(entry, body);
+                            Log.d("API_DEBUG", "💾 " + page.patients.size() + " pacientes do disco (" +
+                                    (entry.ageMs() / 1000) + "s), revalidando");
+                            mainHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    completePatients(page.patients, null);
+                                    // A resposta da rede chega depois deste Runnable
+                                    synchronized (patientsLock) {
+                                        patientsRevalidating = true;
+                                    }
+                                }
+                            });
+                        } catch (IOException e) {
+                            Log.w("API_DEBUG", "⚠️ Resposta em disco ilegível", e);
+                            responseCache.remove(url);
+                            entry = null;
+                        }
+                    }
+                }
+                requestPatients(url, entry);
+            }
+        });
+    }
+
+    private void requestPatients(String url, ResponseDiskCache.Entry cachedEntry) {
         Log.d("API_DEBUG", "🔗 Conectando em: " + url);
 
-        JsonArrayRequest jsonArrayRequest = new JsonArrayRequest(
-                Request.Method.GET,
+        // Parse em streaming: sem JSONArray intermediário e fora da thread principal
+        PatientStreamRequest patientRequest = new PatientStreamRequest(
                 url,
-                null,
-                new Response.Listener<JSONArray>() {
+                new Response.Listener<PatientPage>() {
                     @Override
-                    public void onResponse(JSONArray response) {
+                    public void onResponse(PatientPage page) {
                         try {
-                            Log.d("API_DEBUG", "✅ Resposta recebida, tamanho: " + response.length());
-
-                            if (response.length() == 0) {
-                                Log.w("API_DEBUG", "⚠️ Resposta vazia");
-                                callback.onSuccess(new ArrayList<>());
-                                return;
+                            List<Patient> patients = page.patients;
+                            if (page.notModified) {
+                                // 304: corpo do disco, já gravado no armazenamento local
+                                Log.d("API_DEBUG", "📦 304 Not Modified - " + patients.size() + " pacientes do disco");
+                            } else {
+                                if (patients.isEmpty()) {
+                                    Log.w("API_DEBUG", "⚠️ Resposta vazia");
+                                } else {
+                                    Log.d("API_DEBUG", "📊 " + patients.size() + " pacientes parseados");
+                                }
+                                persistSnapshot(patients);
                             }
-
-                            List<Patient> patients = parsePatients(response);
-                            Log.d("API_DEBUG", "📊 " + patients.size() + " pacientes parseados");
-                            callback.onSuccess(patients);
+                            completePatients(patients, null);
 
                         } catch (Exception e) {
                             Log.e("API_DEBUG", "💥 Erro inesperado", e);
-                            callback.onError("Erro inesperado: " + e.getMessage());
+                            completePatients(null, "Erro inesperado: " + e.getMessage());
                         }
                     }
                 },
@@ -129,83 +320,360 @@ public class ApiService {
                         if (error.networkResponse != null && error.networkResponse.statusCode == 200) {
                             Log.w("API_DEBUG", "⚠️ API retornou 200 mas Volley reportou erro");
                             try {
-                                String responseBody = new String(error.networkResponse.data, "UTF-8");
-                                JSONArray jsonArray = new JSONArray(responseBody);
-                                List<Patient> patients = parsePatients(jsonArray);
-                                callback.onSuccess(patients);
+                                PatientPage page = PatientStreamRequest.parseBody(error.networkResponse);
+                                completePatients(page.patients, null);
                             } catch (Exception e) {
                                 Log.e("API_DEBUG", "❌ Não foi possível parsear resposta", e);
-                                callback.onSuccess(new ArrayList<>());
+                                completePatients(new ArrayList<>(), null);
                             }
                         } else {
                             String errorMsg = getVolleyErrorMessage(error);
                             Log.e("API_DEBUG", "💥 " + errorMsg);
-                            callback.onError("Falha na conexão: " + errorMsg);
+                            completePatients(null, "Falha na conexão: " + errorMsg);
                         }
                     }
                 }
         );
 
-        jsonArrayRequest.setRetryPolicy(new DefaultRetryPolicy(
-                15000,
-                1,
-                DefaultRetryPolicy.DEFAULT_BACKOFF_MULT
-        ));
+        patientRequest.setRetryPolicy(new AdaptiveRetryPolicy(1));
 
-        jsonArrayRequest.setShouldCache(false);
-        requestQueue.add(jsonArrayRequest);
+        // O cache do Volley fica desligado: a revalidação é feita pelo ResponseDiskCache
+        patientRequest.setShouldCache(false);
+        patientRequest.setResponseCache(responseCache, cachedEntry);
+        NetworkClient.getInstance(context).add(patientRequest);
     }
 
-    // Parse dos dados JSON com ID
-    private List<Patient> parsePatients(JSONArray jsonArray) throws JSONException {
-        List<Patient> patients = new ArrayList<>();
+    // Entrega o resultado do pedido em curso a todos os que esperavam por ele
+    // (na thread principal, onde o Volley entrega as respostas)
+    private void completePatients(List<Patient> patients, String error) {
+        List<ApiCallback> waiters;
+        synchronized (patientsLock) {
+            waiters = patientsWaiters;
+            patientsWaiters = null;
+            if (patients != null) {
+                patientsSnapshot = patients;
+                patientsSnapshotAt = System.currentTimeMillis();
+            } else if (patientsRevalidating && patientsSnapshot != null) {
+                // Falhou só a revalidação: quem esperava recebe a lista do disco
+                patients = patientsSnapshot;
+            }
+            patientsRevalidating = false;
+        }
+        if (waiters == null) {
+            return;
+        }
+        if (waiters.size() > 1) {
+            Log.d("API_DEBUG", "🔗 Resultado partilhado por " + waiters.size() + " pedidos");
+        }
+        for (ApiCallback waiter : waiters) {
+            try {
+                if (patients != null) {
+                    // Cada um recebe a sua lista; os Patient são partilhados
+                    waiter.onSuccess(new ArrayList<>(patients));
+                } else {
+                    waiter.onError(error);
+                }
+            } catch (Exception e) {
+                Log.e("API_DEBUG", "💥 Erro no callback de pacientes", e);
+            }
+        }
+    }
 
-        if (jsonArray == null) {
-            Log.w("API_DEBUG", "JSONArray é nulo");
-            return patients;
+    // Lista completa vinda da sincronização do ciclo: serve os getPatients seguintes
+    private void rememberPatients(List<Patient> patients) {
+        synchronized (patientsLock) {
+            patientsSnapshot = patients;
+            patientsSnapshotAt = System.currentTimeMillis();
         }
+    }
 
-        Log.d("API_DEBUG", "📋 Iniciando parse de " + jsonArray.length() + " itens");
+    // Buscar pacientes por páginas (limit/offset ou cursor X-Next-Cursor).
+    // A página seguinte é pedida antes de entregar a atual, para que o
+    // download continue enquanto quem chamou processa a página recebida.
+    public void getPatientsPaged(int pageSize, final PageCallback callback) {
+        final int[] delivered = {0};
+        fetchPage(pageSize, 0, null, 0, null, 0, new HashSet<String>(), new PageListener() {
+            @Override
+            public void onPage(PatientPage page, int pageIndex, boolean hasMore) {
+                delivered[0] += page.patients.size();
+                callback.onPage(page.patients, pageIndex, hasMore);
+                if (!hasMore) {
+                    callback.onComplete(delivered[0]);
+                }
+            }
 
-        for (int i = 0; i < jsonArray.length(); i++) {
-            try {
-                JSONObject patientJson = jsonArray.getJSONObject(i);
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
 
-                // Obter ID do paciente (assumindo que o campo é 'id' no JSON)
-                int id = patientJson.optInt("id", 0);
-                if (id == 0) {
-                    // Se não tiver 'id', tenta 'patientId' ou usa o índice como fallback
-                    id = patientJson.optInt("patientId", i + 1);
+    // Sincronização incremental usada pelo ciclo automático.
+    // Com checkpoint válido pede só o que mudou desde a última sincronização
+    // (updatedSince + If-None-Match), grava no PatientStore e entrega o
+    // conjunto local (um por contacto) numa única página. O incremental só é
+    // usado se o servidor anunciar tombstones (X-Delta-Tombstones): sem eles
+    // um paciente retirado da lista ficaria no armazenamento local e
+    // continuaria a receber SMS. Caso contrário (ou sem checkpoint, ou a cada
+    // FULL_RESYNC_INTERVAL_MS) faz a busca paginada completa antes de cada
+    // ciclo, entregando as páginas à medida que chegam.
+    // O acesso ao SQLite corre no storeExecutor; os callbacks chegam na principal.
+    public void syncPatients(final int pageSize, final PageCallback callback) {
+        storeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final SyncCheckpointStore.Checkpoint checkpoint = checkpointStore.get(OBSERVATION_ENDPOINT);
+                final long requestStart = System.currentTimeMillis();
+
+                boolean fullSync = checkpoint == null || !checkpoint.tombstones || patientStore.isEmpty() ||
+                        requestStart - checkpoint.lastFullSync > FULL_RESYNC_INTERVAL_MS;
+
+                if (fullSync) {
+                    syncFull(pageSize, requestStart, callback);
+                } else {
+                    syncDelta(pageSize, checkpoint, requestStart, callback);
                 }
+            }
+        });
+    }
 
-                String fullname = patientJson.optString("fullname", "");
-                String contact = patientJson.optString("contact", "");
-                String gender = patientJson.optString("gender", "M");
-                String textMessage = patientJson.optString("textMessageDescription", "");
-                String stateDescription = patientJson.optString("stateDescription", "");
-
-                // Debug do primeiro paciente
-                if (i == 0) {
-                    Log.d("API_DEBUG", "👤 Paciente exemplo: " +
-                            "ID: " + id +
-                            ", Nome: " + fullname +
-                            ", Contacto: " + contact +
-                            ", Género: " + gender);
+    private void syncFull(int pageSize, final long requestStart, final PageCallback callback) {
+        Log.d("API_SYNC", "🔁 Sincronização completa");
+        final List<Patient> fresh = new ArrayList<>();
+        final long[] serverDate = {0};
+        final boolean[] tombstones = {false};
+        fetchPage(pageSize, 0, null, 0, null, 0, new HashSet<String>(), new PageListener() {
+            @Override
+            public void onPage(PatientPage page, int pageIndex, boolean hasMore) {
+                if (pageIndex == 0) {
+                    serverDate[0] = page.serverDate;
+                    tombstones[0] = page.tombstones;
+                }
+                fresh.addAll(page.patients);
+                callback.onPage(page.patients, pageIndex, hasMore);
+
+                if (!hasMore) {
+                    final long since = (serverDate[0] > 0 ? serverDate[0] : requestStart) - SYNC_OVERLAP_MS;
+                    final String etag = pageIndex == 0 ? page.etag : null;
+
+                    // Checkpoint só depois de gravar, para nunca ficar à frente do disco;
+                    // onComplete só depois dos dois, para o ciclo seguinte ler o estado final
+                    storeExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                patientStore.replaceAll(fresh);
+                                rememberPatients(fresh);
+                                checkpointStore.put(OBSERVATION_ENDPOINT,
+                                        new SyncCheckpointStore.Checkpoint(since, etag, requestStart, tombstones[0]));
+                                Log.d("API_SYNC", "✅ Sincronização completa: " + fresh.size() + " pacientes");
+                            } catch (Exception e) {
+                                // Sem checkpoint novo: a próxima sincronização volta a ser completa
+                                Log.e("API_SYNC", "❌ Erro ao gravar pacientes localmente", e);
+                            }
+                            mainHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    callback.onComplete(fresh.size());
+                                }
+                            });
+                        }
+                    });
                 }
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
 
-                Patient patient = new Patient(id, fullname, contact, gender, stateDescription, textMessage);
-                if (patient.isValid()) {
-                    patients.add(patient);
+    private void syncDelta(int pageSize, final SyncCheckpointStore.Checkpoint checkpoint,
+                           final long requestStart, final PageCallback callback) {
+        Log.d("API_SYNC", "🔂 Sincronização incremental desde " + checkpoint.since);
+        final List<Patient> changed = new ArrayList<>();
+        final List<Integer> deleted = new ArrayList<>();
+        final long[] serverDate = {0};
+        final boolean[] untrusted = {false};
+        fetchPage(pageSize, 0, null, checkpoint.since, checkpoint.etag, 0, new HashSet<String>(), new PageListener() {
+            @Override
+            public void onPage(final PatientPage page, int pageIndex, boolean hasMore) {
+                if (pageIndex == 0) {
+                    serverDate[0] = page.serverDate;
+                    // O servidor deixou de anunciar tombstones: o delta não diz quem saiu
+                    untrusted[0] = !page.notModified && !page.tombstones;
+                }
+                if (page.notModified) {
+                    Log.d("API_SYNC", "📦 304 Not Modified - usando armazenamento local");
                 } else {
-                    Log.w("API_DEBUG", "⚠️ Paciente inválido ID " + id + ": contacto=" + contact);
+                    changed.addAll(page.patients);
+                    deleted.addAll(page.deletedIds);
+                }
+                if (hasMore) {
+                    return;
                 }
-            } catch (JSONException e) {
-                Log.e("API_DEBUG", "❌ Erro ao parsear paciente " + i, e);
+                if (untrusted[0]) {
+                    Log.w("API_SYNC", "⚠️ Resposta incremental sem tombstones, sincronização completa");
+                    syncFull(pageSize, requestStart, callback);
+                    return;
+                }
+
+                final long since = (serverDate[0] > 0 ? serverDate[0] : requestStart) - SYNC_OVERLAP_MS;
+                final String etag = page.notModified ? checkpoint.etag : (pageIndex == 0 ? page.etag : null);
+
+                storeExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        final List<Patient> snapshot;
+                        try {
+                            patientStore.merge(changed, deleted);
+                            checkpointStore.put(OBSERVATION_ENDPOINT,
+                                    new SyncCheckpointStore.Checkpoint(since, etag, checkpoint.lastFullSync, true));
+                            rememberPatients(patientStore.getAll());
+                            snapshot = patientStore.getUniqueByContact();
+                        } catch (final Exception e) {
+                            Log.e("API_SYNC", "❌ Erro ao gravar sincronização incremental", e);
+                            mainHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    callback.onError("Erro no armazenamento local: " + e.getMessage());
+                                }
+                            });
+                            return;
+                        }
+                        Log.d("API_SYNC", "✅ Sincronização incremental: " + changed.size() +
+                                " alterados, " + deleted.size() + " removidos, " + snapshot.size() +
+                                " contactos no armazenamento local");
+
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onPage(snapshot, 0, false);
+                                callback.onComplete(snapshot.size());
+                            }
+                        });
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
             }
+        });
+    }
+
+    // Lista completa vinda de getPatients: atualizar o armazenamento local
+    private void persistSnapshot(final List<Patient> patients) {
+        storeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    patientStore.replaceAll(patients);
+                } catch (Exception e) {
+                    Log.e("API_DEBUG", "❌ Erro ao gravar pacientes localmente", e);
+                }
+            }
+        });
+    }
+
+    // Ouvinte interno de páginas com os metadados da resposta
+    private interface PageListener {
+        void onPage(PatientPage page, int pageIndex, boolean hasMore);
+        void onError(String error);
+    }
+
+    // seenDigests: corpos já recebidos nesta busca, para detetar um servidor
+    // que ignora limit/offset e volta a mandar páginas que já mandou
+    private void fetchPage(final int pageSize, final int offset, final String cursor,
+                           final long updatedSince, final String etag,
+                           final int pageIndex, final Set<String> seenDigests, final PageListener listener) {
+        String url = BASE_URL + OBSERVATION_ENDPOINT + "?limit=" + pageSize;
+        if (cursor != null) {
+            try {
+                url += "&cursor=" + URLEncoder.encode(cursor, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                url += "&cursor=" + cursor;
+            }
+        } else {
+            url += "&offset=" + offset;
+        }
+        if (updatedSince > 0) {
+            url += "&updatedSince=" + updatedSince;
+        }
+        Log.d("API_DEBUG", "📄 Página " + pageIndex + ": " + url);
+
+        PatientStreamRequest pageRequest = new PatientStreamRequest(
+                url,
+                new Response.Listener<PatientPage>() {
+                    @Override
+                    public void onResponse(PatientPage page) {
+                        if (isRepeatedPage(page, seenDigests, cursor)) {
+                            // Página já recebida: o servidor não pagina. Já foi entregue,
+                            // por isso termina com uma página vazia
+                            Log.w("API_DEBUG", "⚠️ Página " + pageIndex + " repete uma anterior, busca terminada");
+                            page = new PatientPage(new ArrayList<Patient>(), 0, null,
+                                    false, null, page.serverDate);
+                        }
+                        // Mais registos que o limit: o servidor ignorou a paginação e mandou tudo
+                        boolean serverIgnoredLimit = page.nextCursor == null && page.recordCount > pageSize;
+                        boolean hasMore = !page.notModified && (page.nextCursor != null ||
+                                (!serverIgnoredLimit && page.recordCount == pageSize));
+                        if (hasMore && pageIndex + 1 >= MAX_PAGES) {
+                            Log.w("API_DEBUG", "⚠️ Limite de " + MAX_PAGES + " páginas atingido, busca terminada");
+                            hasMore = false;
+                        }
+
+                        Log.d("API_DEBUG", "📄 Página " + pageIndex + ": " + page.patients.size() +
+                                " pacientes (" + page.recordCount + " registos)" + (hasMore ? ", há mais" : ", última"));
+
+                        if (hasMore) {
+                            fetchPage(pageSize, offset + page.recordCount, page.nextCursor,
+                                    updatedSince, null, pageIndex + 1, seenDigests, listener);
+                        }
+
+                        try {
+                            listener.onPage(page, pageIndex, hasMore);
+                        } catch (Exception e) {
+                            Log.e("API_DEBUG", "💥 Erro ao processar página " + pageIndex, e);
+                        }
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        String errorMsg = getVolleyErrorMessage(error);
+                        Log.e("API_DEBUG", "💥 Página " + pageIndex + ": " + errorMsg);
+                        listener.onError("Falha na página " + pageIndex + ": " + errorMsg);
+                    }
+                }
+        );
+
+        // ETag só faz sentido na primeira página
+        if (etag != null && pageIndex == 0) {
+            pageRequest.addHeader("If-None-Match", etag);
         }
 
-        Log.d("API", "📊 Pacientes parseados: " + patients.size() + " válidos de " + jsonArray.length() + " totais");
-        return patients;
+        pageRequest.setRetryPolicy(new AdaptiveRetryPolicy(1));
+
+        pageRequest.setShouldCache(false);
+        NetworkClient.getInstance(context).add(pageRequest);
+    }
+
+    // O cursor devolvido é o que foi pedido, ou o corpo é igual ao de uma página
+    // já recebida nesta busca. Não se comparam ids: sem "id" no registo o
+    // parser usa a posição na resposta e todas as páginas começariam em 1.
+    // Regista o corpo da página em seenDigests.
+    static boolean isRepeatedPage(PatientPage page, Set<String> seenDigests, String cursor) {
+        if (page.notModified) {
+            return false;
+        }
+        if (cursor != null && cursor.equals(page.nextCursor)) {
+            return true;
+        }
+        return page.recordCount > 0 && page.digest != null && !seenDigests.add(page.digest);
     }
 
     // Enviar SMS para um paciente e atualizar status
@@ -256,191 +724,106 @@ public class ApiService {
                 }
             });
 
-            // Preparar os PendingIntents para receber o resultado
-            String sentAction = "SMS_SENT_" + System.currentTimeMillis();
-            String deliveredAction = "SMS_DELIVERED_" + System.currentTimeMillis();
-
-            PendingIntent sentPendingIntent = PendingIntent.getBroadcast(
-                    context,
-                    0,
-                    new Intent(sentAction),
-                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-
-            PendingIntent deliveredPendingIntent = PendingIntent.getBroadcast(
-                    context,
-                    0,
-                    new Intent(deliveredAction),
-                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-
-            // Registrar BroadcastReceiver para resultado do envio
-            BroadcastReceiver sentReceiver = new BroadcastReceiver() {
-                @Override
-                public void onReceive(Context context, Intent intent) {
-                    String smsStatus = "";
-                    String statusMessage = "";
-                    boolean success = false;
-
-                    switch (getResultCode()) {
-                        case Activity.RESULT_OK:
-                            smsStatus = SmsStatusConstants.SENT;
-                            statusMessage = "SMS enviado com sucesso";
-                            success = true;
-                            Log.d("SMS", "✅ SMS enviado: " + phoneNumber);
-                            Toast.makeText(context, "✅ SMS enviado para: " + phoneNumber,
-                                    Toast.LENGTH_SHORT).show();
-                            break;
-
-                        case SmsManager.RESULT_ERROR_GENERIC_FAILURE:
-                            smsStatus = SmsStatusConstants.FAILED;
-                            statusMessage = "Falha genérica no envio";
-                            success = false;
-                            Log.e("SMS", "❌ Falha genérica: " + phoneNumber);
-                            break;
-
-                        case SmsManager.RESULT_ERROR_NO_SERVICE:
-                            smsStatus = SmsStatusConstants.NO_SERVICE;
-                            statusMessage = "Sem serviço de rede";
-                            success = false;
-                            Log.e("SMS", "📶 Sem serviço: " + phoneNumber);
-                            break;
-
-                        case SmsManager.RESULT_ERROR_NULL_PDU:
-                            smsStatus = SmsStatusConstants.NULL_PDU;
-                            statusMessage = "PDU nulo";
-                            success = false;
-                            Log.e("SMS", "📦 PDU nulo: " + phoneNumber);
-                            break;
-
-                        case SmsManager.RESULT_ERROR_RADIO_OFF:
-                            smsStatus = SmsStatusConstants.RADIO_OFF;
-                            statusMessage = "Rádio desligado";
-                            success = false;
-                            Log.e("SMS", "📡 Rádio desligado: " + phoneNumber);
-                            break;
-
-                        default:
-                            smsStatus = SmsStatusConstants.FAILED;
-                            statusMessage = "Código de erro desconhecido: " + getResultCode();
-                            success = false;
-                            Log.e("SMS", "❌ Erro desconhecido: " + getResultCode());
-                            break;
-                    }
-
-                    // Atualizar status no servidor
-                    final String finalStatus = smsStatus;
-                    final String finalMessage = statusMessage;
-                    final boolean finalSuccess = success;
+            // Enviar SMS real pelo SIM com mais folga; os resultados de envio e
+            // entrega atualizam o ritmo desse SIM antes de chegarem aqui
+            try {
+                // Lido a cada envio: updateMultiSim troca a instância (SIM novos ou opção mudada)
+                MultiSimDispatcher smsDispatcher = MultiSimDispatcher.getInstance(context);
+                MultiSimDispatcher.Lane lane = smsDispatcher.bestLane();
+                int parts = smsDispatcher.send(lane, phoneNumber, message, true, new SmsGateway.Callback() {
+                    @Override
+                    public void onSent(boolean sentOk, int resultCode) {
+                        String smsStatus;
+                        String statusMessage;
+                        boolean success = false;
+
+                        switch (resultCode) {
+                            case Activity.RESULT_OK:
+                                smsStatus = SmsStatusConstants.SENT;
+                                statusMessage = "SMS enviado com sucesso";
+                                success = true;
+                                Log.d("SMS", "✅ SMS enviado: " + phoneNumber);
+                                Toast.makeText(context, "✅ SMS enviado para: " + phoneNumber,
+                                        Toast.LENGTH_SHORT).show();
+                                break;
+
+                            case SmsManager.RESULT_ERROR_GENERIC_FAILURE:
+                                smsStatus = SmsStatusConstants.FAILED;
+                                statusMessage = "Falha genérica no envio";
+                                Log.e("SMS", "❌ Falha genérica: " + phoneNumber);
+                                break;
+
+                            case SmsManager.RESULT_ERROR_NO_SERVICE:
+                                smsStatus = SmsStatusConstants.NO_SERVICE;
+                                statusMessage = "Sem serviço de rede";
+                                Log.e("SMS", "📶 Sem serviço: " + phoneNumber);
+                                break;
+
+                            case SmsManager.RESULT_ERROR_NULL_PDU:
+                                smsStatus = SmsStatusConstants.NULL_PDU;
+                                statusMessage = "PDU nulo";
+                                Log.e("SMS", "📦 PDU nulo: " + phoneNumber);
+                                break;
+
+                            case SmsManager.RESULT_ERROR_RADIO_OFF:
+                                smsStatus = SmsStatusConstants.RADIO_OFF;
+                                statusMessage = "Rádio desligado";
+                                Log.e("SMS", "📡 Rádio desligado: " + phoneNumber);
+                                break;
+
+                            default:
+                                smsStatus = SmsStatusConstants.FAILED;
+                                statusMessage = "Código de erro desconhecido: " + resultCode;
+                                Log.e("SMS", "❌ Erro desconhecido: " + resultCode);
+                                break;
+                        }
 
-                    updateSmsStatus(patient.id, finalStatus, statusMessage, new StatusUpdateCallback() {
-                        @Override
-                        public void onStatusUpdated(boolean updateSuccess, String updateMessage) {
-                            Log.d("SMS", "🔄 Status atualizado no servidor: " + finalStatus +
-                                    " - " + finalMessage);
+                        // Atualizar status no servidor
+                        final String finalStatus = smsStatus;
+                        final String finalMessage = statusMessage;
+                        final boolean finalSuccess = success;
 
-                            // Chamar callback
-                            if (callback != null) {
-                                callback.onSmsSent(phoneNumber, finalSuccess, patient.id, message);
+                        updateSmsStatus(patient.id, finalStatus, statusMessage, new StatusUpdateCallback() {
+                            @Override
+                            public void onStatusUpdated(boolean updateSuccess, String updateMessage) {
+                                Log.d("SMS", "🔄 Status atualizado no servidor: " + finalStatus +
+                                        " - " + finalMessage);
+
+                                // Chamar callback
+                                if (callback != null) {
+                                    callback.onSmsSent(phoneNumber, finalSuccess, patient.id, message);
+                                }
                             }
-                        }
-                    });
-
-                    // Desregistrar o receiver
-                    try {
-                        context.unregisterReceiver(this);
-                    } catch (IllegalArgumentException e) {
-                        // Receiver já não está registrado
+                        });
                     }
-                }
-            };
 
-            // Registrar BroadcastReceiver para entrega
-            BroadcastReceiver deliveredReceiver = new BroadcastReceiver() {
-                @Override
-                public void onReceive(Context context, Intent intent) {
-                    switch (getResultCode()) {
-                        case Activity.RESULT_OK:
-                            // SMS entregue
-                            Log.d("SMS", "📨 SMS entregue: " + phoneNumber);
-
-                            updateSmsStatus(patient.id, SmsStatusConstants.DELIVERED, "SMS entregue ao destinatário",
-                                    new StatusUpdateCallback() {
-                                        @Override
-                                        public void onStatusUpdated(boolean success, String updateMessage) {
-                                            Log.d("SMS", "✅ Status atualizado: delivered");
-                                            Toast.makeText(context, "📨 SMS entregue: " + phoneNumber,
-                                                    Toast.LENGTH_SHORT).show();
-                                        }
-                                    });
-                            break;
-
-                        case Activity.RESULT_CANCELED:
+                    @Override
+                    public void onDelivered(boolean delivered) {
+                        if (!delivered) {
                             // SMS não entregue
                             Log.w("SMS", "📭 SMS não entregue: " + phoneNumber);
-                            break;
-                    }
-
-                    // Desregistrar o receiver
-                    try {
-                        context.unregisterReceiver(this);
-                    } catch (IllegalArgumentException e) {
-                        // Receiver já não está registrado
-                    }
-                }
-            };
-
-            // Registrar os receivers
-            IntentFilter sentFilter = new IntentFilter(sentAction);
-            IntentFilter deliveredFilter = new IntentFilter(deliveredAction);
-
-            // Usar registerReceiver com flags para versões mais recentes do Android
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-                context.registerReceiver(sentReceiver, sentFilter, Context.RECEIVER_EXPORTED);
-                context.registerReceiver(deliveredReceiver, deliveredFilter, Context.RECEIVER_EXPORTED);
-            } else {
-                context.registerReceiver(sentReceiver, sentFilter);
-                context.registerReceiver(deliveredReceiver, deliveredFilter);
-            }
-
-            // Enviar SMS real
-            try {
-                // Dividir mensagem se for muito longa
-                ArrayList<String> parts = smsManager.divideMessage(message);
-
-                if (parts.size() > 1) {
-                    // Mensagem longa (multipart)
-                    Log.d("SMS", "📨 Mensagem longa (" + parts.size() + " partes)");
-
-                    ArrayList<PendingIntent> sentIntents = new ArrayList<>();
-                    ArrayList<PendingIntent> deliveredIntents = new ArrayList<>();
+                            return;
+                        }
 
-                    for (int i = 0; i < parts.size(); i++) {
-                        sentIntents.add(sentPendingIntent);
-                        deliveredIntents.add(deliveredPendingIntent);
+                        // SMS entregue (todas as partes)
+                        Log.d("SMS", "📨 SMS entregue: " + phoneNumber);
+
+                        updateSmsStatus(patient.id, SmsStatusConstants.DELIVERED, "SMS entregue ao destinatário",
+                                new StatusUpdateCallback() {
+                                    @Override
+                                    public void onStatusUpdated(boolean success, String updateMessage) {
+                                        Log.d("SMS", "✅ Status atualizado: delivered");
+                                        Toast.makeText(context, "📨 SMS entregue: " + phoneNumber,
+                                                Toast.LENGTH_SHORT).show();
+                                    }
+                                });
                     }
+                });
 
-                    smsManager.sendMultipartTextMessage(
-                            phoneNumber,
-                            null,
-                            parts,
-                            sentIntents,
-                            deliveredIntents
-                    );
-
-                    Log.d("SMS", "📤 SMS multipart enviado: " + parts.size() + " partes");
-
+                if (parts > 1) {
+                    Log.d("SMS", "📤 SMS multipart enviado por " + lane.getName() + ": " + parts + " partes");
                 } else {
-                    // Mensagem curta (single part)
-                    smsManager.sendTextMessage(
-                            phoneNumber,
-                            null,
-                            message,
-                            sentPendingIntent,
-                            deliveredPendingIntent
-                    );
-
-                    Log.d("SMS", "📤 SMS single part enviado");
+                    Log.d("SMS", "📤 SMS single part enviado por " + lane.getName());
                 }
 
             } catch (Exception e) {
@@ -476,69 +859,10 @@ public class ApiService {
         }
     }
 
-    // Método para atualizar status no servidor
+    // Método para atualizar status no servidor. As transições são agregadas
+    // por paciente no SmsStatusBuffer e enviadas em lote.
     public void updateSmsStatus(int patientId, String smsStatus, String statusMessage, final StatusUpdateCallback callback) {
-        String url = BASE_URL + "/api/observation/smsstatus/" + patientId;
-        Log.d("API_STATUS", "🔄 Atualizando SMS status para ID " + patientId +
-                ": status=" + smsStatus + ", mensagem=" + statusMessage);
-
-        StringRequest stringRequest = new StringRequest(Request.Method.PUT, url,
-                new Response.Listener<String>() {
-                    @Override
-                    public void onResponse(String response) {
-                        try {
-                            JSONObject jsonResponse = new JSONObject(response);
-                            String message = jsonResponse.optString("message", "Status atualizado");
-                            Log.d("API_STATUS", "✅ Status atualizado: " + message);
-                            callback.onStatusUpdated(true, message);
-                        } catch (JSONException e) {
-                            Log.w("API_STATUS", "⚠️ Resposta não é JSON válido: " + response);
-                            callback.onStatusUpdated(true, "Status atualizado (resposta inválida)");
-                        }
-                    }
-                },
-                new Response.ErrorListener() {
-                    @Override
-                    public void onErrorResponse(VolleyError error) {
-                        String errorMsg = getVolleyErrorMessage(error);
-                        Log.e("API_STATUS", "❌ Erro ao atualizar status: " + errorMsg);
-                        callback.onStatusUpdated(false, "Falha: " + errorMsg);
-                    }
-                }) {
-            @Override
-            public byte[] getBody() {
-                try {
-                    JSONObject jsonBody = new JSONObject();
-                    jsonBody.put("smsStatus", smsStatus);  // Campo correto para status de SMS
-                    jsonBody.put("statusMessage", statusMessage);  // Mensagem detalhada
-                    jsonBody.put("timestamp", System.currentTimeMillis());  // Timestamp
-                    return jsonBody.toString().getBytes("utf-8");
-                } catch (Exception e) {
-                    Log.e("API_STATUS", "❌ Erro ao criar corpo da requisição", e);
-                    return null;
-                }
-            }
-
-            @Override
-            public String getBodyContentType() {
-                return "application/json; charset=utf-8";
-            }
-
-            @Override
-            public Map<String, String> getHeaders() {
-                Map<String, String> headers = new HashMap<>();
-                headers.put("Content-Type", "application/json");
-                return headers;
-            }
-        };
-
-        stringRequest.setRetryPolicy(new DefaultRetryPolicy(
-                10000, // 10 segundos
-                2,     // 2 tentativas
-                DefaultRetryPolicy.DEFAULT_BACKOFF_MULT
-        ));
-
-        requestQueue.add(stringRequest);
+        statusBuffer.submit(patientId, smsStatus, statusMessage, callback);
     }
 
     // Enviar SMS para todos os pacientes com atualização de status e feedback
@@ -554,7 +878,7 @@ public class ApiService {
                 "📤 Iniciando envio para " + patients.size() + " pacientes",
                 Toast.LENGTH_LONG).show();
 
-        new Thread(new Runnable() {
+        bulkSendExecutor.execute(new Runnable() {
             @Override
             public void run() {
                 for (int i = 0; i < patients.size(); i++) {
@@ -595,9 +919,12 @@ public class ApiService {
                         }
                     });
 
-                    // Delay entre envios para não sobrecarregar
+                    // Próximo envio quando o controlo de ritmo permitir
                     try {
-                        Thread.sleep(2000); // 2 segundos entre SMS (pode ajustar)
+                        long waitMs;
+                        while ((waitMs = MultiSimDispatcher.getInstance(context).getDelayMs()) > 0) {
+                            Thread.sleep(waitMs);
+                        }
                     } catch (InterruptedException e) {
                         e.printStackTrace();
                         Thread.currentThread().interrupt();
@@ -610,11 +937,14 @@ public class ApiService {
                         "✅ Envio em massa concluído!",
                         Toast.LENGTH_LONG).show();
             }
-        }).start();
+        });
     }
 
     // Método para obter mensagem de erro detalhada do Volley
-    private String getVolleyErrorMessage(VolleyError error) {
+    static String getVolleyErrorMessage(VolleyError error) {
+        if (isCircuitOpen(error)) {
+            return error.getCause().getMessage();
+        }
         if (error.networkResponse != null) {
             int statusCode = error.networkResponse.statusCode;
             try {
@@ -632,6 +962,20 @@ public class ApiService {
         }
     }
 
+    // Falha rápida do CircuitBreaker: o pedido nem chegou à rede
+    static boolean isCircuitOpen(VolleyError error) {
+        return error != null && error.getCause() instanceof CircuitBreaker.CircuitOpenException;
+    }
+
+    // Para adiar trabalho enquanto o servidor está em baixo
+    public boolean isBackendAvailable() {
+        return !CircuitBreaker.getInstance().isOpen();
+    }
+
+    public long getBackendRetryAfterMs() {
+        return CircuitBreaker.getInstance().getRetryAfterMs();
+    }
+
     // Formatar número de telefone
     private String formatPhoneNumber(String contact) {
         if (contact == null || contact.trim().isEmpty()) {
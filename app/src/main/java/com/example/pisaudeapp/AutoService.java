@@ -10,12 +10,11 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.ServiceInfo;
 import android.os.Build;
-import android.os.Handler;
 import android.os.IBinder;
-import android.os.Looper;
 import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
+import androidx.lifecycle.Observer;
 
 public class AutoService extends Service {
 
@@ -23,14 +22,12 @@ public class AutoService extends Service {
     private static final String CHANNEL_ID = "AutoServiceChannel";
     private static final int NOTIFICATION_ID = 1001;
 
-    private Handler handler;
-    private Runnable autoTask;
-    private int intervalMinutes = 15;
     private boolean isRunning = false;
-    private int cycleCount = 0;
-    // Adicionar estas variáveis na classe
-    private long lastBroadcastTime = 0;
-    private int broadcastCount = 0;
+    // Os ciclos são marcados por alarmes do CycleScheduler e correm no
+    // CycleEngine; o serviço só os liga e mostra o estado
+    private CycleScheduler scheduler;
+    private CycleEngine cycleEngine;
+    private final Observer<CycleEngine.CycleState> cycleObserver = this::onCycleState;
 
     @Override
     public void onCreate() {
@@ -38,10 +35,18 @@ public class AutoService extends Service {
         Log.d(TAG, "🟢 Service onCreate");
 
         createNotificationChannel();
-        handler = new Handler(Looper.getMainLooper());
-        intervalMinutes = getInterval(this);
+        // Gravar os logs em disco também sem nenhum ecrã aberto
+        LogJournal.getInstance(this);
+        scheduler = new CycleScheduler(this);
+        cycleEngine = CycleEngine.getInstance(this);
+        cycleEngine.getState().observeForever(cycleObserver);
+        // Modo multi-gateway: leases e heartbeat renovados enquanto o serviço viver
+        GatewayShardCoordinator shards = GatewayShardCoordinator.getInstance(this);
+        if (shards != null) {
+            shards.start();
+        }
 
-        Log.d(TAG, "✅ Serviço criado com intervalo: " + intervalMinutes + " minutos");
+        Log.d(TAG, "✅ Serviço criado com intervalo: " + getInterval(this) + " minutos");
     }
 
     @Override
@@ -50,6 +55,7 @@ public class AutoService extends Service {
 
         if (intent != null && "STOP_AUTO_SERVICE".equals(intent.getAction())) {
             Log.d(TAG, "⏹️ Recebido comando para parar");
+            scheduler.stop();
             stopSelf();
             return START_NOT_STICKY;
         }
@@ -81,122 +87,50 @@ public class AutoService extends Service {
             }
         }
 
-        if (!isRunning) {
+        if (intent != null && CycleScheduler.ACTION_RUN_CYCLE.equals(intent.getAction())) {
+            // Alarme da fronteira do ciclo (pode ter recriado o serviço)
+            isRunning = true;
+            CycleScheduler.Slot slot = scheduler.onAlarm(intent, System.currentTimeMillis());
+            Log.d(TAG, "🔄 CICLO AUTOMÁTICO #" + slot.cycleNumber + " iniciado");
+            updateNotification("Executando ciclo #" + slot.cycleNumber);
+            cycleEngine.runCycle(slot.cycleNumber);
+        } else if (!isRunning) {
             Log.d(TAG, "▶️ Iniciando ciclo automático pela primeira vez");
             isRunning = true;
-            startAutoCycle();
+            CycleScheduler.Slot next = scheduler.start();
+            updateNotification("Próximo ciclo (#" + next.cycleNumber + ") em " +
+                    formatDelay(next.plannedAt - System.currentTimeMillis()));
         } else {
             Log.d(TAG, "🔄 Serviço já está rodando, apenas atualizando");
-            updateNotification("Serviço ativo - Próximo ciclo em " + intervalMinutes + " minutos");
+            updateNotification("Serviço ativo - Ciclos a cada " + getInterval(this) + " minutos");
         }
 
         return START_STICKY;
     }
 
-    private void startAutoCycle() {
-        Log.d(TAG, "🔄 Iniciando ciclo automático com intervalo de " + intervalMinutes + " minutos");
-
-        // Remover qualquer tarefa anterior
-        if (autoTask != null) {
-            handler.removeCallbacks(autoTask);
-        }
-
-        autoTask = new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    cycleCount++;
-                    Log.d(TAG, "🔄 CICLO AUTOMÁTICO #" + cycleCount + " iniciado");
-
-                    // 1. Atualizar notificação
-                    updateNotification("Executando ciclo #" + cycleCount);
-
-                    // 2. Enviar broadcast para MainActivity
-                    sendBroadcastToMainActivity();
-
-                    // 3. Agendar próximo ciclo
-                    scheduleNextCycle();
-
-                } catch (Exception e) {
-                    Log.e(TAG, "❌ Erro no ciclo automático: " + e.getMessage(), e);
-                    // Tentar novamente em 1 minuto se houver erro
-                    handler.postDelayed(this, 60 * 1000L);
-                }
-            }
-        };
-
-        // **ALTERAÇÃO**: Primeiro ciclo após 30 segundos para dar tempo
-        handler.postDelayed(autoTask, 30000L);
-        Log.d(TAG, "⏰ Primeiro ciclo agendado para daqui a 30 segundos");
-    }
-
-    // No AutoService.java, no método sendBroadcastToMainActivity():
-    private void sendBroadcastToMainActivity() {
-        try {
-            // Evitar ciclos muito rápidos (mínimo 4 minutos entre ciclos)
-            long now = System.currentTimeMillis();
-            long timeSinceLastBroadcast = now - lastBroadcastTime;
-
-            if (timeSinceLastBroadcast < 4 * 60 * 1000L && lastBroadcastTime > 0) {
-                Log.d(TAG, "⏳ Aguardando - Último broadcast há " + (timeSinceLastBroadcast/1000) + "s");
-                return;
-            }
-
-            lastBroadcastTime = now;
-
-            Intent broadcast = new Intent("AUTO_CYCLE_ACTION");
-            broadcast.putExtra("CYCLE_NUMBER", cycleCount);
-            broadcast.putExtra("TIMESTAMP", now);
-
-            // Adicionar informação para controle de duplicação
-            broadcast.putExtra("SERVICE_ID", hashCode());
-            broadcast.putExtra("BROADCAST_COUNT", broadcastCount++);
-
-            Log.d(TAG, "📡 Enviando broadcast - Ciclo #" + cycleCount +
-                    " (ID: " + hashCode() + ", Count: " + broadcastCount + ")");
-
-            // Enviar com flags específicas
-            broadcast.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            sendBroadcast(broadcast);
-
-            Log.d(TAG, "✅ Broadcast enviado - Ciclo #" + cycleCount);
-
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Erro ao enviar broadcast", e);
-        }
+    private static String formatDelay(long delayMs) {
+        long seconds = Math.max(0, delayMs / 1000);
+        return seconds < 60 ? seconds + " segundos" : (seconds / 60) + " minutos";
     }
 
-
-    private void scheduleNextCycle() {
-        long intervalMillis = intervalMinutes * 60 * 1000L;
-
-        // Garantir intervalo mínimo de 5 minutos
-        if (intervalMillis < 5 * 60 * 1000L) {
-            intervalMillis = 5 * 60 * 1000L;
-            Log.w(TAG, "⚠️ Intervalo ajustado para mínimo de 5 minutos");
+    // Estado do ciclo na notificação (thread principal)
+    private void onCycleState(CycleEngine.CycleState state) {
+        if (state == null || !isRunning) {
+            return;
         }
-
-        Log.d(TAG, "⏰ Agendando próximo ciclo em " + (intervalMillis/60000) + " minutos");
-
-        // Atualizar notificação
-        updateNotification("Próximo ciclo em " + (intervalMillis/60000) + " minutos");
-
-        // Limpar qualquer callback anterior
-        if (autoTask != null && handler != null) {
-            handler.removeCallbacks(autoTask);
-        }
-
-        // Agendar próximo ciclo
-        if (handler != null) {
-            handler.postDelayed(() -> {
-                if (isRunning) {
-                    cycleCount++;
-                    Log.d(TAG, "🔄 CICLO AUTOMÁTICO #" + cycleCount + " iniciado");
-                    updateNotification("Executando ciclo #" + cycleCount);
-                    sendBroadcastToMainActivity();
-                    scheduleNextCycle();
-                }
-            }, intervalMillis);
+        switch (state.phase) {
+            case CycleEngine.CycleState.PHASE_FETCHING:
+                updateNotification("Ciclo #" + state.cycleNumber + ": " + state.patients.size() + " pacientes");
+                break;
+            case CycleEngine.CycleState.PHASE_SENDING:
+                updateNotification("Ciclo #" + state.cycleNumber + ": enviando SMS");
+                break;
+            case CycleEngine.CycleState.PHASE_FINISHED:
+                updateNotification("Ciclo #" + state.cycleNumber + " concluído (" + state.sent + " SMS)");
+                break;
+            default:
+                updateNotification("Ciclo #" + state.cycleNumber + " falhou");
+                break;
         }
     }
 
@@ -206,8 +140,16 @@ public class AutoService extends Service {
 
         isRunning = false;
 
-        if (autoTask != null && handler != null) {
-            handler.removeCallbacks(autoTask);
+        // O alarme seguinte só é cancelado pelo comando de parar: se o sistema
+        // destruir o serviço, o alarme volta a criá-lo na próxima fronteira
+
+        // Ciclo em curso para; o lote fica na outbox e é retomado no próximo
+        cycleEngine.getState().removeObserver(cycleObserver);
+        cycleEngine.cancel();
+        // Serviço parado: as partições passam já para os outros gateways
+        GatewayShardCoordinator shards = GatewayShardCoordinator.getInstance(this);
+        if (shards != null) {
+            shards.stop();
         }
 
         try {
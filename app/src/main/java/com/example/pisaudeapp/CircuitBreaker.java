@@ -0,0 +1,204 @@
+package com.example.pisaudeapp;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// Disjuntor (circuit breaker) para o backend em BASE_URL.
+// - FECHADO: pedidos passam; falhas seguidas (ou taxa de falhas alta numa
+//   janela recente) abrem o circuito.
+// - ABERTO: pedidos falham logo com CircuitOpenException, sem tocar na rede,
+//   durante um tempo de espera que duplica a cada sonda falhada (15 s a 5 min).
+// - MEIO-ABERTO: passado esse tempo, um único pedido serve de sonda; sucesso
+//   fecha o circuito, falha volta a abri-lo.
+// Também guarda as latências recentes para calcular timeouts adaptativos.
+public class CircuitBreaker {
+    private static final String TAG = "CircuitBreaker";
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // Falha rápida: o circuito está aberto
+    public static class CircuitOpenException extends IOException {
+        public final long retryAfterMs;
+
+        public CircuitOpenException(long retryAfterMs) {
+            super("Servidor indisponível, nova tentativa em " + (retryAfterMs / 1000) + "s");
+            this.retryAfterMs = retryAfterMs;
+        }
+    }
+
+    private static final int CONSECUTIVE_FAILURES_TO_OPEN = 5;
+    private static final int WINDOW_SIZE = 20;
+    private static final int WINDOW_MIN_SAMPLES = 10;
+    private static final double WINDOW_FAILURE_RATIO = 0.5;
+
+    private static final long OPEN_BASE_MS = 15 * 1000L;
+    private static final long OPEN_MAX_MS = 5 * 60 * 1000L;
+
+    // Timeouts adaptativos: p95 * 3 + 1 s, entre 2,5 s e 30 s
+    private static final int LATENCY_SAMPLES = 100;
+    private static final int LATENCY_MIN_SAMPLES = 10;
+    private static final int DEFAULT_TIMEOUT_MS = 15000;
+    private static final int MIN_TIMEOUT_MS = 2500;
+    private static final int MAX_TIMEOUT_MS = 30000;
+
+    private static CircuitBreaker instance;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private long openDurationMs = OPEN_BASE_MS;
+    private boolean probeInFlight = false;
+
+    // Resultados recentes (true = falha), buffer circular
+    private final boolean[] window = new boolean[WINDOW_SIZE];
+    private int windowHead = 0;
+    private int windowCount = 0;
+    private int windowFailures = 0;
+
+    // Latências recentes (ms), buffer circular
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyHead = 0;
+    private int latencyCount = 0;
+
+    public static synchronized CircuitBreaker getInstance() {
+        if (instance == null) {
+            instance = new CircuitBreaker();
+        }
+        return instance;
+    }
+
+    // Chamar antes de cada pedido; false = falhar já
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now() - openedAt < openDurationMs) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                Log.d(TAG, "🟡 Circuito meio-aberto: enviando sonda");
+                return true;
+            default:
+                // Meio-aberto: só uma sonda de cada vez
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess(long latencyMs) {
+        recordLatency(latencyMs);
+        recordOutcome(false);
+        consecutiveFailures = 0;
+        if (state != State.CLOSED) {
+            Log.d(TAG, "🟢 Circuito fechado (latência " + latencyMs + " ms)");
+            state = State.CLOSED;
+            probeInFlight = false;
+            openDurationMs = OPEN_BASE_MS;
+            resetWindow();
+        }
+    }
+
+    public synchronized void onFailure(String reason) {
+        recordOutcome(true);
+        consecutiveFailures++;
+
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            openDurationMs = Math.min(OPEN_MAX_MS, openDurationMs * 2);
+            open("sonda falhou: " + reason);
+            return;
+        }
+        if (state == State.CLOSED && (consecutiveFailures >= CONSECUTIVE_FAILURES_TO_OPEN ||
+                (windowCount >= WINDOW_MIN_SAMPLES && windowFailures >= windowCount * WINDOW_FAILURE_RATIO))) {
+            open(consecutiveFailures + " falhas seguidas, " + windowFailures + "/" + windowCount +
+                    " recentes: " + reason);
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && now() - openedAt >= openDurationMs) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public boolean isOpen() {
+        return getState() == State.OPEN;
+    }
+
+    // Quanto esperar até o circuito aceitar uma sonda (0 se já aceita)
+    public synchronized long getRetryAfterMs() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, openedAt + openDurationMs - now());
+    }
+
+    // Timeout para o próximo pedido, a partir das latências observadas
+    public synchronized int getAdaptiveTimeoutMs() {
+        if (latencyCount < LATENCY_MIN_SAMPLES) {
+            return DEFAULT_TIMEOUT_MS;
+        }
+        long timeout = getLatencyPercentileLocked(0.95) * 3 + 1000;
+        return (int) Math.max(MIN_TIMEOUT_MS, Math.min(MAX_TIMEOUT_MS, timeout));
+    }
+
+    public synchronized long getLatencyPercentile(double percentile) {
+        return getLatencyPercentileLocked(percentile);
+    }
+
+    private long getLatencyPercentileLocked(double percentile) {
+        if (latencyCount == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * latencyCount) - 1;
+        return sorted[Math.max(0, Math.min(latencyCount - 1, index))];
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openedAt = now();
+        Log.w(TAG, "🔴 Circuito aberto por " + (openDurationMs / 1000) + "s (" + reason + ")");
+    }
+
+    private void recordOutcome(boolean failure) {
+        if (windowCount == WINDOW_SIZE && window[windowHead]) {
+            windowFailures--;
+        }
+        window[windowHead] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowHead = (windowHead + 1) % WINDOW_SIZE;
+        if (windowCount < WINDOW_SIZE) {
+            windowCount++;
+        }
+    }
+
+    private void resetWindow() {
+        windowHead = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+
+    private void recordLatency(long latencyMs) {
+        latencies[latencyHead] = latencyMs;
+        latencyHead = (latencyHead + 1) % LATENCY_SAMPLES;
+        if (latencyCount < LATENCY_SAMPLES) {
+            latencyCount++;
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+}
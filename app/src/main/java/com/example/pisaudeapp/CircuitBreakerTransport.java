@@ -0,0 +1,40 @@
+package com.example.pisaudeapp;
+
+import java.io.IOException;
+
+// HttpTransport que passa pelo CircuitBreaker: com o circuito aberto o
+// pedido falha logo (CircuitOpenException) em vez de esperar pelo timeout.
+// Erros de rede e respostas 5xx contam como falhas; a latência até aos
+// headers alimenta os timeouts adaptativos.
+public class CircuitBreakerTransport implements HttpTransport {
+    private final HttpTransport delegate;
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakerTransport(HttpTransport delegate, CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        if (!breaker.allowRequest()) {
+            throw new CircuitBreaker.CircuitOpenException(breaker.getRetryAfterMs());
+        }
+
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = delegate.execute(request);
+        } catch (IOException | RuntimeException e) {
+            breaker.onFailure(e.getClass().getSimpleName());
+            throw e;
+        }
+
+        if (response.statusCode >= 500) {
+            breaker.onFailure("HTTP " + response.statusCode);
+        } else {
+            breaker.onSuccess((System.nanoTime() - start) / 1000000L);
+        }
+        return response;
+    }
+}
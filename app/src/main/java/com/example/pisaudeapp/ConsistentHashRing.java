@@ -0,0 +1,58 @@
+package com.example.pisaudeapp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Anel de hash consistente para distribuir partições de pacientes pelos
+// gateways. Cada gateway ocupa VIRTUAL_NODES pontos do anel; quando um
+// gateway entra ou sai, só mudam de dono as partições vizinhas dos seus
+// pontos (~1/N do total), em vez de tudo ser redistribuído.
+// Não depende de classes Android para poder ser testado na JVM.
+public class ConsistentHashRing {
+    private static final int VIRTUAL_NODES = 64;
+
+    private final TreeMap<Integer, String> ring = new TreeMap<>();
+
+    public ConsistentHashRing(Collection<String> nodes) {
+        for (String node : nodes) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return ring.isEmpty();
+    }
+
+    // Dono de uma chave: primeiro ponto do anel a seguir ao seu hash
+    public String ownerOf(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Integer, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public String ownerOfPartition(int partition) {
+        return ownerOf("partition-" + partition);
+    }
+
+    // FNV-1a de 32 bits com mistura final (murmur3 fmix) para espalhar bem
+    // chaves parecidas como "gw#1", "gw#2"
+    static int hash(String key) {
+        int h = 0x811c9dc5;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.pisaudeapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+// Alarme inexato do CycleScheduler (sem permissão de alarmes exatos). Um
+// alarme inexato não pode arrancar um serviço em primeiro plano, por isso
+// o ciclo é passado com startService ao AutoService, que enquanto está
+// ativo já corre em primeiro plano. Se o serviço não puder receber o
+// ciclo, a fronteira é saltada e a seguinte fica agendada.
+public class CycleAlarmReceiver extends BroadcastReceiver {
+    private static final String TAG = "CycleAlarmReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        Intent serviceIntent = new Intent(context, AutoService.class);
+        serviceIntent.setAction(CycleScheduler.ACTION_RUN_CYCLE);
+        serviceIntent.putExtras(intent);
+        try {
+            context.startService(serviceIntent);
+        } catch (IllegalStateException e) {
+            // Serviço parado e app em segundo plano
+            Log.w(TAG, "⚠️ Serviço indisponível para o ciclo: " + e.getMessage());
+            CycleScheduler.Slot skipped = new CycleScheduler(context).onAlarm(intent, System.currentTimeMillis());
+            LogManager.getInstance().addLog("⏭️ Ciclo #" + skipped.cycleNumber +
+                    " saltado: serviço parado e sem alarmes exatos");
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Ciclo automático completo (busca paginada -> contactos únicos -> outbox ->
+// envio) numa thread própria, sem depender da Activity. O AutoService pede
+// os ciclos; a MainActivity, quando existe, só observa o estado num LiveData.
+// Vive enquanto o processo viver, como o SmsDispatchEngine.
+public class CycleEngine {
+    private static final String TAG = "CycleEngine";
+
+    private static final int CYCLE_PAGE_SIZE = 500;
+    // Um ciclo que não termina neste tempo é abandonado (o lote fica na outbox)
+    private static final long CYCLE_TIMEOUT_MS = 10 * 60 * 1000L;
+    // O lease dura um pouco mais do que o timeout, que o liberta
+    private static final long LEASE_TTL_MS = CYCLE_TIMEOUT_MS + 60 * 1000L;
+    // Intervalo mínimo entre dois ciclos
+    private static final long MIN_CYCLE_GAP_MS = 60 * 1000L;
+    private static final long MIN_RETRY_MS = 60 * 1000L;
+    // Número especial dos ciclos de teste
+    public static final int TEST_CYCLE_NUMBER = 999;
+
+    public static class CycleState {
+        public static final int PHASE_FETCHING = 1;
+        public static final int PHASE_SENDING = 2;
+        public static final int PHASE_FINISHED = 3;
+        public static final int PHASE_FAILED = 4;
+
+        public final int cycleNumber;
+        public final int phase;
+        // Pacientes únicos do ciclo até agora (só de leitura)
+        public final List<ApiService.Patient> patients;
+        public final int sent;
+        public final int failed;
+        public final long timestamp;
+
+        CycleState(int cycleNumber, int phase, List<ApiService.Patient> patients, int sent, int failed) {
+            this.cycleNumber = cycleNumber;
+            this.phase = phase;
+            this.patients = patients;
+            this.sent = sent;
+            this.failed = failed;
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        public boolean isDone() {
+            return phase == PHASE_FINISHED || phase == PHASE_FAILED;
+        }
+    }
+
+    private static CycleEngine instance;
+
+    private final Context context;
+    private final ApiService apiService;
+    private final SmsDispatchEngine dispatchEngine;
+    private final LogManager logManager;
+    private final CycleLease lease;
+    private final ScheduledExecutorService executor;
+    private final MutableLiveData<CycleState> state = new MutableLiveData<>();
+
+    // Só usados na thread do ciclo
+    private int generation = 0;
+    private int activeCycleNumber = -1;
+    private String activeBatchId;
+    private long lastCycleStartTime = 0;
+    private ScheduledFuture<?> timeout;
+    private ScheduledFuture<?> retry;
+    private List<ApiService.Patient> cycleQueue = new ArrayList<>();
+
+    // Este processo tem o lease e um ciclo em curso; lido pela UI
+    private volatile boolean running = false;
+
+    private CycleEngine(Context context) {
+        this.context = context;
+        this.apiService = ApiService.getInstance(context);
+        this.dispatchEngine = SmsDispatchEngine.getInstance(context);
+        this.logManager = LogManager.getInstance();
+        this.lease = new CycleLease(context);
+
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "cycle-engine");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        pool.setRemoveOnCancelPolicy(true);
+        this.executor = pool;
+
+        // O motor de envio avisa na sua thread; o fim do ciclo é tratado nesta
+        dispatchEngine.setBatchFinishedListener(progress -> executor.execute(() -> onBatchFinished(progress)));
+    }
+
+    public static synchronized CycleEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new CycleEngine(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public LiveData<CycleState> getState() {
+        return state;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // ============ CICLO (tudo corre na thread do ciclo) ============
+
+    public void runCycle(final int cycleNumber) {
+        executor.execute(() -> startCycle(cycleNumber, false));
+    }
+
+    // Botão de teste: sem o intervalo mínimo entre ciclos
+    public void runTestCycle() {
+        executor.execute(() -> startCycle(TEST_CYCLE_NUMBER, true));
+    }
+
+    // Para o ciclo em curso (serviço parado); o lote continua na outbox
+    public void cancel() {
+        executor.execute(() -> {
+            if (retry != null) {
+                retry.cancel(false);
+                retry = null;
+            }
+            if (!running) {
+                return;
+            }
+            log("⏹️ [Ciclo #" + activeCycleNumber + "] Cancelado");
+            dispatchEngine.suspend();
+            endCycle(activeCycleNumber, 0, 0, false);
+        });
+    }
+
+    private void startCycle(final int cycleNumber, boolean force) {
+        long sinceLast = System.currentTimeMillis() - lastCycleStartTime;
+        if (!force && lastCycleStartTime > 0 && sinceLast < MIN_CYCLE_GAP_MS) {
+            Log.d(TAG, "⏳ Aguardando - Último ciclo há " + (sinceLast / 1000) + "s");
+            return;
+        }
+        if (dispatchEngine.isDispatching()) {
+            // Envio manual em curso
+            log("⚠️ [Ciclo #" + cycleNumber + "] Já está processando, ignorando");
+            return;
+        }
+        // No máximo um ciclo de cada vez, também entre processos
+        if (!lease.tryAcquire(cycleNumber, LEASE_TTL_MS)) {
+            log("⏸️ [Ciclo #" + cycleNumber + "] Outro ciclo ainda em curso, ignorando");
+            return;
+        }
+        if (retry != null) {
+            retry.cancel(false);
+            retry = null;
+        }
+
+        running = true;
+        activeCycleNumber = cycleNumber;
+        // Os logs seguintes ficam no diário com o número do ciclo
+        logManager.setCycleId(cycleNumber);
+        activeBatchId = null;
+        lastCycleStartTime = System.currentTimeMillis();
+        cycleQueue = new ArrayList<>();
+        final int cycleGeneration = ++generation;
+        log("🔄 [Ciclo #" + cycleNumber + "] Iniciando carregamento automático");
+        publish(CycleState.PHASE_FETCHING, 0, 0);
+
+        timeout = executor.schedule(() -> {
+            if (cycleGeneration == generation && running) {
+                log("⏰ [Ciclo #" + cycleNumber + "] TIMEOUT - Resetando");
+                dispatchEngine.suspend();
+                endCycle(cycleNumber, 0, 0, false);
+            }
+        }, CYCLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        // Antes de buscar pacientes, retomar um lote que ficou a meio
+        // (processo morto ou ciclo interrompido durante o envio)
+        dispatchEngine.prepareCycle(cycleNumber, new SmsDispatchEngine.CycleBatchCallback() {
+            @Override
+            public void onResume(SmsOutbox.Batch batch, int interrupted) {
+                executor.execute(() -> {
+                    if (cycleGeneration != generation) {
+                        return;
+                    }
+                    Log.w(TAG, "♻️ [Ciclo #" + cycleNumber + "] Retomando lote " + batch.batchId +
+                            " (ciclo #" + batch.cycleNumber + ", " + interrupted + " interrompidos)");
+                    logManager.addLog("♻️ [Ciclo #" + cycleNumber + "] Retomando envio do ciclo #" + batch.cycleNumber);
+                    if (interrupted > 0) {
+                        logManager.addLog("⚠️ " + interrupted + " SMS interrompidos não serão reenviados");
+                    }
+                    acquireShardLease(cycleNumber);
+                    startSender(batch.batchId, cycleNumber);
+                });
+            }
+
+            @Override
+            public void onNewBatch(String batchId) {
+                executor.execute(() -> {
+                    if (cycleGeneration == generation) {
+                        fetchIntoOutbox(cycleNumber, batchId, acquireShardLease(cycleNumber), cycleGeneration);
+                    }
+                });
+            }
+        });
+    }
+
+    // Modo multi-gateway: reservar as partições deste aparelho antes de enviar;
+    // o motor volta a confirmar o lease por mensagem. Sem o modo, devolve null.
+    private GatewayShardCoordinator acquireShardLease(int cycleNumber) {
+        GatewayShardCoordinator shards = GatewayShardCoordinator.getInstance(context);
+        if (shards == null) {
+            dispatchEngine.setRecipientFilter(null);
+            return null;
+        }
+
+        boolean leased = shards.refresh();
+        if (!leased && shards.getOwnedPartitions().isEmpty()) {
+            logManager.addLog("⚠️ [Ciclo #" + cycleNumber + "] Sem lease de partições, nada a enviar");
+        } else {
+            logManager.addLog("🧩 [Ciclo #" + cycleNumber + "] " + shards.getOwnedPartitions().size() + "/" +
+                    GatewayShardCoordinator.PARTITIONS + " partições, " +
+                    shards.getGateways().size() + " gateways");
+        }
+        shards.start();
+        dispatchEngine.setRecipientFilter(shards::owns);
+        return shards;
+    }
+
+    private void fetchIntoOutbox(final int cycleNumber, final String batchId,
+                                 final GatewayShardCoordinator shards, final int cycleGeneration) {
+
+        // Pipeline paginado: cada página é gravada na outbox e o envio começa
+        // com a primeira enquanto as seguintes ainda estão a descarregar.
+        final Set<String> seenContacts = new HashSet<>();
+        final boolean[] senderStarted = {false};
+
+        apiService.syncPatients(CYCLE_PAGE_SIZE, new ApiService.PageCallback() {
+            @Override
+            public void onPage(final List<ApiService.Patient> allPatients, final int pageIndex, boolean hasMore) {
+                executor.execute(() -> {
+                    if (cycleGeneration != generation) {
+                        return;
+                    }
+                    List<ApiService.Patient> page = shards != null ? ownedPatients(allPatients, shards) : allPatients;
+                    int added = appendUniquePatients(page, cycleQueue, seenContacts);
+                    Log.d(TAG, "📄 [Ciclo #" + cycleNumber + "] Página " + (pageIndex + 1) + ": " +
+                            page.size() + " -> " + added + " novos (total " + cycleQueue.size() + ")");
+                    logManager.addLog("📄 [Ciclo #" + cycleNumber + "] Página " + (pageIndex + 1) + ": +" +
+                            added + " pacientes");
+                    publish(senderStarted[0] ? CycleState.PHASE_SENDING : CycleState.PHASE_FETCHING, 0, 0);
+
+                    // Gravar na outbox pela ordem de chegada; contactos repetidos são ignorados
+                    dispatchEngine.enqueue(batchId, page, CycleEngine::generateSmsMessage, queued -> {
+                        Log.d(TAG, "📦 [Ciclo #" + cycleNumber + "] " + queued + " SMS na outbox");
+                        if (queued == 0) {
+                            return;
+                        }
+                        executor.execute(() -> {
+                            if (cycleGeneration == generation && !senderStarted[0]) {
+                                senderStarted[0] = true;
+                                log("📤 [Ciclo #" + cycleNumber + "] Iniciando envio com a primeira página");
+                                startSender(batchId, cycleNumber);
+                            }
+                        });
+                    });
+                });
+            }
+
+            @Override
+            public void onComplete(final int totalPatients) {
+                executor.execute(() -> {
+                    if (cycleGeneration != generation) {
+                        return;
+                    }
+                    Log.d(TAG, "✅ [Ciclo #" + cycleNumber + "] " + totalPatients + " pacientes encontrados, " +
+                            cycleQueue.size() + " únicos");
+                    logManager.addLog("✅ [Ciclo #" + cycleNumber + "] " + cycleQueue.size() + " pacientes únicos");
+
+                    // Na mesma fila das gravações: corre depois da última página
+                    dispatchEngine.markFetchComplete(batchId, () -> executor.execute(() -> {
+                        if (cycleGeneration == generation && !senderStarted[0]) {
+                            log("📭 [Ciclo #" + cycleNumber + "] Nenhum paciente encontrado");
+                            dispatchEngine.finishBatch(batchId);
+                            endCycle(cycleNumber, 0, 0, true);
+                        }
+                    }));
+                });
+            }
+
+            @Override
+            public void onError(final String error) {
+                executor.execute(() -> {
+                    if (cycleGeneration != generation) {
+                        return;
+                    }
+                    log("❌ [Ciclo #" + cycleNumber + "] Erro: " + error);
+
+                    dispatchEngine.markFetchComplete(batchId, () -> executor.execute(() -> {
+                        if (cycleGeneration != generation) {
+                            return;
+                        }
+                        if (senderStarted[0]) {
+                            // O envio já começou: termina com as páginas que chegaram
+                            logManager.addLog("⚠️ [Ciclo #" + cycleNumber + "] Enviando apenas as páginas já carregadas");
+                            return;
+                        }
+
+                        // Lote vazio: descartar para que o próximo ciclo busque de novo
+                        dispatchEngine.discardBatch(batchId);
+                        endCycle(cycleNumber, 0, 0, false);
+                        scheduleRetry(cycleNumber);
+                    }));
+                });
+            }
+        });
+    }
+
+    // Tentar novamente após 1 minuto, ou quando o circuito aceitar uma sonda
+    private void scheduleRetry(final int cycleNumber) {
+        long retryDelay = Math.max(MIN_RETRY_MS, apiService.getBackendRetryAfterMs());
+        if (!apiService.isBackendAvailable()) {
+            logManager.addLog("⏸️ [Ciclo #" + cycleNumber + "] Servidor indisponível, nova tentativa em " +
+                    (retryDelay / 1000) + "s");
+        }
+        retry = executor.schedule(() -> {
+            retry = null;
+            if (!running) {
+                log("🔄 [Ciclo #" + cycleNumber + "] Tentando novamente...");
+                startCycle(cycleNumber, true);
+            }
+        }, retryDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private void startSender(String batchId, int cycleNumber) {
+        log("🚀 [Ciclo #" + cycleNumber + "] Enviando SMS");
+        activeBatchId = batchId;
+        publish(CycleState.PHASE_SENDING, 0, 0);
+        dispatchEngine.start(batchId, cycleNumber);
+    }
+
+    private void onBatchFinished(SmsDispatchEngine.DispatchProgress progress) {
+        if (running && progress.batchId.equals(activeBatchId)) {
+            endCycle(progress.cycleNumber, progress.sent, progress.failed, true);
+        }
+    }
+
+    private void endCycle(int cycleNumber, int successCount, int failureCount, boolean success) {
+        Log.d(TAG, "🎯 [Ciclo #" + cycleNumber + "] FINALIZADO: " +
+                successCount + " sucessos, " + failureCount + " falhas");
+        logManager.addLog(success ?
+                "✅ Ciclo #" + cycleNumber + " concluído (" + successCount + " SMS)" :
+                "❌ Ciclo #" + cycleNumber + " falhou");
+        logManager.setCycleId(0);
+
+        // Latência e erros por servidor no fim de cada ciclo
+        NetworkClient.logEndpointStats();
+
+        if (timeout != null) {
+            timeout.cancel(false);
+            timeout = null;
+        }
+        generation++;
+        running = false;
+        activeBatchId = null;
+        lease.release();
+        publish(success ? CycleState.PHASE_FINISHED : CycleState.PHASE_FAILED, successCount, failureCount);
+    }
+
+    private void publish(int phase, int sent, int failed) {
+        state.postValue(new CycleState(activeCycleNumber, phase,
+                Collections.unmodifiableList(new ArrayList<>(cycleQueue)), sent, failed));
+    }
+
+    private void log(String message) {
+        Log.d(TAG, message);
+        logManager.addLog(message);
+    }
+
+    // ============ AUXILIARES ============
+
+    // Pacientes das partições deste gateway (os restantes são de outros gateways)
+    private static List<ApiService.Patient> ownedPatients(List<ApiService.Patient> page,
+                                                          GatewayShardCoordinator shards) {
+        List<ApiService.Patient> owned = new ArrayList<>(page.size());
+        for (ApiService.Patient patient : page) {
+            if (shards.owns(patient.contact)) {
+                owned.add(patient);
+            }
+        }
+        return owned;
+    }
+
+    // Acrescenta à lista do ciclo apenas contactos ainda não vistos
+    private static int appendUniquePatients(List<ApiService.Patient> page,
+                                            List<ApiService.Patient> target,
+                                            Set<String> seenContacts) {
+        int added = 0;
+        for (ApiService.Patient patient : page) {
+            if (patient.contact != null && !patient.contact.trim().isEmpty()) {
+                String contactKey = PatientStore.normalizeContact(patient.contact);
+                if (seenContacts.add(contactKey)) {
+                    target.add(patient);
+                    added++;
+                }
+            }
+        }
+        return added;
+    }
+
+    public static String generateSmsMessage(ApiService.Patient patient) {
+        String estado = patient.stateDescription != null ? patient.stateDescription : "tratamento";
+        String nome = patient.fullname != null ? patient.fullname.split(" ")[0] : "Paciente";
+
+        return String.format(Locale.getDefault(),
+                "Olá %s,\n\n" +
+                        "Esta é uma mensagem do Centro de Saúde.\n" +
+                        "Seu estado atual: %s.\n" +
+                        "Por favor, mantenha seu tratamento atualizado.\n\n" +
+                        "Atenciosamente,\nEquipe de Saúde",
+                nome, estado);
+    }
+}
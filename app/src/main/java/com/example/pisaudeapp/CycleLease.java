@@ -0,0 +1,67 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.UUID;
+
+// Lease do ciclo automático, gravado em SharedPreferences: no máximo um
+// ciclo de cada vez, mesmo com o serviço recriado ou o processo reiniciado
+// a meio. O lease tem validade; o de um processo que morreu expira sozinho
+// e o ciclo seguinte retoma o lote que ficou na outbox.
+public class CycleLease {
+    private static final String TAG = "CycleLease";
+    private static final String PREFS_NAME = "CycleLeasePrefs";
+
+    private static final String KEY_OWNER = "owner";
+    private static final String KEY_CYCLE = "cycle";
+    private static final String KEY_ACQUIRED_AT = "acquired_at";
+    private static final String KEY_EXPIRES_AT = "expires_at";
+
+    // Identifica este processo como dono do lease
+    private static final String PROCESS_TOKEN = UUID.randomUUID().toString();
+
+    private final SharedPreferences prefs;
+
+    public CycleLease(Context context) {
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    // Gravado com commit() antes de o ciclo começar
+    public synchronized boolean tryAcquire(int cycleNumber, long ttlMs) {
+        long now = System.currentTimeMillis();
+        String owner = prefs.getString(KEY_OWNER, null);
+        long expiresAt = prefs.getLong(KEY_EXPIRES_AT, 0);
+
+        if (owner != null && expiresAt > now) {
+            Log.w(TAG, "🔒 Ciclo #" + prefs.getInt(KEY_CYCLE, -1) + " tem o lease há " +
+                    ((now - prefs.getLong(KEY_ACQUIRED_AT, now)) / 1000) + "s" +
+                    (PROCESS_TOKEN.equals(owner) ? "" : " (outro processo)"));
+            return false;
+        }
+        if (owner != null) {
+            Log.w(TAG, "🔓 Lease expirado do ciclo #" + prefs.getInt(KEY_CYCLE, -1) + " libertado");
+        }
+
+        return prefs.edit()
+                .putString(KEY_OWNER, PROCESS_TOKEN)
+                .putInt(KEY_CYCLE, cycleNumber)
+                .putLong(KEY_ACQUIRED_AT, now)
+                .putLong(KEY_EXPIRES_AT, now + ttlMs)
+                .commit();
+    }
+
+    // Só liberta um lease deste processo
+    public synchronized void release() {
+        if (!PROCESS_TOKEN.equals(prefs.getString(KEY_OWNER, null))) {
+            return;
+        }
+        prefs.edit()
+                .remove(KEY_OWNER)
+                .remove(KEY_CYCLE)
+                .remove(KEY_ACQUIRED_AT)
+                .remove(KEY_EXPIRES_AT)
+                .commit();
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.pisaudeapp;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.Settings;
+import android.util.Log;
+
+import java.util.Locale;
+
+// Agenda os ciclos automáticos em fronteiras fixas: epoch + k * intervalo.
+// Cada ciclo é marcado a partir do epoch e não do fim do anterior, por isso
+// o tempo de execução e os atrasos do Doze não se acumulam; fronteiras
+// perdidas são saltadas e contadas. O alarme é exato (e dispara em Doze)
+// quando o sistema o permite; sem permissão fica numa janela de
+// JITTER_WINDOW_MS e vai para o CycleAlarmReceiver, porque um alarme
+// inexato não pode arrancar um serviço em primeiro plano (Android 12+).
+// O atraso entre a hora planeada e a real é registado.
+// O número do ciclo é derivado da fronteira, sem contadores no serviço.
+public class CycleScheduler {
+    private static final String TAG = "CycleScheduler";
+
+    private static final String PREFS = "AppPrefs";
+    private static final String KEY_EPOCH = "cycle_epoch";
+    private static final String KEY_EPOCH_INTERVAL = "cycle_epoch_interval";
+    private static final String KEY_EPOCH_CYCLE = "cycle_epoch_number";
+    private static final String KEY_LAST_CYCLE = "cycle_last_number";
+
+    public static final String ACTION_RUN_CYCLE = "RUN_SCHEDULED_CYCLE";
+    public static final String EXTRA_CYCLE_NUMBER = "CYCLE_NUMBER";
+    public static final String EXTRA_PLANNED_AT = "PLANNED_AT";
+
+    // Primeiro ciclo depois de o serviço arrancar
+    static final long FIRST_CYCLE_DELAY_MS = 30 * 1000L;
+    static final long MIN_INTERVAL_MS = 5 * 60 * 1000L;
+    // Janela do alarme quando não há alarmes exatos
+    static final long JITTER_WINDOW_MS = 60 * 1000L;
+    private static final int REQUEST_CODE = 2001;
+    private static final int REQUEST_CODE_INEXACT = 2002;
+
+    // Fronteira do ciclo: número e hora planeada
+    public static class Slot {
+        public final int cycleNumber;
+        public final long plannedAt;
+
+        Slot(int cycleNumber, long plannedAt) {
+            this.cycleNumber = cycleNumber;
+            this.plannedAt = plannedAt;
+        }
+    }
+
+    // Atraso entre a hora planeada e o arranque real (partilhado pelo processo)
+    public static class LagStats {
+        private long count = 0;
+        private long totalMs = 0;
+        private long maxMs = 0;
+        private long lastMs = 0;
+        private long missed = 0;
+
+        synchronized void record(long lagMs, int missedSlots) {
+            count++;
+            totalMs += lagMs;
+            maxMs = Math.max(maxMs, lagMs);
+            lastMs = lagMs;
+            missed += missedSlots;
+        }
+
+        public synchronized long getLastMs() {
+            return lastMs;
+        }
+
+        public synchronized long getMaxMs() {
+            return maxMs;
+        }
+
+        public synchronized long getMissed() {
+            return missed;
+        }
+
+        public synchronized long getAverageMs() {
+            return count > 0 ? totalMs / count : 0;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.ROOT, "atraso %.1fs (média %.1fs, máx %.1fs, %d ciclos, %d saltados)",
+                    lastMs / 1000.0, getAverageMs() / 1000.0, maxMs / 1000.0, count, missed);
+        }
+    }
+
+    private static final LagStats lagStats = new LagStats();
+
+    private final Context context;
+    private final SharedPreferences prefs;
+
+    public CycleScheduler(Context context) {
+        this.context = context.getApplicationContext();
+        this.prefs = this.context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    public static LagStats getLagStats() {
+        return lagStats;
+    }
+
+    // Alarmes exatos permitidos? (antes do Android 12 sempre)
+    public static boolean canScheduleExactAlarms(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) {
+            return true;
+        }
+        AlarmManager alarmManager = context.getSystemService(AlarmManager.class);
+        return alarmManager != null && alarmManager.canScheduleExactAlarms();
+    }
+
+    // Ecrã do sistema onde o utilizador permite alarmes exatos a esta app
+    public static Intent exactAlarmSettingsIntent(Context context) {
+        return new Intent(Settings.ACTION_REQUEST_SCHEDULE_EXACT_ALARM,
+                Uri.parse("package:" + context.getPackageName()));
+    }
+
+    // ============ FRONTEIRAS (sem Android, testável na JVM) ============
+
+    // Primeira fronteira estritamente depois de now
+    static Slot nextSlot(long epoch, int epochCycle, long intervalMs, long now) {
+        long k = now < epoch ? 0 : (now - epoch) / intervalMs + 1;
+        return new Slot((int) (epochCycle + k), epoch + k * intervalMs);
+    }
+
+    // Fronteiras que passaram sem ciclo entre a que disparou e a próxima
+    static int missedSlots(Slot fired, Slot next) {
+        return Math.max(0, next.cycleNumber - fired.cycleNumber - 1);
+    }
+
+    static long intervalMs(int minutes) {
+        return Math.max(MIN_INTERVAL_MS, minutes * 60 * 1000L);
+    }
+
+    // ============ AGENDAMENTO ============
+
+    // Arranque do serviço: mantém o epoch se o intervalo não mudou, para que
+    // um reinício do serviço não desloque os ciclos
+    public Slot start() {
+        long now = System.currentTimeMillis();
+        long interval = intervalMs(AutoService.getInterval(context));
+        if (!prefs.contains(KEY_EPOCH) || prefs.getLong(KEY_EPOCH_INTERVAL, 0) != interval) {
+            // Primeira fronteira daqui a FIRST_CYCLE_DELAY_MS, continuando a numeração
+            setEpoch(now + FIRST_CYCLE_DELAY_MS - interval, prefs.getInt(KEY_LAST_CYCLE, 0), interval);
+        }
+        return scheduleNext(now);
+    }
+
+    // Alarme disparou: regista o atraso e marca a fronteira seguinte
+    public Slot onAlarm(Intent intent, long now) {
+        long plannedAt = intent.getLongExtra(EXTRA_PLANNED_AT, now);
+        Slot fired = new Slot(intent.getIntExtra(EXTRA_CYCLE_NUMBER, 0), plannedAt);
+
+        prefs.edit().putInt(KEY_LAST_CYCLE, fired.cycleNumber).apply();
+
+        long interval = intervalMs(AutoService.getInterval(context));
+        if (prefs.getLong(KEY_EPOCH_INTERVAL, 0) != interval) {
+            // Intervalo alterado nas definições: novo epoch a partir deste ciclo
+            Log.d(TAG, "⏰ Novo intervalo de " + (interval / 60000) + " minutos a partir do ciclo #" +
+                    fired.cycleNumber);
+            setEpoch(plannedAt, fired.cycleNumber, interval);
+        }
+
+        Slot next = scheduleNext(now);
+        int missed = missedSlots(fired, next);
+        lagStats.record(Math.max(0, now - plannedAt), missed);
+
+        String message = "⏱️ Ciclo #" + fired.cycleNumber + ": " + lagStats;
+        Log.d(TAG, message);
+        LogManager.getInstance().addLog(message);
+        if (missed > 0) {
+            LogManager.getInstance().addLog("⏭️ " + missed + " ciclos saltados (aparelho em repouso)");
+        }
+        return fired;
+    }
+
+    public void stop() {
+        AlarmManager alarmManager = context.getSystemService(AlarmManager.class);
+        if (alarmManager != null) {
+            alarmManager.cancel(alarmIntent(null));
+            alarmManager.cancel(inexactAlarmIntent(null));
+        }
+        // O próximo arranque começa um epoch novo, continuando a numeração
+        prefs.edit().remove(KEY_EPOCH).remove(KEY_EPOCH_INTERVAL).apply();
+        Log.d(TAG, "⏹️ Ciclos desagendados");
+    }
+
+    private void setEpoch(long epoch, int epochCycle, long interval) {
+        prefs.edit()
+                .putLong(KEY_EPOCH, epoch)
+                .putInt(KEY_EPOCH_CYCLE, epochCycle)
+                .putLong(KEY_EPOCH_INTERVAL, interval)
+                .apply();
+    }
+
+    private Slot scheduleNext(long now) {
+        Slot next = nextSlot(prefs.getLong(KEY_EPOCH, now), prefs.getInt(KEY_EPOCH_CYCLE, 0),
+                prefs.getLong(KEY_EPOCH_INTERVAL, MIN_INTERVAL_MS), now);
+
+        AlarmManager alarmManager = context.getSystemService(AlarmManager.class);
+        if (alarmManager == null) {
+            Log.e(TAG, "❌ AlarmManager indisponível");
+            return next;
+        }
+        if (!canScheduleExactAlarms(context)) {
+            // Só o alarme exato isenta o arranque do serviço em primeiro plano:
+            // o inexato vai para o recetor, que passa o ciclo ao serviço já ativo
+            alarmManager.cancel(alarmIntent(null));
+            alarmManager.setWindow(AlarmManager.RTC_WAKEUP, next.plannedAt, JITTER_WINDOW_MS,
+                    inexactAlarmIntent(next));
+            Log.w(TAG, "⚠️ Sem alarmes exatos: ciclo #" + next.cycleNumber + " numa janela de " +
+                    (JITTER_WINDOW_MS / 1000) + "s");
+        } else {
+            alarmManager.cancel(inexactAlarmIntent(null));
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, next.plannedAt, alarmIntent(next));
+        }
+        Log.d(TAG, "⏰ Ciclo #" + next.cycleNumber + " agendado para daqui a " +
+                ((next.plannedAt - now) / 1000) + "s");
+        return next;
+    }
+
+    // Um só alarme pendente: o mesmo PendingIntent é substituído a cada agendamento
+    private PendingIntent alarmIntent(Slot slot) {
+        Intent intent = cycleIntent(new Intent(context, AutoService.class), slot);
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return PendingIntent.getForegroundService(context, REQUEST_CODE, intent, flags);
+        }
+        return PendingIntent.getService(context, REQUEST_CODE, intent, flags);
+    }
+
+    private PendingIntent inexactAlarmIntent(Slot slot) {
+        Intent intent = cycleIntent(new Intent(context, CycleAlarmReceiver.class), slot);
+        return PendingIntent.getBroadcast(context, REQUEST_CODE_INEXACT, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private static Intent cycleIntent(Intent intent, Slot slot) {
+        intent.setAction(ACTION_RUN_CYCLE);
+        if (slot != null) {
+            intent.putExtra(EXTRA_CYCLE_NUMBER, slot.cycleNumber);
+            intent.putExtra(EXTRA_PLANNED_AT, slot.plannedAt);
+        }
+        return intent;
+    }
+}
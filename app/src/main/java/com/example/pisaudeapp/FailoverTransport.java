@@ -0,0 +1,344 @@
+package com.example.pisaudeapp;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// HttpTransport com vários servidores para o mesmo backend (principal e
+// réplicas). Os pedidos são escritos para BASE_URL e reencaminhados para o
+// servidor escolhido:
+// - cada servidor tem o seu CircuitBreaker;
+// - a escolha é pela latência das sondas de saúde (média móvel), com
+//   histerese para não saltar entre servidores parecidos;
+// - um pedido idempotente (GET, PUT, DELETE, HEAD) que falhe por rede ou 5xx
+//   é repetido logo no servidor seguinte, a meio de um ciclo.
+// As estatísticas por servidor vão para o LogManager.
+public class FailoverTransport implements HttpTransport {
+    private static final String TAG = "FailoverTransport";
+
+    // Sonda leve: HEAD só traz o status e os headers, sem corpo para ler
+    private static final String PROBE_METHOD = "HEAD";
+    private static final String PROBE_PATH = "/api/observation?limit=1";
+    private static final int PROBE_TIMEOUT_MS = 5000;
+    private static final long PROBE_INTERVAL_MS = 60 * 1000L;
+    // Estatísticas no LogManager a cada 10 rondas de sondas
+    private static final int STATS_EVERY_PROBES = 10;
+
+    // Só troca de servidor se o outro for 30% mais rápido
+    private static final double SWITCH_RATIO = 1.3;
+    private static final double EWMA_ALPHA = 0.3;
+
+    private static class Endpoint {
+        final String baseUrl;
+        final CircuitBreaker breaker = new CircuitBreaker();
+        // Estatísticas (protegidas pelo lock do FailoverTransport)
+        long requests = 0;
+        long failures = 0;
+        double probeLatencyMs = -1;     // -1 = ainda sem sonda
+        boolean probeFailed = false;    // a última sonda falhou
+        double requestLatencyMs = -1;
+        String lastError;
+
+        Endpoint(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+    }
+
+    private final String logicalBase;
+    private final HttpTransport delegate;
+    // Lista imutável, trocada inteira por setEndpoints (protegida pelo lock)
+    private List<Endpoint> endpoints;
+    private ScheduledExecutorService prober;
+    private Endpoint active;
+    private int probeRounds = 0;
+    private boolean closed = false;
+
+    public FailoverTransport(String logicalBase, List<String> baseUrls, HttpTransport delegate) {
+        this.logicalBase = logicalBase;
+        this.delegate = delegate;
+        setEndpoints(baseUrls);
+    }
+
+    // Troca a lista de servidores sem parar o transporte: os pedidos seguintes
+    // já usam a lista nova e os servidores que se mantêm guardam o disjuntor e
+    // as estatísticas. As sondas só correm com mais de um servidor.
+    public synchronized void setEndpoints(List<String> baseUrls) {
+        List<Endpoint> updated = new ArrayList<>();
+        for (String url : baseUrls) {
+            String trimmed = url.trim();
+            while (trimmed.endsWith("/")) {
+                trimmed = trimmed.substring(0, trimmed.length() - 1);
+            }
+            if (!trimmed.isEmpty() && find(updated, trimmed) == null) {
+                Endpoint existing = endpoints != null ? find(endpoints, trimmed) : null;
+                updated.add(existing != null ? existing : new Endpoint(trimmed));
+            }
+        }
+        if (updated.isEmpty()) {
+            updated.add(new Endpoint(logicalBase));
+        }
+        endpoints = Collections.unmodifiableList(updated);
+        if (active == null || !endpoints.contains(active)) {
+            active = endpoints.get(0);
+        }
+
+        if (endpoints.size() > 1 && prober == null && !closed) {
+            prober = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "endpoint-probe");
+                thread.setDaemon(true);
+                return thread;
+            });
+            prober.scheduleWithFixedDelay(this::probeAll, 0, PROBE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } else if (endpoints.size() <= 1 && prober != null) {
+            prober.shutdownNow();
+            prober = null;
+        }
+    }
+
+    public synchronized List<String> getEndpoints() {
+        List<String> urls = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            urls.add(endpoint.baseUrl);
+        }
+        return urls;
+    }
+
+    // Para as sondas (quando o transporte é substituído)
+    public synchronized void close() {
+        closed = true;
+        if (prober != null) {
+            prober.shutdownNow();
+            prober = null;
+        }
+    }
+
+    private static Endpoint find(List<Endpoint> endpoints, String baseUrl) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.baseUrl.equals(baseUrl)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        if (!request.url.startsWith(logicalBase)) {
+            return delegate.execute(request);
+        }
+        String path = request.url.substring(logicalBase.length());
+        boolean idempotent = isIdempotent(request.method);
+
+        IOException lastError = null;
+        long retryAfter = Long.MAX_VALUE;
+        List<Endpoint> order = routeOrder();
+        for (int i = 0; i < order.size(); i++) {
+            Endpoint endpoint = order.get(i);
+            if (!endpoint.breaker.allowRequest()) {
+                retryAfter = Math.min(retryAfter, endpoint.breaker.getRetryAfterMs());
+                continue;
+            }
+            boolean canFailOver = idempotent && i < order.size() - 1;
+
+            long start = System.nanoTime();
+            Response response;
+            try {
+                response = delegate.execute(new Request(request.method, endpoint.baseUrl + path,
+                        request.headers, request.body, request.timeoutMs));
+            } catch (IOException e) {
+                onFailure(endpoint, e.getClass().getSimpleName());
+                lastError = e;
+                if (!canFailOver) {
+                    throw e;
+                }
+                logFailover(endpoint, e.getClass().getSimpleName());
+                continue;
+            }
+
+            long latencyMs = (System.nanoTime() - start) / 1000000L;
+            if (response.statusCode >= 500) {
+                onFailure(endpoint, "HTTP " + response.statusCode);
+                if (canFailOver) {
+                    closeQuietly(response.body);
+                    logFailover(endpoint, "HTTP " + response.statusCode);
+                    continue;
+                }
+                return response;
+            }
+            onSuccess(endpoint, latencyMs);
+            return response;
+        }
+
+        if (lastError != null) {
+            throw lastError;
+        }
+        // Todos os servidores com o circuito aberto
+        throw new CircuitBreaker.CircuitOpenException(retryAfter == Long.MAX_VALUE ? 0 : retryAfter);
+    }
+
+    // Servidor ativo primeiro (se continuar saudável e competitivo), depois os
+    // restantes por latência das sondas; os de circuito aberto ficam no fim
+    private synchronized List<Endpoint> routeOrder() {
+        List<Endpoint> order = new ArrayList<>(endpoints);
+        if (order.size() == 1) {
+            return order;
+        }
+        Collections.sort(order, (a, b) -> {
+            boolean aUp = a.breaker.getState() != CircuitBreaker.State.OPEN;
+            boolean bUp = b.breaker.getState() != CircuitBreaker.State.OPEN;
+            if (aUp != bUp) {
+                return aUp ? -1 : 1;
+            }
+            // Empates (ex.: nenhum medido) ficam na ordem configurada: o sort é estável
+            return Double.compare(score(a), score(b));
+        });
+
+        Endpoint best = order.get(0);
+        if (best != active && active.breaker.getState() == CircuitBreaker.State.CLOSED
+                && score(active) <= score(best) * SWITCH_RATIO) {
+            order.remove(active);
+            order.add(0, active);
+        } else if (best != active) {
+            Log.d(TAG, "🔀 Servidor ativo: " + active.baseUrl + " -> " + best.baseUrl);
+            LogManager.getInstance().addLog("🔀 Servidor ativo: " + best.baseUrl);
+            active = best;
+        }
+        return order;
+    }
+
+    // Latência da sonda; sem sonda ou com a última sonda falhada fica atrás de
+    // todos os servidores medidos e saudáveis
+    private synchronized double score(Endpoint endpoint) {
+        if (endpoint.probeLatencyMs < 0 || endpoint.probeFailed) {
+            return Double.MAX_VALUE;
+        }
+        return endpoint.probeLatencyMs;
+    }
+
+    private void onSuccess(Endpoint endpoint, long latencyMs) {
+        endpoint.breaker.onSuccess(latencyMs);
+        synchronized (this) {
+            endpoint.requests++;
+            endpoint.requestLatencyMs = ewma(endpoint.requestLatencyMs, latencyMs);
+        }
+    }
+
+    private void onFailure(Endpoint endpoint, String reason) {
+        endpoint.breaker.onFailure(reason);
+        synchronized (this) {
+            endpoint.requests++;
+            endpoint.failures++;
+            endpoint.lastError = reason;
+        }
+    }
+
+    private void logFailover(Endpoint endpoint, String reason) {
+        Log.w(TAG, "⚠️ " + endpoint.baseUrl + " falhou (" + reason + "), tentando o servidor seguinte");
+        LogManager.getInstance().addLog("⚠️ Failover: " + endpoint.baseUrl + " falhou (" + reason + ")");
+    }
+
+    // ============ SONDAS DE SAÚDE ============
+
+    private void probeAll() {
+        List<Endpoint> snapshot;
+        synchronized (this) {
+            snapshot = endpoints;
+        }
+        for (Endpoint endpoint : snapshot) {
+            probe(endpoint);
+        }
+        boolean logStats;
+        synchronized (this) {
+            logStats = ++probeRounds % STATS_EVERY_PROBES == 1;
+        }
+        if (logStats) {
+            logStats();
+        }
+    }
+
+    private void probe(Endpoint endpoint) {
+        long start = System.nanoTime();
+        try {
+            Response response = delegate.execute(new Request(PROBE_METHOD, endpoint.baseUrl + PROBE_PATH,
+                    null, null, PROBE_TIMEOUT_MS));
+            closeQuietly(response.body);
+            long latencyMs = (System.nanoTime() - start) / 1000000L;
+            if (response.statusCode >= 500) {
+                onProbeFailure(endpoint, "sonda HTTP " + response.statusCode);
+                return;
+            }
+            // Uma sonda bem-sucedida também fecha um circuito aberto
+            endpoint.breaker.onSuccess(latencyMs);
+            synchronized (this) {
+                endpoint.probeLatencyMs = ewma(endpoint.probeLatencyMs, latencyMs);
+                endpoint.probeFailed = false;
+            }
+        } catch (IOException | RuntimeException e) {
+            onProbeFailure(endpoint, "sonda " + e.getClass().getSimpleName());
+        }
+    }
+
+    // Até à próxima sonda boa o servidor fica atrás dos saudáveis (score)
+    private void onProbeFailure(Endpoint endpoint, String reason) {
+        endpoint.breaker.onFailure(reason);
+        synchronized (this) {
+            endpoint.probeFailed = true;
+            endpoint.lastError = reason;
+        }
+    }
+
+    // ============ ESTATÍSTICAS ============
+
+    public synchronized List<String> getStats() {
+        List<String> lines = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            lines.add(String.format(Locale.ROOT, "%s%s: %s, sonda %s, pedidos %s, %d/%d falhas%s",
+                    endpoint == active ? "* " : "",
+                    endpoint.baseUrl,
+                    endpoint.breaker.getState(),
+                    endpoint.probeFailed ? "falhou" : formatMs(endpoint.probeLatencyMs),
+                    formatMs(endpoint.requestLatencyMs),
+                    endpoint.failures, endpoint.requests,
+                    endpoint.lastError != null ? " (última: " + endpoint.lastError + ")" : ""));
+        }
+        return lines;
+    }
+
+    public void logStats() {
+        LogManager logManager = LogManager.getInstance();
+        for (String line : getStats()) {
+            Log.d(TAG, "📊 " + line);
+            logManager.addLog("📊 " + line);
+        }
+    }
+
+    private static String formatMs(double ms) {
+        return ms < 0 ? "-" : Math.round(ms) + " ms";
+    }
+
+    private static double ewma(double current, long sample) {
+        return current < 0 ? sample : current + EWMA_ALPHA * (sample - current);
+    }
+
+    private static boolean isIdempotent(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method) || "DELETE".equals(method);
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
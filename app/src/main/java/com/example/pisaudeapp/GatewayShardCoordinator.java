@@ -0,0 +1,308 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Modo multi-gateway: vários telemóveis com esta app dividem o mesmo ciclo.
+// Os pacientes são distribuídos por PARTITIONS partições (hash do contacto
+// normalizado, a mesma chave da remoção de duplicados, para que dois registos
+// com o mesmo número caiam sempre no mesmo gateway); cada
+// gateway calcula, num anel de hash consistente com os gateways vivos, as
+// partições que lhe cabem e pede-as ao servidor como leases com validade.
+// A renovação periódica devolve a lista de gateways vivos: se um deles
+// morrer, os seus leases expiram e as partições passam para os outros;
+// ao entrar um gateway novo, só ~1/N das partições mudam de dono.
+// Um gateway só envia para pacientes de partições com lease válido.
+//
+// Protocolo (servidor):
+//   POST /api/gateways/lease   {"gatewayId", "partitions": [..], "ttlMs"}
+//        -> {"granted": [..], "gateways": [..]}
+//        Concede as pedidas que estejam livres, expiradas ou já suas, liberta
+//        as que o gateway tinha e deixou de pedir, e regista o heartbeat.
+//   POST /api/gateways/release {"gatewayId"}
+public class GatewayShardCoordinator {
+    private static final String TAG = "GatewayShard";
+
+    private static final String PREFS = "AppPrefs";
+    private static final String KEY_ENABLED = "gateway_sharding";
+    private static final String KEY_GATEWAY_ID = "gateway_id";
+
+    public static final int PARTITIONS = 64;
+    static final long LEASE_TTL_MS = 3 * 60 * 1000L;
+    private static final long RENEW_INTERVAL_MS = LEASE_TTL_MS / 3;
+    // Rondas de lease seguidas enquanto a lista de gateways muda
+    private static final int MAX_CONVERGE_ROUNDS = 3;
+
+    public interface LeaseApi {
+        Grant lease(String gatewayId, Set<Integer> partitions, long ttlMs) throws IOException;
+
+        void release(String gatewayId) throws IOException;
+    }
+
+    public static class Grant {
+        public final Set<Integer> granted;
+        public final List<String> gateways;
+
+        public Grant(Set<Integer> granted, List<String> gateways) {
+            this.granted = granted;
+            this.gateways = gateways;
+        }
+    }
+
+    private static GatewayShardCoordinator instance;
+
+    private final String gatewayId;
+    private final LeaseApi api;
+    private final ScheduledExecutorService renewer;
+    private ScheduledFuture<?> renewal;
+
+    // Lidos pelo motor de envio noutra thread
+    private volatile Set<Integer> owned = Collections.emptySet();
+    private volatile long leaseExpiresAt = 0;
+    private List<String> gateways;
+
+    public GatewayShardCoordinator(String gatewayId, LeaseApi api) {
+        this.gatewayId = gatewayId;
+        this.api = api;
+        this.gateways = Collections.singletonList(gatewayId);
+        this.renewer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "gateway-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // null quando o modo multi-gateway está desligado
+    public static synchronized GatewayShardCoordinator getInstance(Context context) {
+        SharedPreferences prefs = context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        if (!prefs.getBoolean(KEY_ENABLED, false)) {
+            return null;
+        }
+        if (instance == null) {
+            String gatewayId = prefs.getString(KEY_GATEWAY_ID, null);
+            if (gatewayId == null) {
+                gatewayId = UUID.randomUUID().toString();
+                prefs.edit().putString(KEY_GATEWAY_ID, gatewayId).apply();
+            }
+            instance = new GatewayShardCoordinator(gatewayId,
+                    new HttpLeaseApi(ApiService.BASE_URL, NetworkClient.getTransport(context)));
+        }
+        return instance;
+    }
+
+    public static void setEnabled(Context context, boolean enabled) {
+        context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+                .edit().putBoolean(KEY_ENABLED, enabled).apply();
+        if (!enabled) {
+            GatewayShardCoordinator current;
+            synchronized (GatewayShardCoordinator.class) {
+                current = instance;
+                instance = null;
+            }
+            if (current != null) {
+                current.stop();
+            }
+        }
+    }
+
+    public String getGatewayId() {
+        return gatewayId;
+    }
+
+    public static int partitionOf(String contact) {
+        return Math.floorMod(ConsistentHashRing.hash("contact-" + PatientStore.normalizeContact(contact)),
+                PARTITIONS);
+    }
+
+    // Este gateway envia para o contacto? (lease válido para a sua partição)
+    public boolean owns(String contact) {
+        return System.currentTimeMillis() < leaseExpiresAt && owned.contains(partitionOf(contact));
+    }
+
+    public Set<Integer> getOwnedPartitions() {
+        return owned;
+    }
+
+    public synchronized List<String> getGateways() {
+        return new ArrayList<>(gateways);
+    }
+
+    // Partições que o anel atribui a este gateway
+    Set<Integer> desiredPartitions(List<String> liveGateways) {
+        ConsistentHashRing ring = new ConsistentHashRing(liveGateways);
+        Set<Integer> desired = new TreeSet<>();
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            if (gatewayId.equals(ring.ownerOfPartition(partition))) {
+                desired.add(partition);
+            }
+        }
+        return desired;
+    }
+
+    // Pede/renova os leases (rede: chamar fora da thread principal).
+    // false se o servidor não respondeu; os leases atuais continuam válidos
+    // até expirarem.
+    public synchronized boolean refresh() {
+        List<String> known = gateways;
+        try {
+            for (int round = 0; round < MAX_CONVERGE_ROUNDS; round++) {
+                long requestedAt = System.currentTimeMillis();
+                Grant grant = api.lease(gatewayId, desiredPartitions(known), LEASE_TTL_MS);
+                owned = Collections.unmodifiableSet(new HashSet<>(grant.granted));
+                leaseExpiresAt = requestedAt + LEASE_TTL_MS;
+
+                List<String> live = new ArrayList<>(new TreeSet<>(grant.gateways));
+                if (!live.contains(gatewayId)) {
+                    live.add(gatewayId);
+                    Collections.sort(live);
+                }
+                if (live.equals(known)) {
+                    break;
+                }
+                known = live;
+            }
+            gateways = known;
+            Log.d(TAG, "🧩 Gateway " + gatewayId + ": " + owned.size() + "/" + PARTITIONS +
+                    " partições, " + known.size() + " gateways ativos");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "⚠️ Falha ao renovar leases: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Renovação periódica (e heartbeat) enquanto o serviço automático estiver
+    // ligado, também entre ciclos: as partições só mudam de dono quando um
+    // gateway entra, sai ou morre
+    public synchronized void start() {
+        if (renewal == null) {
+            renewal = renewer.scheduleWithFixedDelay(this::refresh,
+                    0, RENEW_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Liberta todas as partições para os outros gateways (modo desligado ou
+    // serviço parado)
+    public void stop() {
+        synchronized (this) {
+            if (renewal != null) {
+                renewal.cancel(false);
+                renewal = null;
+            }
+            owned = Collections.emptySet();
+            leaseExpiresAt = 0;
+        }
+        renewer.execute(() -> {
+            try {
+                api.release(gatewayId);
+            } catch (IOException | RuntimeException e) {
+                // Os leases expiram sozinhos
+                Log.w(TAG, "⚠️ Falha ao libertar leases: " + e.getMessage());
+            }
+        });
+    }
+
+    // ============ HTTP ============
+
+    public static class HttpLeaseApi implements LeaseApi {
+        private static final int TIMEOUT_MS = 10000;
+
+        private final String baseUrl;
+        private final HttpTransport transport;
+
+        public HttpLeaseApi(String baseUrl, HttpTransport transport) {
+            this.baseUrl = baseUrl;
+            this.transport = transport;
+        }
+
+        @Override
+        public Grant lease(String gatewayId, Set<Integer> partitions, long ttlMs) throws IOException {
+            try {
+                JSONArray requested = new JSONArray();
+                for (int partition : partitions) {
+                    requested.put(partition);
+                }
+                JSONObject body = new JSONObject()
+                        .put("gatewayId", gatewayId)
+                        .put("partitions", requested)
+                        .put("ttlMs", ttlMs);
+                JSONObject response = new JSONObject(post("/api/gateways/lease", body));
+
+                Set<Integer> granted = new HashSet<>();
+                JSONArray grantedArray = response.optJSONArray("granted");
+                for (int i = 0; grantedArray != null && i < grantedArray.length(); i++) {
+                    granted.add(grantedArray.getInt(i));
+                }
+                List<String> gateways = new ArrayList<>();
+                JSONArray gatewayArray = response.optJSONArray("gateways");
+                for (int i = 0; gatewayArray != null && i < gatewayArray.length(); i++) {
+                    gateways.add(gatewayArray.getString(i));
+                }
+                return new Grant(granted, gateways);
+            } catch (JSONException e) {
+                throw new IOException("Resposta de lease inválida", e);
+            }
+        }
+
+        @Override
+        public void release(String gatewayId) throws IOException {
+            try {
+                post("/api/gateways/release", new JSONObject().put("gatewayId", gatewayId));
+            } catch (JSONException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private String post(String path, JSONObject body) throws IOException {
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Content-Type", "application/json; charset=utf-8");
+            HttpTransport.Response response = transport.execute(new HttpTransport.Request("POST",
+                    baseUrl + path, headers, body.toString().getBytes(StandardCharsets.UTF_8), TIMEOUT_MS));
+            String text = readFully(response.body);
+            if (response.statusCode < 200 || response.statusCode >= 300) {
+                throw new IOException("HTTP " + response.statusCode + " em " + path);
+            }
+            return text;
+        }
+
+        private static String readFully(InputStream in) throws IOException {
+            if (in == null) {
+                return "";
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                byte[] buffer = new byte[4096];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.pisaudeapp;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Transporte HTTP por baixo do NetworkClient. O Volley fala com ele através
+// do TransportHttpStack; trocar de implementação (outra biblioteca, um
+// servidor falso nos testes) não mexe na ApiService nem nos pedidos.
+public interface HttpTransport {
+
+    Response execute(Request request) throws IOException;
+
+    final class Request {
+        public final String method;
+        public final String url;
+        public final Map<String, String> headers;
+        public final byte[] body;          // null quando o pedido não tem corpo
+        public final int timeoutMs;
+
+        public Request(String method, String url, Map<String, String> headers, byte[] body, int timeoutMs) {
+            this.method = method;
+            this.url = url;
+            this.headers = headers != null ? headers : Collections.<String, String>emptyMap();
+            this.body = body;
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    final class Response {
+        public final int statusCode;
+        public final Map<String, List<String>> headers;
+        public final InputStream body;     // já descomprimido; null se não houver corpo
+        public final int contentLength;    // -1 quando desconhecido (ex.: corpo gzip)
+        private final CountingInputStream wire;
+
+        public Response(int statusCode, Map<String, List<String>> headers, InputStream body,
+                        int contentLength, CountingInputStream wire) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+            this.contentLength = contentLength;
+            this.wire = wire;
+        }
+
+        // Bytes recebidos da rede até agora (comprimidos, se for o caso)
+        public long getWireBytes() {
+            return wire != null ? wire.getCount() : 0;
+        }
+    }
+
+    // Conta os bytes que passam, antes de qualquer descompressão
+    class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        public CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
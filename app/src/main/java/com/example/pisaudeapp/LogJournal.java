@@ -0,0 +1,405 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Diário dos logs em disco, para o histórico sobreviver à morte do processo
+// e ao anel do LogManager. Ficheiros de tamanho fixo mapeados em memória
+// (journal-<n>.bin), escritos só no fim; cheio um, passa-se ao seguinte e os
+// mais antigos além de maxSegments são apagados. Cada registo é binário:
+//   [int tamanho da mensagem][long hora][byte nível][int ciclo][mensagem UTF-8]
+// O tamanho é escrito por último: um registo a meio fica com 0 e marca o fim.
+// A leitura pagina os ficheiros mapeados só para leitura, sem os copiar para
+// a heap.
+public class LogJournal {
+    private static final String TAG = "LogJournal";
+
+    private static final String DIR_NAME = "log-journal";
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".bin";
+
+    private static final int MAGIC = 0x50534c4a;   // "PSLJ"
+    private static final int VERSION = 1;
+    static final int SEGMENT_HEADER = 8;
+    static final int RECORD_HEADER = 4 + 8 + 1 + 4;
+    static final int MAX_MESSAGE_BYTES = 4096;
+
+    private static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    // 64 x 4 MB: vários dias de ciclos
+    private static final int DEFAULT_MAX_SEGMENTS = 64;
+    // Entregas do anel ao diário
+    private static final long FLUSH_INTERVAL_MS = 50;
+
+    public static class Record {
+        public final long timestamp;
+        public final int level;
+        public final int cycleId;
+        public final String message;
+
+        Record(long timestamp, int level, int cycleId, String message) {
+            this.timestamp = timestamp;
+            this.level = level;
+            this.cycleId = cycleId;
+            this.message = message;
+        }
+
+        public String format() {
+            String time = new SimpleDateFormat("dd/MM HH:mm:ss", Locale.getDefault()).format(new Date(timestamp));
+            return "[" + time + "]" + (cycleId != 0 ? " [Ciclo #" + cycleId + "]" : "") + " " + message;
+        }
+    }
+
+    // Posição de leitura: ficheiro e deslocamento do próximo registo
+    public static class Position {
+        public final long segment;
+        public final int offset;
+
+        Position(long segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    public static class Page {
+        public final List<Record> records;
+        // Onde continuar; igual à posição pedida se não havia mais nada
+        public final Position next;
+
+        Page(List<Record> records, Position next) {
+            this.records = records;
+            this.next = next;
+        }
+    }
+
+    private static LogJournal instance;
+
+    private final File dir;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    // Protegidos pelo lock do LogJournal
+    private long currentSegment = -1;
+    private MappedByteBuffer writeBuffer;
+
+    public static synchronized LogJournal getInstance(Context context) {
+        if (instance == null) {
+            File dir = new File(context.getApplicationContext().getFilesDir(), DIR_NAME);
+            instance = new LogJournal(dir, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+            instance.attach(LogManager.getInstance());
+        }
+        return instance;
+    }
+
+    LogJournal(File dir, int segmentSize, int maxSegments) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+    }
+
+    // Consome o anel do LogManager numa thread própria
+    void attach(LogManager logManager) {
+        ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-journal");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        logManager.subscribeEntries(entries -> {
+            for (LogManager.Entry entry : entries) {
+                append(entry.timestamp, entry.level, entry.cycleId, entry.message);
+            }
+        }, writer, FLUSH_INTERVAL_MS);
+    }
+
+    // ============ ESCRITA ============
+
+    public synchronized void append(long timestamp, int level, int cycleId, String message) {
+        byte[] bytes = (message != null ? message : "").getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_MESSAGE_BYTES) {
+            // Cortar no início de um carácter, nunca a meio de uma sequência UTF-8
+            int cut = MAX_MESSAGE_BYTES;
+            while (cut > 0 && (bytes[cut] & 0xC0) == 0x80) {
+                cut--;
+            }
+            bytes = Arrays.copyOf(bytes, cut);
+        }
+        int recordSize = RECORD_HEADER + bytes.length;
+        try {
+            if (writeBuffer == null) {
+                openLatestSegment();
+            }
+            // Espaço para o registo e para o 0 que marca o fim
+            if (writeBuffer.remaining() < recordSize + 4) {
+                openSegment(currentSegment + 1);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Diário indisponível", e);
+            writeBuffer = null;
+            return;
+        }
+
+        int start = writeBuffer.position();
+        writeBuffer.position(start + 4);
+        writeBuffer.putLong(timestamp);
+        writeBuffer.put((byte) level);
+        writeBuffer.putInt(cycleId);
+        writeBuffer.put(bytes);
+        // Confirmar o registo
+        writeBuffer.putInt(start, bytes.length + 1);
+    }
+
+    // Continua o último ficheiro a partir do fim dos registos já gravados
+    private void openLatestSegment() throws IOException {
+        long[] segments = listSegments();
+        if (segments.length == 0) {
+            openSegment(0);
+            return;
+        }
+        long latest = segments[segments.length - 1];
+        MappedByteBuffer buffer = map(latest, FileChannel.MapMode.READ_WRITE);
+        if (!hasValidHeader(buffer)) {
+            openSegment(latest + 1);
+            return;
+        }
+        int offset = SEGMENT_HEADER;
+        while (recordAt(buffer, offset) > 0) {
+            offset += RECORD_HEADER + recordAt(buffer, offset) - 1;
+        }
+        buffer.position(offset);
+        currentSegment = latest;
+        writeBuffer = buffer;
+        Log.d(TAG, "📓 Diário retomado em " + fileName(latest) + " (" + offset + " bytes)");
+    }
+
+    private void openSegment(long segment) throws IOException {
+        if (writeBuffer != null) {
+            writeBuffer.force();
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Não foi possível criar " + dir);
+        }
+        File file = new File(dir, fileName(segment));
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Não foi possível substituir " + file);
+        }
+        MappedByteBuffer buffer = map(segment, FileChannel.MapMode.READ_WRITE);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        currentSegment = segment;
+        writeBuffer = buffer;
+        deleteOldSegments();
+    }
+
+    private void deleteOldSegments() {
+        long[] segments = listSegments();
+        for (int i = 0; i < segments.length - maxSegments; i++) {
+            if (new File(dir, fileName(segments[i])).delete()) {
+                Log.d(TAG, "🗑️ " + fileName(segments[i]) + " apagado");
+            }
+        }
+    }
+
+    // ============ LEITURA ============
+
+    // Registo mais antigo ainda em disco
+    public Position start() {
+        long[] segments = listSegments();
+        return new Position(segments.length > 0 ? segments[0] : 0, SEGMENT_HEADER);
+    }
+
+    // Primeiro registo com hora >= timestamp: escolhe o ficheiro pela hora do
+    // seu primeiro registo e só percorre esse
+    public Position seek(long timestamp) {
+        long[] segments = listSegments();
+        int chosen = 0;
+        for (int i = 0; i < segments.length; i++) {
+            long first = firstTimestamp(segments[i]);
+            if (first == Long.MIN_VALUE || first > timestamp) {
+                break;
+            }
+            chosen = i;
+        }
+        if (segments.length == 0) {
+            return start();
+        }
+
+        Position position = new Position(segments[chosen], SEGMENT_HEADER);
+        while (true) {
+            Page page = read(position, 256, 0);
+            for (int i = 0; i < page.records.size(); i++) {
+                if (page.records.get(i).timestamp >= timestamp) {
+                    // Voltar ao início da página e avançar i registos
+                    return read(position, i, 0).next;
+                }
+            }
+            if (page.records.isEmpty()) {
+                return page.next;
+            }
+            position = page.next;
+        }
+    }
+
+    // Até maxRecords registos a partir de from; cycleId != 0 filtra por ciclo
+    public Page read(Position from, int maxRecords, int cycleId) {
+        List<Record> records = new ArrayList<>(Math.min(maxRecords, 256));
+        long[] segments = listSegments();
+        long segment = from.segment;
+        int offset = from.offset;
+        if (segments.length > 0 && segment < segments[0]) {
+            // O ficheiro já foi apagado pela rotação: continuar no mais antigo
+            segment = segments[0];
+            offset = SEGMENT_HEADER;
+        }
+
+        while (records.size() < maxRecords) {
+            ByteBuffer buffer;
+            try {
+                buffer = segmentForRead(segment);
+            } catch (IOException e) {
+                Log.e(TAG, "❌ Erro ao ler " + fileName(segment), e);
+                break;
+            }
+            if (buffer == null) {
+                break;
+            }
+
+            int length;
+            while (records.size() < maxRecords && (length = recordAt(buffer, offset)) > 0) {
+                int messageBytes = length - 1;
+                long timestamp = buffer.getLong(offset + 4);
+                int level = buffer.get(offset + 12);
+                int recordCycle = buffer.getInt(offset + 13);
+                if (cycleId == 0 || recordCycle == cycleId) {
+                    byte[] bytes = new byte[messageBytes];
+                    ByteBuffer slice = buffer.duplicate();
+                    slice.position(offset + RECORD_HEADER);
+                    slice.get(bytes);
+                    records.add(new Record(timestamp, level, recordCycle, new String(bytes, StandardCharsets.UTF_8)));
+                }
+                offset += RECORD_HEADER + messageBytes;
+            }
+            if (records.size() >= maxRecords) {
+                break;
+            }
+
+            // Fim deste ficheiro: seguir para o próximo, se já existir
+            long following = nextSegment(segments, segment);
+            if (following < 0) {
+                break;
+            }
+            segment = following;
+            offset = SEGMENT_HEADER;
+        }
+        return new Page(records, new Position(segment, offset));
+    }
+
+    // ============ AUXILIARES ============
+
+    // Tamanho gravado + 1 (0 = sem registo nesta posição)
+    private int recordAt(ByteBuffer buffer, int offset) {
+        if (offset + RECORD_HEADER > buffer.limit()) {
+            return 0;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || length - 1 > MAX_MESSAGE_BYTES || offset + RECORD_HEADER + length - 1 > buffer.limit()) {
+            return 0;
+        }
+        return length;
+    }
+
+    private ByteBuffer segmentForRead(long segment) throws IOException {
+        synchronized (this) {
+            if (segment == currentSegment && writeBuffer != null) {
+                // Ficheiro em escrita: a mesma memória, vista só até onde está confirmado
+                ByteBuffer buffer = writeBuffer.duplicate();
+                buffer.limit(writeBuffer.position());
+                return buffer;
+            }
+        }
+        File file = new File(dir, fileName(segment));
+        if (!file.exists()) {
+            return null;
+        }
+        MappedByteBuffer buffer = map(segment, FileChannel.MapMode.READ_ONLY);
+        return hasValidHeader(buffer) ? buffer : null;
+    }
+
+    private long firstTimestamp(long segment) {
+        try {
+            ByteBuffer buffer = segmentForRead(segment);
+            if (buffer == null || recordAt(buffer, SEGMENT_HEADER) == 0) {
+                return Long.MIN_VALUE;
+            }
+            return buffer.getLong(SEGMENT_HEADER + 4);
+        } catch (IOException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private MappedByteBuffer map(long segment, FileChannel.MapMode mode) throws IOException {
+        File file = new File(dir, fileName(segment));
+        try (RandomAccessFile raf = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+             FileChannel channel = raf.getChannel()) {
+            long size = mode == FileChannel.MapMode.READ_ONLY ? Math.min(channel.size(), segmentSize) : segmentSize;
+            MappedByteBuffer buffer = channel.map(mode, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            return buffer;
+        }
+    }
+
+    private static boolean hasValidHeader(ByteBuffer buffer) {
+        return buffer.limit() >= SEGMENT_HEADER && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION;
+    }
+
+    private long[] listSegments() {
+        String[] names = dir.list();
+        if (names == null) {
+            return new long[0];
+        }
+        long[] segments = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                try {
+                    long segment = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                    segments[count++] = segment;
+                } catch (NumberFormatException ignored) {
+                    // Outro ficheiro na pasta
+                }
+            }
+        }
+        segments = Arrays.copyOf(segments, count);
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private static long nextSegment(long[] segments, long segment) {
+        for (long candidate : segments) {
+            if (candidate > segment) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    private static String fileName(long segment) {
+        return String.format(Locale.ROOT, "%s%08d%s", PREFIX, segment, SUFFIX);
+    }
+}
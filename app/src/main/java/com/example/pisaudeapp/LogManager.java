@@ -5,20 +5,279 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+// Logs da aplicação num anel de capacidade fixa, sem locks: cada addLog
+// reserva uma sequência com um incremento atómico e grava a entrada na
+// posição correspondente (várias threads produzem ao mesmo tempo). A hora é
+// guardada em milissegundos e só é formatada na leitura. As leituras são
+// cópias do anel; uma entrada ainda a ser escrita ou já substituída é saltada.
+// Os ecrãs subscrevem em modo agregado (subscribe): recebem no máximo uma
+// lista de entradas novas por intervalo, formatada fora de quem escreve.
+// O LogJournal consome o anel da mesma forma e grava as entradas em disco.
 public class LogManager {
     private static LogManager instance;
-    private final List<String> logs = new ArrayList<>();
-    private final List<LogUpdateListener> listeners = new ArrayList<>();
-    private static final int MAX_LOGS = 1000;
-    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
 
+    public static final int LEVEL_INFO = 0;
+    public static final int LEVEL_WARN = 1;
+    public static final int LEVEL_ERROR = 2;
+
+    // Potência de 2, para o índice ser uma máscara
+    static final int MAX_LOGS = 1024;
+
+    private final int mask;
+    private final AtomicReferenceArray<Entry> ring;
+    // Próxima sequência a reservar
+    private final AtomicLong head = new AtomicLong();
+    // Primeira sequência visível depois de clearLogs()
+    private volatile long clearedAt = 0;
+    // Ciclo automático em curso (0 = nenhum), gravado em cada entrada
+    private volatile int cycleId = 0;
+    private final CopyOnWriteArrayList<LogUpdateListener> listeners = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    // Marca as entregas agregadas; criado na primeira subscrição (os testes
+    // passam um relógio manual)
+    private DeliveryScheduler deliveryScheduler;
+
+    private static final ThreadLocal<SimpleDateFormat> TIME_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
+        }
+    };
+
+    // Síncrono: chamado na thread que escreve, uma vez por log
     public interface LogUpdateListener {
         void onLogsUpdated(String newLog);
         void onLogsCleared();
     }
 
-    private LogManager() {}
+    // Agregado: entradas novas de um intervalo numa só chamada, da mais antiga
+    // para a mais recente, no Executor indicado em subscribe()
+    public interface LogBatchListener {
+        void onLogsAppended(List<String> newLogs);
+        void onLogsCleared();
+    }
+
+    // Relógio e agendamento das entregas agregadas
+    interface DeliveryScheduler {
+        long now();
+
+        void schedule(Runnable task, long delayMs);
+    }
+
+    // Por omissão: hora do sistema e uma thread "log-delivery"
+    private static final class ExecutorDeliveryScheduler implements DeliveryScheduler {
+        private final ScheduledExecutorService executor;
+
+        ExecutorDeliveryScheduler() {
+            ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "log-delivery");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+            pool.setRemoveOnCancelPolicy(true);
+            this.executor = pool;
+        }
+
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Subscrição agregada: lê o anel a partir do seu cursor a cada entrega
+    public final class Subscription {
+        // Um dos dois: lista formatada para ecrãs, entradas em bruto para o diário
+        private final LogBatchListener listener;
+        private final EntryConsumer consumer;
+        private final Executor executor;
+        private final long intervalMs;
+        private final AtomicBoolean pending = new AtomicBoolean();
+        private volatile boolean cancelled = false;
+        // Só usados na thread de entrega
+        private long cursor;
+        private long seenClearedAt;
+        private long lastDeliveryAt = 0;
+
+        // Logs que chegaram com uma entrega já marcada (juntos na mesma lista)
+        private final AtomicLong coalesced = new AtomicLong();
+        // Logs substituídos no anel antes de serem entregues
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+
+        Subscription(LogBatchListener listener, EntryConsumer consumer, Executor executor, long intervalMs) {
+            this.listener = listener;
+            this.consumer = consumer;
+            this.executor = executor;
+            this.intervalMs = intervalMs;
+            this.cursor = head.get();
+            this.seenClearedAt = clearedAt;
+        }
+
+        public long getCoalesced() {
+            return coalesced.get();
+        }
+
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        public long getDelivered() {
+            return delivered.get();
+        }
+
+        public long getBatches() {
+            return batches.get();
+        }
+
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        void signal() {
+            if (!pending.compareAndSet(false, true)) {
+                coalesced.incrementAndGet();
+                return;
+            }
+            long delay = Math.max(0, lastDeliveryAt + intervalMs - deliveryScheduler.now());
+            deliveryScheduler.schedule(this::deliver, delay);
+        }
+
+        private void deliver() {
+            // Antes de ler o anel: um log escrito a partir daqui marca nova entrega
+            pending.set(false);
+            if (cancelled) {
+                return;
+            }
+            lastDeliveryAt = deliveryScheduler.now();
+
+            long cleared = clearedAt;
+            final boolean wasCleared = cleared != seenClearedAt;
+            if (wasCleared) {
+                seenClearedAt = cleared;
+                cursor = Math.max(cursor, cleared);
+            }
+
+            long end = head.get();
+            long oldest = end - ring.length();
+            if (cursor < oldest) {
+                dropped.addAndGet(oldest - cursor);
+                cursor = oldest;
+            }
+            final List<Entry> newEntries = new ArrayList<>((int) (end - cursor));
+            for (long sequence = cursor; sequence < end; sequence++) {
+                Entry entry = ring.get((int) (sequence & mask));
+                if (entry != null && entry.sequence == sequence) {
+                    newEntries.add(entry);
+                } else if (entry != null && entry.sequence > sequence) {
+                    dropped.incrementAndGet();
+                } else {
+                    // Ainda a ser escrita: fica para a próxima entrega
+                    end = sequence;
+                    signal();
+                    break;
+                }
+            }
+            cursor = end;
+
+            if (consumer != null) {
+                // O diário guarda tudo, mesmo o que foi limpo do ecrã
+                if (!newEntries.isEmpty()) {
+                    delivered.addAndGet(newEntries.size());
+                    batches.incrementAndGet();
+                    executor.execute(() -> consumer.onEntries(newEntries));
+                }
+                return;
+            }
+            if (!wasCleared && newEntries.isEmpty()) {
+                return;
+            }
+            final List<String> newLogs = new ArrayList<>(newEntries.size());
+            for (Entry entry : newEntries) {
+                newLogs.add(entry.format());
+            }
+            delivered.addAndGet(newLogs.size());
+            batches.incrementAndGet();
+            executor.execute(() -> {
+                if (cancelled) {
+                    return;
+                }
+                if (wasCleared) {
+                    listener.onLogsCleared();
+                }
+                if (!newLogs.isEmpty()) {
+                    listener.onLogsAppended(newLogs);
+                }
+            });
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d logs em %d entregas, %d agregados, %d perdidos",
+                    delivered.get(), batches.get(), coalesced.get(), dropped.get());
+        }
+    }
+
+    // Consumidor interno das entradas em bruto (LogJournal)
+    interface EntryConsumer {
+        void onEntries(List<Entry> entries);
+    }
+
+    // Entrada imutável: publicada inteira no anel
+    static final class Entry {
+        final long sequence;
+        final long timestamp;
+        final int level;
+        final int cycleId;
+        final String message;
+
+        Entry(long sequence, long timestamp, int level, int cycleId, String message) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.level = level;
+            this.cycleId = cycleId;
+            this.message = message;
+        }
+
+        String format() {
+            return "[" + TIME_FORMAT.get().format(new Date(timestamp)) + "] " + message;
+        }
+    }
+
+    private LogManager() {
+        this(MAX_LOGS);
+    }
+
+    // Testes: anel com outra capacidade
+    LogManager(int capacity) {
+        this(capacity, null);
+    }
+
+    // Testes: entregas agregadas num relógio controlado pelo teste
+    LogManager(int capacity, DeliveryScheduler deliveryScheduler) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacidade tem de ser potência de 2: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.deliveryScheduler = deliveryScheduler;
+    }
 
     public static synchronized LogManager getInstance() {
         if (instance == null) {
@@ -27,49 +286,115 @@ public class LogManager {
         return instance;
     }
 
-    public synchronized void addLog(String message) {
-        String time = timeFormat.format(new Date());
-        String logEntry = "[" + time + "] " + message;
+    public void addLog(String message) {
+        long sequence = head.getAndIncrement();
+        Entry entry = new Entry(sequence, System.currentTimeMillis(), levelOf(message), cycleId, message);
+        // Escrita ordenada: quem ler a posição vê a entrada completa
+        ring.lazySet((int) (sequence & mask), entry);
 
-        logs.add(0, logEntry); // Adiciona no início para mostrar os mais recentes primeiro
+        for (Subscription subscription : subscriptions) {
+            subscription.signal();
+        }
 
-        // Limitar o número máximo de logs
-        if (logs.size() > MAX_LOGS) {
-            logs.remove(logs.size() - 1);
+        // Notificar fora de qualquer lock; só se formata se houver quem ouça
+        if (!listeners.isEmpty()) {
+            String logEntry = entry.format();
+            for (LogUpdateListener listener : listeners) {
+                listener.onLogsUpdated(logEntry);
+            }
         }
+    }
 
-        // Notificar todos os listeners
-        for (LogUpdateListener listener : listeners) {
-            listener.onLogsUpdated(logEntry);
+    // Nível pelo prefixo que as mensagens já usam
+    static int levelOf(String message) {
+        if (message == null) {
+            return LEVEL_INFO;
+        }
+        if (message.startsWith("❌")) {
+            return LEVEL_ERROR;
+        }
+        if (message.startsWith("⚠️")) {
+            return LEVEL_WARN;
         }
+        return LEVEL_INFO;
     }
 
-    public synchronized List<String> getLogs() {
-        return new ArrayList<>(logs);
+    // Marca as entradas seguintes com o ciclo automático (0 quando termina)
+    public void setCycleId(int cycleId) {
+        this.cycleId = cycleId;
     }
 
-    public synchronized String getAllLogsAsString() {
-        StringBuilder sb = new StringBuilder();
-        for (String log : logs) {
-            sb.append(log).append("\n");
+    // Mais recentes primeiro
+    public List<String> getLogs() {
+        List<Entry> entries = snapshot();
+        List<String> logs = new ArrayList<>(entries.size());
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            logs.add(entries.get(i).format());
+        }
+        return logs;
+    }
+
+    public String getAllLogsAsString() {
+        List<Entry> entries = snapshot();
+        StringBuilder sb = new StringBuilder(entries.size() * 64);
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            sb.append(entries.get(i).format()).append("\n");
         }
         return sb.toString();
     }
 
-    public synchronized void clearLogs() {
-        logs.clear();
+    // Entradas visíveis, da mais antiga para a mais recente
+    List<Entry> snapshot() {
+        long end = head.get();
+        long start = Math.max(clearedAt, end - ring.length());
+        List<Entry> entries = new ArrayList<>((int) Math.max(0, end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            Entry entry = ring.get((int) (sequence & mask));
+            // null ou outra sequência: ainda a ser escrita, ou já substituída
+            if (entry != null && entry.sequence == sequence) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    public void clearLogs() {
+        clearedAt = head.get();
         for (LogUpdateListener listener : listeners) {
             listener.onLogsCleared();
         }
+        for (Subscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    // Entregas agregadas no executor (ex.: o Handler da thread principal),
+    // no máximo uma por intervalo, a começar pelos logs escritos a seguir
+    public Subscription subscribe(LogBatchListener listener, Executor executor, long intervalMs) {
+        return subscribe(listener, null, executor, intervalMs);
     }
 
-    public synchronized void registerListener(LogUpdateListener listener) {
-        if (!listeners.contains(listener)) {
-            listeners.add(listener);
+    Subscription subscribeEntries(EntryConsumer consumer, Executor executor, long intervalMs) {
+        return subscribe(null, consumer, executor, intervalMs);
+    }
+
+    private Subscription subscribe(LogBatchListener listener, EntryConsumer consumer,
+                                   Executor executor, long intervalMs) {
+        synchronized (this) {
+            if (deliveryScheduler == null) {
+                deliveryScheduler = new ExecutorDeliveryScheduler();
+            }
         }
+        Subscription subscription = new Subscription(listener, consumer, executor, intervalMs);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public void registerListener(LogUpdateListener listener) {
+        listeners.addIfAbsent(listener);
     }
 
-    public synchronized void unregisterListener(LogUpdateListener listener) {
+    public void unregisterListener(LogUpdateListener listener) {
         listeners.remove(listener);
     }
-}
\ No newline at end of file
+}
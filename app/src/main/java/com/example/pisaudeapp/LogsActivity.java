@@ -14,10 +14,17 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 
-public class LogsActivity extends AppCompatActivity implements LogManager.LogUpdateListener {
+import java.util.List;
+
+public class LogsActivity extends AppCompatActivity implements LogManager.LogBatchListener {
+
+    private static final String EMPTY_TEXT = "Nenhum log disponível.\nO sistema está aguardando ações...";
+    // No máximo uma atualização do ecrã por intervalo, com todas as linhas novas
+    private static final long LOG_BATCH_INTERVAL_MS = 200;
 
     private TextView logsTextView;
     private LogManager logManager;
+    private LogManager.Subscription logSubscription;
     private Handler handler;
     private boolean isActivityActive = true;
 
@@ -42,8 +49,8 @@ public class LogsActivity extends AppCompatActivity implements LogManager.LogUpd
         // Inicializar LogManager
         logManager = LogManager.getInstance();
 
-        // Registrar-se como listener
-        logManager.registerListener(this);
+        // Receber os logs novos em lotes, na thread principal
+        logSubscription = logManager.subscribe(this, handler::post, LOG_BATCH_INTERVAL_MS);
 
         // Carregar logs existentes
         updateLogsDisplay();
@@ -83,7 +90,7 @@ public class LogsActivity extends AppCompatActivity implements LogManager.LogUpd
     private void updateLogsDisplay() {
         String logs = logManager.getAllLogsAsString();
         if (logs.isEmpty()) {
-            logs = "Nenhum log disponível.\nO sistema está aguardando ações...";
+            logs = EMPTY_TEXT;
         }
         logsTextView.setText(logs);
 
@@ -94,40 +101,32 @@ public class LogsActivity extends AppCompatActivity implements LogManager.LogUpd
         }
     }
 
+    // Já na thread principal: um setText por lote, não por linha
     @Override
-    public void onLogsUpdated(final String newLog) {
-        if (!isActivityActive) return;
-
-        handler.post(new Runnable() {
-            @Override
-            public void run() {
-                // Adicionar novo log no início
-                String currentText = logsTextView.getText().toString();
-                if (currentText.equals("Nenhum log disponível.\nO sistema está aguardando ações...")) {
-                    currentText = "";
-                }
+    public void onLogsAppended(List<String> newLogs) {
+        if (!isActivityActive) return; // onResume recarrega tudo
 
-                String newText = newLog + "\n" + currentText;
-                logsTextView.setText(newText);
+        StringBuilder newText = new StringBuilder();
+        for (int i = newLogs.size() - 1; i >= 0; i--) {
+            newText.append(newLogs.get(i)).append("\n");
+        }
+        String currentText = logsTextView.getText().toString();
+        if (!currentText.equals(EMPTY_TEXT)) {
+            newText.append(currentText);
+        }
+        logsTextView.setText(newText.toString());
 
-                // Manter scroll no topo
-                if (logsTextView.getLayout() != null) {
-                    int scrollAmount = logsTextView.getLayout().getLineTop(0);
-                    logsTextView.scrollTo(0, scrollAmount);
-                }
-            }
-        });
+        // Manter scroll no topo
+        if (logsTextView.getLayout() != null) {
+            int scrollAmount = logsTextView.getLayout().getLineTop(0);
+            logsTextView.scrollTo(0, scrollAmount);
+        }
     }
 
     @Override
     public void onLogsCleared() {
-        handler.post(new Runnable() {
-            @Override
-            public void run() {
-                logsTextView.setText("Logs limpos.\nAguardando novos eventos...");
-                Toast.makeText(LogsActivity.this, "Logs limpos", Toast.LENGTH_SHORT).show();
-            }
-        });
+        logsTextView.setText("Logs limpos.\nAguardando novos eventos...");
+        Toast.makeText(LogsActivity.this, "Logs limpos", Toast.LENGTH_SHORT).show();
     }
 
     private void copyLogsToClipboard() {
@@ -177,8 +176,8 @@ public class LogsActivity extends AppCompatActivity implements LogManager.LogUpd
     protected void onDestroy() {
         super.onDestroy();
         // Remover listener para evitar memory leaks
-        if (logManager != null) {
-            logManager.unregisterListener(this);
+        if (logSubscription != null) {
+            logSubscription.cancel();
         }
     }
 }
\ No newline at end of file
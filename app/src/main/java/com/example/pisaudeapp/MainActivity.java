@@ -11,7 +11,6 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.telephony.SmsManager;
 import android.util.Log;
 import android.view.MenuItem;
 import android.view.View;
@@ -35,10 +34,10 @@ import com.google.android.material.navigation.NavigationView;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
+import java.util.Map;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -71,6 +70,7 @@ public class MainActivity extends AppCompatActivity {
     // API
     private static final int SMS_PERMISSION_REQUEST_CODE = 1;
     private ApiService apiService;
+    private PatientStore patientStore;
     private List<ApiService.Patient> patientsList;
 
     private int smsSent = 0;
@@ -80,17 +80,19 @@ public class MainActivity extends AppCompatActivity {
     private BroadcastReceiver autoServiceReceiver;
     private Handler handler;
 
-    // ADICIONE ESTAS VARIÁVEIS GLOBAIS
-    private static boolean isCycleProcessing = false;
-    private static long lastCycleStartTime = 0;
-    private static int lastProcessedCycleNumber = -1;
+    // Ciclos automáticos: correm no CycleEngine, a Activity só observa
+    private CycleEngine cycleEngine;
+
+    // Envio de SMS fora da thread principal (outbox + ritmo)
+    private SmsDispatchEngine dispatchEngine;
+    // Lote de envio manual desta Activity, à espera de conclusão
+    private String currentBatchId;
+    private final long createdAt = System.currentTimeMillis();
 
     // Para controle de logs na UI
     private List<String> uiLogs = new ArrayList<>();
     private static final int MAX_UI_LOGS = 50; // Aumentado para mostrar mais logs
 
-    // SmsManager para envio direto de SMS
-    private SmsManager smsManager;
     private LogManager logManager;
     private AboutDialog aboutDialog;
     private int requestCode;
@@ -105,11 +107,9 @@ public class MainActivity extends AppCompatActivity {
         Log.d(TAG, "onCreate iniciado");
         setContentView(R.layout.activity_main);
 
-        // Inicializar SmsManager
-        smsManager = SmsManager.getDefault();
-
         // Inicializar LogManager
         logManager = LogManager.getInstance();
+        LogJournal.getInstance(this);
 
         // **ADICIONE ESTA LINHA**: Resetar estado de processamento
         isProcessing = false;
@@ -121,7 +121,15 @@ public class MainActivity extends AppCompatActivity {
         initViews();
 
         // ========= CONFIGURA API =========
-        apiService = new ApiService(this);
+        apiService = ApiService.getInstance(this);
+
+        // ========= DADOS LOCAIS =========
+        patientStore = PatientStore.getInstance(this);
+        loadPatientsFromStore();
+        dispatchEngine = SmsDispatchEngine.getInstance(this);
+        dispatchEngine.getProgress().observe(this, this::onDispatchProgress);
+        cycleEngine = CycleEngine.getInstance(this);
+        cycleEngine.getState().observe(this, this::onCycleState);
 
         // Verificar permissões
         if (!checkSmsPermissions()) {
@@ -236,7 +244,9 @@ public class MainActivity extends AppCompatActivity {
     private void resetProcessingState() {
         Log.d(TAG, "🔄 Resetando estado de processamento");
         isProcessing = false;
-        isCycleProcessing = false;
+        // Suspende o envio em curso; o lote continua na outbox
+        currentBatchId = null;
+        dispatchEngine.suspend();
 
         runOnUiThread(() -> {
             showProgress(false);
@@ -403,8 +413,8 @@ public class MainActivity extends AppCompatActivity {
             btnTestAuto.setOnClickListener(v -> {
                 Log.d(TAG, "🔄 Botão testar ciclo pressionado");
                 addUiLog("🔄 Iniciando ciclo de teste...");
-                if (!isProcessing) {
-                    loadPatientsForAutoCycle(999); // Usar número especial para teste
+                if (!isProcessing && !cycleEngine.isRunning()) {
+                    cycleEngine.runTestCycle();
                 } else {
                     addUiLog("⚠️ Aguarde o processamento atual");
                 }
@@ -436,54 +446,7 @@ public class MainActivity extends AppCompatActivity {
                 String action = intent.getAction();
                 Log.d(TAG, "📡 Broadcast recebido: " + action);
 
-                if ("AUTO_CYCLE_ACTION".equals(action)) {
-                    int cycleNumber = intent.getIntExtra("CYCLE_NUMBER", 0);
-                    long timestamp = intent.getLongExtra("TIMESTAMP", 0);
-
-                    Log.d(TAG, "🔄 CICLO AUTOMÁTICO #" + cycleNumber + " recebido às " + timestamp);
-                    addUiLog("🔄 CICLO AUTOMÁTICO #" + cycleNumber + " recebido");
-
-                    // Evitar processamento duplicado
-                    if (cycleNumber == lastProcessedCycleNumber) {
-                        Log.d(TAG, "⏭️ Ciclo #" + cycleNumber + " já foi processado, ignorando");
-                        return;
-                    }
-
-                    // Se o último ciclo foi há menos de 1 minuto, aguardar
-                    long timeSinceLastCycle = System.currentTimeMillis() - lastCycleStartTime;
-                    if (timeSinceLastCycle < 60 * 1000L && lastCycleStartTime > 0) {
-                        Log.d(TAG, "⏳ Aguardando - Último ciclo há " + (timeSinceLastCycle/1000) + "s");
-                        return;
-                    }
-
-                    // Se já está processando, verificar se está travado
-                    if (isCycleProcessing) {
-                        long processingTime = System.currentTimeMillis() - lastCycleStartTime;
-                        if (processingTime > 5 * 60 * 1000L) { // Mais de 5 minutos
-                            Log.w(TAG, "🔓 Desbloqueando ciclo travado após " + (processingTime/1000) + "s");
-                            isCycleProcessing = false;
-                            isProcessing = false;
-                            resetProcessingState();
-                        } else {
-                            Log.w(TAG, "⏸️ Já processando ciclo há " + (processingTime/1000) + "s");
-                            return;
-                        }
-                    }
-
-                    // Marcar como processando
-                    isCycleProcessing = true;
-                    lastCycleStartTime = System.currentTimeMillis();
-                    lastProcessedCycleNumber = cycleNumber;
-
-                    Log.d(TAG, "✅ Iniciando processamento do ciclo #" + cycleNumber);
-                    addUiLog("✅ Iniciando processamento do ciclo #" + cycleNumber);
-
-                    // Pequeno delay para estabilidade
-                    handler.postDelayed(() -> {
-                        loadPatientsForAutoCycle(cycleNumber);
-                    }, 1000);
-
-                } else if ("AUTO_SERVICE_STARTED".equals(action)) {
+                if ("AUTO_SERVICE_STARTED".equals(action)) {
                     Log.d(TAG, "✅ Serviço automático iniciado");
                     addUiLog("✅ Serviço automático iniciado");
                     runOnUiThread(() -> {
@@ -501,33 +464,7 @@ public class MainActivity extends AppCompatActivity {
                             tvStatus.setText("Serviço automático parado");
                         }
 
-                        // Resetar flags quando o serviço para
-                        isCycleProcessing = false;
-                        isProcessing = false;
-                        lastProcessedCycleNumber = -1;
-                        lastCycleStartTime = 0;
-                        resetProcessingState();
-                    });
-                } else if ("SMS_SENT".equals(action)) {
-                    String phone = intent.getStringExtra("PHONE");
-                    String patientName = intent.getStringExtra("PATIENT_NAME");
-                    boolean success = intent.getBooleanExtra("SUCCESS", false);
-
-                    if (phone != null && patientName != null) {
-                        if (success) {
-                            addUiLog("📱 SMS enviado para " + patientName + " (" + phone + ")");
-                        } else {
-                            addUiLog("❌ Falha ao enviar SMS para " + patientName + " (" + phone + ")");
-                        }
-                    }
-                } else if ("SMS_PROGRESS".equals(action)) {
-                    int current = intent.getIntExtra("CURRENT", 0);
-                    int total = intent.getIntExtra("TOTAL", 0);
-                    int sent = intent.getIntExtra("SENT", 0);
-                    int failed = intent.getIntExtra("FAILED", 0);
-
-                    runOnUiThread(() -> {
-                        updateProgress(sent, failed, total);
+                        // O próprio serviço cancela o ciclo em curso no CycleEngine
                     });
                 }
             }
@@ -535,11 +472,8 @@ public class MainActivity extends AppCompatActivity {
 
         try {
             IntentFilter filter = new IntentFilter();
-            filter.addAction("AUTO_CYCLE_ACTION");
             filter.addAction("AUTO_SERVICE_STARTED");
             filter.addAction("AUTO_SERVICE_STOPPED");
-            filter.addAction("SMS_SENT");
-            filter.addAction("SMS_PROGRESS");
 
             // Prioridade alta para garantir recebimento
             filter.setPriority(IntentFilter.SYSTEM_HIGH_PRIORITY);
@@ -647,6 +581,17 @@ public class MainActivity extends AppCompatActivity {
             Log.d(TAG, "🚀 Iniciando AutoService...");
             addUiLog("🚀 Iniciando AutoService...");
 
+            // Sem alarmes exatos os ciclos atrasam até um minuto e, com o
+            // serviço parado, são saltados: pedir a permissão ao utilizador
+            if (!CycleScheduler.canScheduleExactAlarms(this)) {
+                addUiLog("⚠️ Permita alarmes exatos para os ciclos automáticos");
+                try {
+                    startActivity(CycleScheduler.exactAlarmSettingsIntent(this));
+                } catch (Exception e) {
+                    Log.w(TAG, "⚠️ Ecrã de alarmes exatos indisponível", e);
+                }
+            }
+
             Intent serviceIntent = new Intent(this, AutoService.class);
             serviceIntent.setAction("START_AUTO_SERVICE");
 
@@ -684,6 +629,42 @@ public class MainActivity extends AppCompatActivity {
 
     // ============ MÉTODOS PRINCIPAIS ============
 
+    // Arranque a frio: mostrar o último conjunto gravado sem esperar pela rede
+    private void loadPatientsFromStore() {
+        new Thread(() -> {
+            try {
+                final List<ApiService.Patient> stored = patientStore.getUniqueByContact();
+                final Map<String, Integer> stateCounts = patientStore.getStateCounts();
+                if (stored.isEmpty()) {
+                    return;
+                }
+
+                runOnUiThread(() -> {
+                    // Não sobrepor dados que já chegaram da rede
+                    if (patientsList != null) {
+                        return;
+                    }
+                    patientsList = stored;
+                    Log.d(TAG, "💾 " + stored.size() + " pacientes carregados do armazenamento local");
+                    addUiLog("💾 " + stored.size() + " pacientes carregados do armazenamento local");
+
+                    if (tvStatus != null) {
+                        tvStatus.setText("✅ " + stored.size() + " pacientes (armazenamento local)");
+                    }
+                    if (cardSendSMS != null) {
+                        cardSendSMS.setAlpha(1.0f);
+                        cardSendSMS.setEnabled(true);
+                    }
+                    updateStats();
+                    updateDashboardCounts(stateCounts);
+                    updateLastUpdateTime("Dados locais");
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Erro ao ler armazenamento local", e);
+            }
+        }).start();
+    }
+
     private void loadPatients() {
         if (isProcessing) {
             addUiLog("⚠️ Aguarde o processamento atual");
@@ -767,109 +748,42 @@ public class MainActivity extends AppCompatActivity {
         }).start();
     }
 
-    private void loadPatientsForAutoCycle(int cycleNumber) {
-        Log.d(TAG, "🔄 [Ciclo #" + cycleNumber + "] Iniciando carregamento automático");
-        addUiLog("🔄 [Ciclo #" + cycleNumber + "] Iniciando carregamento automático");
-
-        // Verificar se já está processando (double-check)
-        if (isProcessing) {
-            Log.w(TAG, "⚠️ [Ciclo #" + cycleNumber + "] Já está processando, ignorando");
-            addUiLog("⚠️ [Ciclo #" + cycleNumber + "] Já está processando, ignorando");
-            isCycleProcessing = false; // Liberar o lock
+    // Estado do ciclo automático (thread principal). O LiveData repete o
+    // último estado a cada novo observador, por isso nada aqui altera o ciclo.
+    private void onCycleState(CycleEngine.CycleState state) {
+        if (state == null) {
             return;
         }
+        if (!state.patients.isEmpty()) {
+            patientsList = state.patients;
+            updateStats();
+            updateDashboard(state.patients);
+        }
 
-        isProcessing = true;
-
-        // TIMEOUT: 10 minutos para todo o processo
-        handler.postDelayed(() -> {
-            if (isProcessing) {
-                Log.w(TAG, "⏰ [Ciclo #" + cycleNumber + "] TIMEOUT - Resetando");
-                addUiLog("⏰ [Ciclo #" + cycleNumber + "] TIMEOUT - Resetando");
-                resetProcessingState();
-                isCycleProcessing = false;
-            }
-        }, 10 * 60 * 1000L);
-
-        runOnUiThread(() -> {
-            if (tvStatus != null) {
-                tvStatus.setText("🔄 Ciclo #" + cycleNumber + " em execução...");
-            }
-            showProgress(true);
-        });
-
-        // Usar uma instância local da ApiService
-        ApiService autoApiService = new ApiService(this);
-
-        autoApiService.getPatients(new ApiService.ApiCallback() {
-            @Override
-            public void onSuccess(List<ApiService.Patient> patients) {
-                Log.d(TAG, "✅ [Ciclo #" + cycleNumber + "] " + patients.size() + " pacientes encontrados");
-                addUiLog("✅ [Ciclo #" + cycleNumber + "] " + patients.size() + " pacientes encontrados");
-
-                runOnUiThread(() -> {
-                    if (patients.isEmpty()) {
-                        Log.w(TAG, "📭 [Ciclo #" + cycleNumber + "] Nenhum paciente encontrado");
-                        addUiLog("📭 [Ciclo #" + cycleNumber + "] Nenhum paciente encontrado");
-                        finalizeCycle(cycleNumber, 0, 0, true);
-                        return;
-                    }
-
-                    // Remover duplicados baseado no telefone
-                    List<ApiService.Patient> uniquePatients = removeDuplicatePatients(patients);
-                    Log.d(TAG, "🔍 [Ciclo #" + cycleNumber + "] " +
-                            patients.size() + " -> " + uniquePatients.size() + " (sem duplicados)");
-                    addUiLog("🔍 [Ciclo #" + cycleNumber + "] " + uniquePatients.size() + " pacientes únicos");
-
-                    patientsList = uniquePatients;
-
-                    updateStats();
-                    updateDashboard(uniquePatients);
-                    updateLastUpdateTime("Ciclo #" + cycleNumber);
-
-                    // Iniciar envio de SMS
-                    Log.d(TAG, "📤 [Ciclo #" + cycleNumber + "] Iniciando envio para " + uniquePatients.size() + " pacientes");
-                    addUiLog("📤 [Ciclo #" + cycleNumber + "] Iniciando envio para " + uniquePatients.size() + " pacientes");
-                    sendAllSMSAuto(uniquePatients, cycleNumber);
-                });
-            }
-
-            @Override
-            public void onError(String error) {
-                Log.e(TAG, "❌ [Ciclo #" + cycleNumber + "] Erro: " + error);
-                addUiLog("❌ [Ciclo #" + cycleNumber + "] Erro: " + error);
-
-                runOnUiThread(() -> {
-                    finalizeCycle(cycleNumber, 0, 0, false);
-
-                    // Tentar novamente após 1 minuto
-                    handler.postDelayed(() -> {
-                        if (!isProcessing && !isCycleProcessing) {
-                            Log.d(TAG, "🔄 [Ciclo #" + cycleNumber + "] Tentando novamente...");
-                            addUiLog("🔄 [Ciclo #" + cycleNumber + "] Tentando novamente...");
-                            loadPatientsForAutoCycle(cycleNumber);
-                        }
-                    }, 60 * 1000L);
-                });
-            }
-        });
-    }
-
-    private List<ApiService.Patient> removeDuplicatePatients(List<ApiService.Patient> patients) {
-        List<ApiService.Patient> uniqueList = new ArrayList<>();
-        Set<String> seenContacts = new HashSet<>();
-
-        for (ApiService.Patient patient : patients) {
-            if (patient.contact != null && !patient.contact.trim().isEmpty()) {
-                String contactKey = patient.contact.trim().replace("+", "").replace(" ", "");
-                if (!seenContacts.contains(contactKey)) {
-                    seenContacts.add(contactKey);
-                    uniqueList.add(patient);
+        switch (state.phase) {
+            case CycleEngine.CycleState.PHASE_FETCHING:
+                if (tvStatus != null) {
+                    tvStatus.setText("🔄 Ciclo #" + state.cycleNumber + " em execução...");
                 }
-            }
+                showProgress(true);
+                break;
+            case CycleEngine.CycleState.PHASE_SENDING:
+                if (tvStatus != null) {
+                    tvStatus.setText("📤 [Ciclo #" + state.cycleNumber + "] Enviando SMS...");
+                }
+                showProgress(true);
+                break;
+            default:
+                showProgress(false);
+                showLoading(false);
+                if (tvStatus != null) {
+                    tvStatus.setText(state.phase == CycleEngine.CycleState.PHASE_FINISHED ?
+                            "✅ Ciclo #" + state.cycleNumber + " concluído (" + state.sent + " SMS)" :
+                            "❌ Ciclo #" + state.cycleNumber + " falhou");
+                }
+                updateLastUpdateTime("Ciclo #" + state.cycleNumber);
+                break;
         }
-
-        return uniqueList;
     }
 
     private void finalizeCycle(int cycleNumber, int successCount, int failureCount, boolean success) {
@@ -882,7 +796,6 @@ public class MainActivity extends AppCompatActivity {
         addUiLog(logMessage);
 
         isProcessing = false;
-        isCycleProcessing = false;
 
         runOnUiThread(() -> {
             showProgress(false);
@@ -896,159 +809,23 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
-    private void sendAllSMSAuto(List<ApiService.Patient> patients, int cycleNumber) {
-        if (patients == null || patients.isEmpty()) {
-            Log.d(TAG, "📭 [Ciclo #" + cycleNumber + "] Nenhum paciente para SMS");
-            addUiLog("📭 [Ciclo #" + cycleNumber + "] Nenhum paciente para SMS");
-            finalizeCycle(cycleNumber, 0, 0, true);
+    // Progresso agregado do motor de envio (já na thread principal)
+    private void onDispatchProgress(SmsDispatchEngine.DispatchProgress progress) {
+        if (progress == null) {
             return;
         }
+        updateProgress(progress.sent, progress.failed, progress.total);
 
-        Log.d(TAG, "🚀 [Ciclo #" + cycleNumber + "] Enviando SMS para " + patients.size() + " pacientes");
-        addUiLog("🚀 [Ciclo #" + cycleNumber + "] Enviando SMS para " + patients.size() + " pacientes");
-
-        // Contadores
-        final int[] sent = {0};
-        final int[] failed = {0};
-        final int totalPatients = patients.size();
-
-        runOnUiThread(() -> {
-            if (tvStatus != null) {
-                tvStatus.setText("📤 [Ciclo #" + cycleNumber + "] Enviando " + totalPatients + " SMS...");
-            }
-        });
-
-        // Método recursivo para envio sequencial
-        sendSmsSequentially(patients, cycleNumber, 0, sent, failed, totalPatients);
-    }
-
-    // Método auxiliar recursivo para envio sequencial
-    private void sendSmsSequentially(final List<ApiService.Patient> patients,
-                                     final int cycleNumber,
-                                     final int index,
-                                     final int[] sent,
-                                     final int[] failed,
-                                     final int totalPatients) {
-
-        if (index >= totalPatients) {
-            // Todos os SMS foram processados
-            Log.d(TAG, "✅ [Ciclo #" + cycleNumber + "] Envio concluído: " +
-                    sent[0] + "/" + totalPatients);
-            addUiLog("✅ [Ciclo #" + cycleNumber + "] Envio concluído: " + sent[0] + "/" + totalPatients);
-
-            // Enviar broadcast com progresso final
-            Intent progressIntent = new Intent("SMS_PROGRESS");
-            progressIntent.putExtra("CURRENT", totalPatients);
-            progressIntent.putExtra("TOTAL", totalPatients);
-            progressIntent.putExtra("SENT", sent[0]);
-            progressIntent.putExtra("FAILED", failed[0]);
-            sendBroadcast(progressIntent);
-
-            finalizeCycle(cycleNumber, sent[0], failed[0], true);
+        if (progress.state != SmsDispatchEngine.DispatchProgress.STATE_FINISHED) {
             return;
         }
-
-        // CORREÇÃO: Criar cópias finais das variáveis
-        final ApiService.Patient currentPatient = patients.get(index);
-        final String phoneNumber = currentPatient.contact != null ?
-                currentPatient.contact.trim().replace("+", "").replace(" ", "") : "";
-
-        if (phoneNumber.isEmpty()) {
-            Log.w(TAG, "📭 [Ciclo #" + cycleNumber + "] Paciente sem telefone: " + currentPatient.fullname);
-            addUiLog("📭 Paciente sem telefone: " + currentPatient.fullname);
-
-            // Processar próximo paciente imediatamente
-            sendSmsSequentially(patients, cycleNumber, index + 1, sent, failed, totalPatients);
-            return;
+        // O LiveData repete o último valor a cada novo observador: só concluir
+        // envios manuais desta Activity (os ciclos terminam no CycleEngine)
+        if (progress.batchId.equals(currentBatchId) ||
+                (currentBatchId == null && progress.timestamp >= createdAt && isProcessing)) {
+            currentBatchId = null;
+            finalizeCycle(progress.cycleNumber, progress.sent, progress.failed, true);
         }
-
-        // Verificar se o número é válido (mínimo 9 dígitos)
-        if (phoneNumber.length() < 9) {
-            Log.w(TAG, "❌ [Ciclo #" + cycleNumber + "] Número inválido: " + phoneNumber);
-            addUiLog("❌ Número inválido: " + currentPatient.fullname);
-            failed[0]++;
-
-            // CORREÇÃO: Usar variáveis finais
-            final String patientName = currentPatient.fullname != null ? currentPatient.fullname : "Paciente";
-
-            // Enviar broadcast para atualizar UI
-            Intent smsIntent = new Intent("SMS_SENT");
-            smsIntent.putExtra("PHONE", phoneNumber);
-            smsIntent.putExtra("PATIENT_NAME", patientName);
-            smsIntent.putExtra("SUCCESS", false);
-            sendBroadcast(smsIntent);
-
-            // Processar próximo paciente após breve pausa
-            handler.postDelayed(() -> {
-                sendSmsSequentially(patients, cycleNumber, index + 1, sent, failed, totalPatients);
-            }, 500);
-            return;
-        }
-
-        Log.d(TAG, "📲 [Ciclo #" + cycleNumber + "] " + (index + 1) + "/" + totalPatients + ": " + currentPatient.fullname);
-        addUiLog("📲 Enviando para: " + currentPatient.fullname + " (" + phoneNumber + ")");
-
-        // Gerar mensagem personalizada
-        final String message = generateSmsMessage(currentPatient);
-
-        // CORREÇÃO: Criar cópias finais para uso no thread
-        final String finalPatientName = currentPatient.fullname != null ? currentPatient.fullname : "Paciente";
-
-        try {
-            // Enviar SMS usando SmsManager
-            smsManager.sendTextMessage(phoneNumber, null, message, null, null);
-
-            Log.d(TAG, "✅ SMS enviado para: " + phoneNumber);
-            sent[0]++;
-
-            // Enviar broadcast para atualizar UI
-            Intent smsIntent = new Intent("SMS_SENT");
-            smsIntent.putExtra("PHONE", phoneNumber);
-            smsIntent.putExtra("PATIENT_NAME", finalPatientName);
-            smsIntent.putExtra("SUCCESS", true);
-            sendBroadcast(smsIntent);
-
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Falha ao enviar SMS para: " + phoneNumber, e);
-            failed[0]++;
-
-            Intent smsIntent = new Intent("SMS_SENT");
-            smsIntent.putExtra("PHONE", phoneNumber);
-            smsIntent.putExtra("PATIENT_NAME", finalPatientName);
-            smsIntent.putExtra("SUCCESS", false);
-            sendBroadcast(smsIntent);
-        }
-
-        // Atualizar progresso na UI
-        runOnUiThread(() -> {
-            updateProgress(sent[0], failed[0], totalPatients);
-        });
-
-        // Enviar broadcast com progresso
-        Intent progressIntent = new Intent("SMS_PROGRESS");
-        progressIntent.putExtra("CURRENT", index + 1);
-        progressIntent.putExtra("TOTAL", totalPatients);
-        progressIntent.putExtra("SENT", sent[0]);
-        progressIntent.putExtra("FAILED", failed[0]);
-        sendBroadcast(progressIntent);
-
-        // Chamar recursivamente para o próximo paciente após 2 segundos
-        handler.postDelayed(() -> {
-            sendSmsSequentially(patients, cycleNumber, index + 1, sent, failed, totalPatients);
-        }, 2000);
-    }
-
-    private String generateSmsMessage(ApiService.Patient patient) {
-        String estado = patient.stateDescription != null ? patient.stateDescription : "tratamento";
-        String nome = patient.fullname != null ? patient.fullname.split(" ")[0] : "Paciente";
-
-        return String.format(Locale.getDefault(),
-                "Olá %s,\n\n" +
-                        "Esta é uma mensagem do Centro de Saúde.\n" +
-                        "Seu estado atual: %s.\n" +
-                        "Por favor, mantenha seu tratamento atualizado.\n\n" +
-                        "Atenciosamente,\nEquipe de Saúde",
-                nome, estado);
     }
 
     private void sendAllSMS() {
@@ -1057,7 +834,7 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        if (isProcessing) {
+        if (isProcessing || dispatchEngine.isDispatching()) {
             addUiLog("⚠️ Aguarde o processamento atual");
             return;
         }
@@ -1066,7 +843,8 @@ public class MainActivity extends AppCompatActivity {
         smsSent = 0;
         smsFailed = 0;
 
-        final int totalPatients = patientsList.size();
+        final List<ApiService.Patient> patients = new ArrayList<>(patientsList);
+        final int totalPatients = patients.size();
 
         runOnUiThread(() -> {
             showProgress(true);
@@ -1076,8 +854,21 @@ public class MainActivity extends AppCompatActivity {
             addUiLog("📤 Iniciando envio manual para " + totalPatients + " pacientes");
         });
 
-        // Envio sequencial manual
-        sendSmsSequentially(patientsList, 0, 0, new int[]{0}, new int[]{0}, totalPatients);
+        // Envio manual também passa pela outbox (lote do "ciclo" 0)
+        // e envia para todos, mesmo no modo multi-gateway
+        dispatchEngine.setRecipientFilter(null);
+        dispatchEngine.startBatch(0, patients, CycleEngine::generateSmsMessage,
+                new SmsDispatchEngine.CycleBatchCallback() {
+                    @Override
+                    public void onResume(SmsOutbox.Batch batch, int interrupted) {
+                        // Não acontece num lote novo
+                    }
+
+                    @Override
+                    public void onNewBatch(String batchId) {
+                        runOnUiThread(() -> currentBatchId = batchId);
+                    }
+                });
     }
 
     private void showSendAllConfirmation() {
@@ -1105,21 +896,34 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        int total = patients.size();
+        Map<String, Integer> stateCounts = new HashMap<>();
+        for (ApiService.Patient p : patients) {
+            String state = p.stateDescription != null ? p.stateDescription.toLowerCase() : "";
+            Integer count = stateCounts.get(state);
+            stateCounts.put(state, count == null ? 1 : count + 1);
+        }
+        updateDashboardCounts(stateCounts);
+    }
+
+    // Dashboard a partir de contagens por estado (em minúsculas)
+    private void updateDashboardCounts(final Map<String, Integer> stateCounts) {
+        int total = 0;
         int iniciados = 0;
         int faltosos = 0;
         int abandono = 0;
         int levantamento = 0;
         int chamada = 0;
 
-        for (ApiService.Patient p : patients) {
-            String state = p.stateDescription != null ? p.stateDescription.toLowerCase() : "";
+        for (Map.Entry<String, Integer> entry : stateCounts.entrySet()) {
+            String state = entry.getKey() != null ? entry.getKey() : "";
+            int count = entry.getValue();
+            total += count;
 
-            if (state.startsWith("inic")) iniciados++;
-            if (state.contains("falt")) faltosos++;
-            if (state.contains("abando")) abandono++;
-            if (state.contains("levant")) levantamento++;
-            if (state.contains("chamand") || state.contains("chamad")) chamada++;
+            if (state.startsWith("inic")) iniciados += count;
+            if (state.contains("falt")) faltosos += count;
+            if (state.contains("abando")) abandono += count;
+            if (state.contains("levant")) levantamento += count;
+            if (state.contains("chamand") || state.contains("chamad")) chamada += count;
         }
 
         final int finalTotal = total;
@@ -1350,6 +1154,9 @@ public class MainActivity extends AppCompatActivity {
             handler.removeCallbacksAndMessages(null);
         }
 
+        // A fila HTTP é do processo: a busca de pacientes e os status em
+        // curso continuam sem a Activity
+
         Log.d(TAG, "onDestroy concluído");
         addUiLog("🔴 Sistema finalizado");
     }
@@ -0,0 +1,265 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.telephony.SmsManager;
+import android.telephony.SubscriptionInfo;
+import android.telephony.SubscriptionManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Distribui os SMS pelos SIM ativos do telemóvel. Cada SIM (Lane) tem o seu
+// SmsGateway, o seu SmsRateGovernor e a sua contagem de falhas: com dois SIM
+// os dois rádios enviam em paralelo, cada um ao seu ritmo, e um SIM sem
+// rede ou com erros seguidos fica de parte durante algum tempo enquanto o
+// outro continua. Com um só SIM o comportamento é o de antes (SIM padrão).
+// Não depende de classes Android fora de getInstance, para poder ser
+// testado na JVM com gateways falsos.
+public class MultiSimDispatcher {
+    private static final String TAG = "MultiSimDispatcher";
+
+    private static final String PREFS = "AppPrefs";
+    private static final String KEY_MULTI_SIM = "multi_sim";
+
+    // Erros seguidos do rádio que põem um SIM de parte
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+    private static final long QUARANTINE_MS = 60 * 1000L;
+    private static final long MAX_QUARANTINE_MS = 10 * 60 * 1000L;
+
+    public static class Lane {
+        final SmsGateway gateway;
+        final SmsRateGovernor governor;
+        // Protegidos pelo lock do MultiSimDispatcher
+        long submitted = 0;
+        long sent = 0;
+        long failed = 0;
+        int consecutiveFailures = 0;
+        int lastError = 0;
+        long quarantinedUntil = 0;
+        long quarantineMs = QUARANTINE_MS;
+
+        Lane(SmsGateway gateway, SmsRateGovernor governor) {
+            this.gateway = gateway;
+            this.governor = governor;
+        }
+
+        public String getName() {
+            return gateway.getName();
+        }
+
+        public SmsRateGovernor getRateGovernor() {
+            return governor;
+        }
+    }
+
+    private static MultiSimDispatcher instance;
+
+    private final List<Lane> lanes = new ArrayList<>();
+    // Alterna entre SIM com a mesma folga
+    private int nextIndex = 0;
+
+    public MultiSimDispatcher(List<? extends SmsGateway> gateways, List<SmsRateGovernor> governors) {
+        if (gateways.isEmpty() || gateways.size() != governors.size()) {
+            throw new IllegalArgumentException("Um SmsRateGovernor por gateway");
+        }
+        for (int i = 0; i < gateways.size(); i++) {
+            lanes.add(new Lane(gateways.get(i), governors.get(i)));
+        }
+    }
+
+    public static synchronized MultiSimDispatcher getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            List<SmsManagerGateway> gateways = activeSubscriptions(appContext);
+            List<SmsRateGovernor> governors = new ArrayList<>(gateways.size());
+            for (SmsManagerGateway gateway : gateways) {
+                governors.add(SmsRateGovernor.forSubscription(appContext, gateway.getSubscriptionId()));
+            }
+            instance = new MultiSimDispatcher(gateways, governors);
+            if (gateways.size() > 1) {
+                Log.d(TAG, "📶 Envio em paralelo por " + gateways.size() + " SIM");
+                LogManager.getInstance().addLog("📶 Envio em paralelo por " + gateways.size() + " SIM");
+            }
+        }
+        return instance;
+    }
+
+    // Grava a preferência; os SIM são lidos de novo no próximo lote
+    public static void updateMultiSim(Context context, boolean enabled) {
+        context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+                .edit().putBoolean(KEY_MULTI_SIM, enabled).apply();
+        synchronized (MultiSimDispatcher.class) {
+            instance = null;
+        }
+    }
+
+    // SIM ativos; sem permissão, com um só SIM ou com a opção desligada, o SIM padrão
+    private static List<SmsManagerGateway> activeSubscriptions(Context context) {
+        List<SmsManagerGateway> gateways = new ArrayList<>();
+        boolean multiSim = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+                .getBoolean(KEY_MULTI_SIM, true);
+        if (multiSim) {
+            try {
+                SubscriptionManager subscriptionManager = context.getSystemService(SubscriptionManager.class);
+                List<SubscriptionInfo> subscriptions = subscriptionManager != null ?
+                        subscriptionManager.getActiveSubscriptionInfoList() : null;
+                if (subscriptions != null && subscriptions.size() > 1) {
+                    for (SubscriptionInfo info : subscriptions) {
+                        CharSequence carrier = info.getCarrierName();
+                        String name = "SIM " + (info.getSimSlotIndex() + 1) +
+                                (carrier != null && carrier.length() > 0 ? " (" + carrier + ")" : "");
+                        gateways.add(new SmsManagerGateway(context, info.getSubscriptionId(), name));
+                    }
+                }
+            } catch (SecurityException e) {
+                Log.w(TAG, "⚠️ Sem permissão para ler os SIM, usando o SIM padrão");
+            }
+        }
+        if (gateways.isEmpty()) {
+            gateways.add(new SmsManagerGateway(context, SubscriptionManager.INVALID_SUBSCRIPTION_ID, "SIM padrão"));
+        }
+        return gateways;
+    }
+
+    public int getLaneCount() {
+        return lanes.size();
+    }
+
+    // Milissegundos até algum SIM poder enviar (0 = pode enviar já)
+    public synchronized long getDelayMs() {
+        long now = now();
+        long delay = Long.MAX_VALUE;
+        for (Lane lane : lanes) {
+            delay = Math.min(delay, laneDelay(lane, now));
+        }
+        return delay;
+    }
+
+    // SIM que pode enviar já, ou null se todos têm de esperar
+    public synchronized Lane nextLane() {
+        long now = now();
+        for (int i = 0; i < lanes.size(); i++) {
+            int index = (nextIndex + i) % lanes.size();
+            Lane lane = lanes.get(index);
+            if (laneDelay(lane, now) == 0) {
+                nextIndex = index + 1;
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    // SIM com menor espera, para envios que não esperam pelo ritmo
+    public synchronized Lane bestLane() {
+        long now = now();
+        Lane best = lanes.get(nextIndex % lanes.size());
+        for (Lane lane : lanes) {
+            if (laneDelay(lane, now) < laneDelay(best, now)) {
+                best = lane;
+            }
+        }
+        nextIndex = lanes.indexOf(best) + 1;
+        return best;
+    }
+
+    private static long laneDelay(Lane lane, long now) {
+        return Math.max(lane.governor.getDelayMs(now), lane.quarantinedUntil - now);
+    }
+
+    // Envia pelo SIM indicado e devolve o número de partes; o resultado do
+    // rádio atualiza o ritmo e as falhas desse SIM antes de chegar ao callback
+    public int send(final Lane lane, String destination, String message, boolean trackDelivery,
+                    final SmsGateway.Callback callback) {
+        int parts;
+        try {
+            parts = lane.gateway.send(destination, message, trackDelivery, new SmsGateway.Callback() {
+                @Override
+                public void onSent(boolean success, int resultCode) {
+                    onResult(lane, success, resultCode);
+                    callback.onSent(success, resultCode);
+                }
+
+                @Override
+                public void onDelivered(boolean delivered) {
+                    callback.onDelivered(delivered);
+                }
+            });
+        } catch (RuntimeException e) {
+            onResult(lane, false, SmsManager.RESULT_ERROR_GENERIC_FAILURE);
+            throw e;
+        }
+
+        // Cada parte conta como um SMS para o operador
+        long now = now();
+        for (int i = 0; i < parts; i++) {
+            lane.governor.recordSend(now);
+        }
+        synchronized (this) {
+            lane.submitted++;
+        }
+        return parts;
+    }
+
+    private void onResult(Lane lane, boolean success, int resultCode) {
+        if (success) {
+            lane.governor.onSendSuccess();
+        } else {
+            lane.governor.onSendError(resultCode);
+        }
+
+        synchronized (this) {
+            if (success) {
+                lane.sent++;
+                lane.consecutiveFailures = 0;
+                lane.quarantineMs = QUARANTINE_MS;
+                return;
+            }
+            lane.failed++;
+            lane.lastError = resultCode;
+            lane.consecutiveFailures++;
+
+            long now = now();
+            boolean radioDown = resultCode == SmsManager.RESULT_ERROR_RADIO_OFF ||
+                    resultCode == SmsManager.RESULT_ERROR_NO_SERVICE;
+            if ((radioDown || lane.consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) && now >= lane.quarantinedUntil) {
+                lane.quarantinedUntil = now + lane.quarantineMs;
+                Log.w(TAG, "📵 " + lane.getName() + " em pausa por " + (lane.quarantineMs / 1000) +
+                        "s (erro " + resultCode + ")");
+                LogManager.getInstance().addLog("📵 " + lane.getName() + " em pausa por " +
+                        (lane.quarantineMs / 1000) + "s (erro " + resultCode + ")");
+                lane.quarantineMs = Math.min(MAX_QUARANTINE_MS, lane.quarantineMs * 2);
+                lane.consecutiveFailures = 0;
+            }
+        }
+    }
+
+    // ============ ESTATÍSTICAS ============
+
+    public synchronized List<String> getStats() {
+        long now = now();
+        List<String> lines = new ArrayList<>(lanes.size());
+        for (Lane lane : lanes) {
+            lines.add(String.format(Locale.ROOT, "%s: %d enviados, %d/%d falhas, %d SMS/min%s",
+                    lane.getName(), lane.sent, lane.failed, lane.submitted,
+                    Math.round(lane.governor.getCurrentRatePerMinute()),
+                    lane.quarantinedUntil > now ?
+                            ", em pausa " + ((lane.quarantinedUntil - now) / 1000) + "s" : ""));
+        }
+        return lines;
+    }
+
+    public void logStats() {
+        LogManager logManager = LogManager.getInstance();
+        for (String line : getStats()) {
+            Log.d(TAG, "📶 " + line);
+            logManager.addLog("📶 " + line);
+        }
+    }
+
+    // Mesmo relógio do SmsRateGovernor
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+// Cliente HTTP do processo: uma única RequestQueue partilhada por todos os
+// serviços (ApiService, SmsStatusBuffer...). Volley.newRequestQueue cria uma
+// thread de cache e 4 de rede por chamada, que nunca são paradas; aqui o
+// número de threads de rede é configurável e a fila é criada no primeiro uso
+// e vive enquanto o processo viver (cancelar tudo deixaria sem resposta quem
+// espera por um pedido em curso, ex.: getPatients e os lotes de status).
+// O HTTP em si fica a cargo de um HttpTransport (por omissão
+// UrlConnectionTransport: keep-alive e respostas gzip, com failover entre
+// servidores e atrás do CircuitBreaker).
+public class NetworkClient {
+    private static final String TAG = "NetworkClient";
+
+    private static final String PREFS = "AppPrefs";
+    private static final String KEY_POOL_SIZE = "network_threads";
+    // Servidores do backend separados por vírgula (principal primeiro)
+    private static final String KEY_ENDPOINTS = "api_endpoints";
+
+    // Os pedidos são poucos e sequenciais (páginas, lotes de status)
+    public static final int DEFAULT_POOL_SIZE = 2;
+    private static final int MAX_POOL_SIZE = 8;
+
+    private static final String CACHE_DIR = "volley";
+    private static final int CACHE_SIZE_BYTES = 5 * 1024 * 1024;
+
+    // Conexões ociosas mantidas abertas para o servidor
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+
+    private static NetworkClient instance;
+    // Transporte em uso: o por omissão ou o de setTransport
+    private static volatile HttpTransport transport;
+    private static HttpTransport defaultTransport;
+    private static FailoverTransport failover;
+    // O que a fila e os restantes clientes recebem: lê o transporte em uso a
+    // cada pedido, por isso setTransport vale logo, sem recriar a fila
+    private static final HttpTransport ROUTER = request -> transport.execute(request);
+
+    private final RequestQueue requestQueue;
+    private final int poolSize;
+
+    private NetworkClient(Context context, int poolSize) {
+        this.poolSize = poolSize;
+        File cacheDir = new File(context.getCacheDir(), CACHE_DIR);
+        this.requestQueue = new RequestQueue(
+                new DiskBasedCache(cacheDir, CACHE_SIZE_BYTES),
+                new BasicNetwork(new TransportHttpStack(ROUTER)),
+                poolSize);
+        this.requestQueue.start();
+        Log.d(TAG, "🌐 Fila HTTP iniciada com " + poolSize + " threads de rede");
+    }
+
+    public static synchronized NetworkClient getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            SharedPreferences prefs = appContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+            getTransport(appContext);
+            instance = new NetworkClient(appContext, clampPoolSize(prefs.getInt(KEY_POOL_SIZE, DEFAULT_POOL_SIZE)));
+        }
+        return instance;
+    }
+
+    // Transporte em uso, para quem fala HTTP fora do Volley (ex.: leases dos gateways)
+    public static synchronized HttpTransport getTransport(Context context) {
+        if (defaultTransport == null) {
+            SharedPreferences prefs = context.getApplicationContext()
+                    .getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+            // Disjuntor global por cima do failover: só abre quando todos os servidores falham
+            failover = new FailoverTransport(ApiService.BASE_URL,
+                    parseEndpoints(prefs.getString(KEY_ENDPOINTS, ApiService.BASE_URL)),
+                    new UrlConnectionTransport(true, MAX_IDLE_CONNECTIONS));
+            defaultTransport = new CircuitBreakerTransport(failover, CircuitBreaker.getInstance());
+        }
+        if (transport == null) {
+            transport = defaultTransport;
+        }
+        return ROUTER;
+    }
+
+    // Grava o número de threads de rede; aplicado quando a fila for recriada
+    public static void updatePoolSize(Context context, int poolSize) {
+        try {
+            SharedPreferences prefs = context.getApplicationContext()
+                    .getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+            prefs.edit().putInt(KEY_POOL_SIZE, clampPoolSize(poolSize)).apply();
+            Log.d(TAG, "⚙️ Threads de rede: " + clampPoolSize(poolSize) + " (no próximo arranque)");
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Erro ao atualizar threads de rede", e);
+        }
+    }
+
+    // Grava a lista de servidores (ex.: "http://10.0.0.1:5000,http://10.1.0.1:5000")
+    // e aplica-a já ao failover em uso: a fila continua a mesma e as sondas
+    // passam a cobrir a lista nova
+    public static void updateEndpoints(Context context, String endpoints) {
+        try {
+            SharedPreferences prefs = context.getApplicationContext()
+                    .getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+            prefs.edit().putString(KEY_ENDPOINTS, endpoints).apply();
+            synchronized (NetworkClient.class) {
+                if (failover != null) {
+                    failover.setEndpoints(parseEndpoints(endpoints));
+                }
+            }
+            Log.d(TAG, "⚙️ Servidores: " + endpoints);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Erro ao atualizar servidores", e);
+        }
+    }
+
+    // Troca o transporte HTTP, já para o pedido seguinte
+    // (null volta ao transporte por omissão)
+    public static synchronized void setTransport(HttpTransport newTransport) {
+        transport = newTransport != null ? newTransport : defaultTransport;
+    }
+
+    // Latência e erros por servidor, para os logs
+    public static synchronized void logEndpointStats() {
+        if (failover != null) {
+            failover.logStats();
+        }
+    }
+
+    public <T> Request<T> add(Request<T> request) {
+        return requestQueue.add(request);
+    }
+
+    public RequestQueue getRequestQueue() {
+        return requestQueue;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    private static List<String> parseEndpoints(String endpoints) {
+        return Arrays.asList(endpoints.split(","));
+    }
+
+    private static int clampPoolSize(int poolSize) {
+        return Math.max(1, Math.min(MAX_POOL_SIZE, poolSize));
+    }
+}
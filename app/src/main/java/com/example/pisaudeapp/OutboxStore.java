@@ -0,0 +1,91 @@
+package com.example.pisaudeapp;
+
+import java.util.List;
+
+// Operações da outbox usadas pelo SmsDispatchEngine. A implementação real é
+// o SmsOutbox (SQLite); nos testes de carga na JVM usa-se uma em memória.
+// Todas as chamadas são feitas na thread do motor.
+public interface OutboxStore {
+
+    interface MessageFactory {
+        String build(ApiService.Patient patient);
+    }
+
+    class Item {
+        public final long id;
+        public final String batchId;
+        public final int patientId;
+        public final String patientName;
+        public final String phone;
+        public final String message;
+        public final int attempts;
+
+        Item(long id, String batchId, int patientId, String patientName,
+             String phone, String message, int attempts) {
+            this.id = id;
+            this.batchId = batchId;
+            this.patientId = patientId;
+            this.patientName = patientName;
+            this.phone = phone;
+            this.message = message;
+            this.attempts = attempts;
+        }
+    }
+
+    class Batch {
+        public final String batchId;
+        public final int cycleNumber;
+        public final boolean fetchComplete;
+
+        Batch(String batchId, int cycleNumber, boolean fetchComplete) {
+            this.batchId = batchId;
+            this.cycleNumber = cycleNumber;
+            this.fetchComplete = fetchComplete;
+        }
+    }
+
+    class Progress {
+        public int pending;
+        public int sending;
+        public int sent;
+        public int failed;       // inclui interrupted
+
+        public int total() {
+            return pending + sending + sent + failed;
+        }
+
+        public int done() {
+            return sent + failed;
+        }
+    }
+
+    // ============ LOTES ============
+
+    String createBatch(int cycleNumber);
+
+    Batch findOpenBatch();
+
+    int enqueue(String batchId, List<ApiService.Patient> patients, MessageFactory factory);
+
+    void markFetchComplete(String batchId);
+
+    boolean isFetchComplete(String batchId);
+
+    void finishBatch(String batchId);
+
+    void discardBatch(String batchId);
+
+    int recoverInterrupted(String batchId);
+
+    // ============ MENSAGENS ============
+
+    Item claimNext(String batchId);
+
+    void markSent(long itemId);
+
+    void markFailed(long itemId, String error);
+
+    void markReassigned(long itemId);
+
+    Progress getProgress(String batchId);
+}
@@ -0,0 +1,398 @@
+package com.example.pisaudeapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Parser em streaming (pull) para a lista de /api/observation.
+// Lê os caracteres à medida que chegam e monta cada Patient diretamente,
+// sem criar JSONArray/JSONObject nem a String completa da resposta.
+// Não depende de classes Android para poder ser testado na JVM.
+public class PatientJsonStreamParser {
+
+    public interface PatientSink {
+        void onPatient(ApiService.Patient patient);
+
+        // Registo com "deleted": true (tombstone do feed incremental); só o id conta
+        default void onDeleted(int id) {
+        }
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+
+    // Contadores do último parse
+    private int totalCount = 0;
+    private int validCount = 0;
+
+    // Reaproveitado para montar strings e números
+    private final StringBuilder scratch = new StringBuilder(64);
+
+    public PatientJsonStreamParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    public PatientJsonStreamParser(InputStream in, Charset charset) {
+        this(new InputStreamReader(in, charset));
+    }
+
+    public PatientJsonStreamParser(InputStream in) {
+        this(in, StandardCharsets.UTF_8);
+    }
+
+    public static List<ApiService.Patient> parseAll(InputStream in, Charset charset) throws IOException {
+        final List<ApiService.Patient> patients = new ArrayList<>();
+        new PatientJsonStreamParser(in, charset).parse(new PatientSink() {
+            @Override
+            public void onPatient(ApiService.Patient patient) {
+                patients.add(patient);
+            }
+        });
+        return patients;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public int getValidCount() {
+        return validCount;
+    }
+
+    // Percorre o array raiz e entrega ao sink apenas pacientes válidos
+    // (mesmas regras do antigo parsePatients: id -> patientId -> índice + 1,
+    // género por omissão "M").
+    public void parse(PatientSink sink) throws IOException {
+        totalCount = 0;
+        validCount = 0;
+
+        int c = nextNonWhitespace();
+        if (c == -1) {
+            return; // Corpo vazio
+        }
+        if (c != '[') {
+            throw syntaxError("Esperado '[' no início da resposta");
+        }
+
+        c = nextNonWhitespace();
+        if (c == ']') {
+            return;
+        }
+        if (c == -1) {
+            throw syntaxError("Fim inesperado da resposta");
+        }
+        pos--;
+
+        while (true) {
+            c = nextNonWhitespace();
+            if (c == '{') {
+                ApiService.Patient patient = readPatient(totalCount);
+                totalCount++;
+                if (patient.deleted) {
+                    sink.onDeleted(patient.id);
+                } else if (patient.isValid()) {
+                    validCount++;
+                    sink.onPatient(patient);
+                }
+            } else if (c == -1) {
+                throw syntaxError("Fim inesperado da resposta");
+            } else {
+                // Elemento que não é objeto: ignorar, como o parse antigo fazia
+                pos--;
+                skipValue();
+                totalCount++;
+            }
+
+            c = nextNonWhitespace();
+            if (c == ',') {
+                continue;
+            }
+            if (c == ']') {
+                return;
+            }
+            throw syntaxError("Esperado ',' ou ']' no array");
+        }
+    }
+
+    private ApiService.Patient readPatient(int index) throws IOException {
+        int id = 0;
+        int patientId = 0;
+        String fullname = "";
+        String contact = "";
+        String gender = "M";
+        String textMessage = "";
+        String stateDescription = "";
+        boolean deleted = false;
+
+        int c = nextNonWhitespace();
+        if (c == -1) {
+            throw syntaxError("Fim inesperado da resposta");
+        }
+        if (c != '}') {
+            pos--;
+            while (true) {
+                if (nextNonWhitespace() != '"') {
+                    throw syntaxError("Esperado nome de campo");
+                }
+                String name = readString();
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Esperado ':' após " + name);
+                }
+
+                switch (name) {
+                    case "id":
+                        id = toInt(readScalar(), 0);
+                        break;
+                    case "patientId":
+                        patientId = toInt(readScalar(), 0);
+                        break;
+                    case "fullname":
+                        fullname = orDefault(readScalar(), "");
+                        break;
+                    case "contact":
+                        contact = orDefault(readScalar(), "");
+                        break;
+                    case "gender":
+                        gender = orDefault(readScalar(), "M");
+                        break;
+                    case "textMessageDescription":
+                        textMessage = orDefault(readScalar(), "");
+                        break;
+                    case "stateDescription":
+                        stateDescription = orDefault(readScalar(), "");
+                        break;
+                    case "deleted":
+                        deleted = "true".equals(readScalar());
+                        break;
+                    default:
+                        skipValue();
+                        break;
+                }
+
+                c = nextNonWhitespace();
+                if (c == ',') {
+                    continue;
+                }
+                if (c == '}') {
+                    break;
+                }
+                throw syntaxError("Esperado ',' ou '}' no objeto");
+            }
+        }
+
+        if (id == 0) {
+            id = patientId != 0 ? patientId : index + 1;
+        }
+        ApiService.Patient patient = new ApiService.Patient(id, fullname, contact, gender, stateDescription, textMessage);
+        patient.deleted = deleted;
+        return patient;
+    }
+
+    // Lê um valor escalar como texto; objetos/arrays são ignorados (null)
+    private String readScalar() throws IOException {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '"':
+                return readString();
+            case '{':
+            case '[':
+                pos--;
+                skipValue();
+                return null;
+            case -1:
+                throw syntaxError("Fim inesperado da resposta");
+            default:
+                pos--;
+                String literal = readLiteral();
+                return "null".equals(literal) ? null : literal;
+        }
+    }
+
+    private void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            int c = nextNonWhitespace();
+            switch (c) {
+                case '{':
+                case '[':
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    break;
+                case '"':
+                    skipString();
+                    break;
+                case ',':
+                case ':':
+                    break;
+                case -1:
+                    throw syntaxError("Fim inesperado da resposta");
+                default:
+                    pos--;
+                    readLiteral();
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    private String readString() throws IOException {
+        scratch.setLength(0);
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    scratch.append(buffer, start, pos - start - 1);
+                    return scratch.toString();
+                }
+                if (c == '\\') {
+                    scratch.append(buffer, start, pos - start - 1);
+                    scratch.append(readEscape());
+                    start = pos;
+                }
+            }
+            scratch.append(buffer, start, pos - start);
+            if (!fill()) {
+                throw syntaxError("String não terminada");
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    return;
+                }
+                if (c == '\\') {
+                    readEscape();
+                }
+            }
+            if (!fill()) {
+                throw syntaxError("String não terminada");
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int h = read();
+                    int digit = Character.digit(h, 16);
+                    if (h == -1 || digit < 0) {
+                        throw syntaxError("Escape \\u inválido");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            case 't':
+                return '\t';
+            case 'b':
+                return '\b';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            case -1:
+                throw syntaxError("Escape não terminado");
+            default:
+                return (char) c; // \" \\ \/
+        }
+    }
+
+    // Números, true, false e null
+    private String readLiteral() throws IOException {
+        scratch.setLength(0);
+        while (true) {
+            if (pos >= limit && !fill()) {
+                break;
+            }
+            char c = buffer[pos];
+            if (c == ',' || c == '}' || c == ']' || c == ':' || isWhitespace(c)) {
+                break;
+            }
+            scratch.append(c);
+            pos++;
+        }
+        if (scratch.length() == 0) {
+            throw syntaxError("Valor esperado");
+        }
+        return scratch.toString();
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            if (pos >= limit && !fill()) {
+                return -1;
+            }
+            char c = buffer[pos++];
+            if (!isWhitespace(c)) {
+                return c;
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        int n = reader.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            pos = 0;
+            limit = 0;
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    // Mesmo comportamento de optInt: aceita números e strings numéricas
+    private static int toInt(String value, int fallback) {
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            try {
+                return (int) Double.parseDouble(value);
+            } catch (NumberFormatException ignored) {
+                return fallback;
+            }
+        }
+    }
+
+    private static String orDefault(String value, String fallback) {
+        return value != null ? value : fallback;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " (registo " + totalCount + ")");
+    }
+}
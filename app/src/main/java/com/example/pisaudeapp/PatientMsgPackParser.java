@@ -0,0 +1,456 @@
+package com.example.pisaudeapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Decoder MessagePack para a lista de /api/observation (Content-Type
+// application/msgpack). Mesmas regras do PatientJsonStreamParser, montando
+// cada Patient direto do buffer, sem objetos intermédios.
+// A raiz é um array; cada registo pode vir:
+// - como map com os nomes de campo do JSON (id, patientId, fullname, ...), ou
+// - como array posicional, sem nomes, no formato compacto:
+//   [id, fullname, contact, gender, textMessageDescription, stateDescription, deleted]
+//   (deleted é opcional: true marca um tombstone do feed incremental)
+// Não depende de classes Android para poder ser testado na JVM.
+public class PatientMsgPackParser {
+
+    public static final String CONTENT_TYPE = "application/msgpack";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+
+    // Contadores do último parse
+    private int totalCount = 0;
+    private int validCount = 0;
+
+    public PatientMsgPackParser(InputStream in) {
+        this.in = in;
+    }
+
+    public static boolean isMsgPack(String contentType) {
+        return contentType != null && contentType.toLowerCase(java.util.Locale.ROOT).contains("msgpack");
+    }
+
+    public static List<ApiService.Patient> parseAll(InputStream in) throws IOException {
+        final List<ApiService.Patient> patients = new ArrayList<>();
+        new PatientMsgPackParser(in).parse(new PatientJsonStreamParser.PatientSink() {
+            @Override
+            public void onPatient(ApiService.Patient patient) {
+                patients.add(patient);
+            }
+        });
+        return patients;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public int getValidCount() {
+        return validCount;
+    }
+
+    public void parse(PatientJsonStreamParser.PatientSink sink) throws IOException {
+        totalCount = 0;
+        validCount = 0;
+
+        if (!ensure(1)) {
+            return; // Corpo vazio
+        }
+        int count = readArrayHeader(readByte());
+        if (count < 0) {
+            throw formatError("Esperado array na raiz da resposta");
+        }
+
+        for (int i = 0; i < count; i++) {
+            int type = readByte();
+            int size;
+            ApiService.Patient patient = null;
+            if ((size = readMapHeader(type)) >= 0) {
+                patient = readPatientMap(size, totalCount);
+            } else if ((size = readArrayHeader(type)) >= 0) {
+                patient = readPatientArray(size, totalCount);
+            } else {
+                // Elemento que não é registo: ignorar, como no JSON
+                skipValue(type);
+            }
+            totalCount++;
+            if (patient != null && patient.deleted) {
+                sink.onDeleted(patient.id);
+            } else if (patient != null && patient.isValid()) {
+                validCount++;
+                sink.onPatient(patient);
+            }
+        }
+    }
+
+    private ApiService.Patient readPatientMap(int size, int index) throws IOException {
+        int id = 0;
+        int patientId = 0;
+        String fullname = "";
+        String contact = "";
+        String gender = "M";
+        String textMessage = "";
+        String stateDescription = "";
+        boolean deleted = false;
+
+        for (int i = 0; i < size; i++) {
+            String name = readScalar();
+            if (name == null) {
+                skipValue(readByte());
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    id = toInt(readScalar(), 0);
+                    break;
+                case "patientId":
+                    patientId = toInt(readScalar(), 0);
+                    break;
+                case "fullname":
+                    fullname = orDefault(readScalar(), "");
+                    break;
+                case "contact":
+                    contact = orDefault(readScalar(), "");
+                    break;
+                case "gender":
+                    gender = orDefault(readScalar(), "M");
+                    break;
+                case "textMessageDescription":
+                    textMessage = orDefault(readScalar(), "");
+                    break;
+                case "stateDescription":
+                    stateDescription = orDefault(readScalar(), "");
+                    break;
+                case "deleted":
+                    deleted = "true".equals(readScalar());
+                    break;
+                default:
+                    skipValue(readByte());
+                    break;
+            }
+        }
+
+        if (id == 0) {
+            id = patientId != 0 ? patientId : index + 1;
+        }
+        ApiService.Patient patient = new ApiService.Patient(id, fullname, contact, gender, stateDescription, textMessage);
+        patient.deleted = deleted;
+        return patient;
+    }
+
+    private ApiService.Patient readPatientArray(int size, int index) throws IOException {
+        int id = size > 0 ? toInt(readScalar(), 0) : 0;
+        String fullname = size > 1 ? orDefault(readScalar(), "") : "";
+        String contact = size > 2 ? orDefault(readScalar(), "") : "";
+        String gender = size > 3 ? orDefault(readScalar(), "M") : "M";
+        String textMessage = size > 4 ? orDefault(readScalar(), "") : "";
+        String stateDescription = size > 5 ? orDefault(readScalar(), "") : "";
+        boolean deleted = size > 6 && "true".equals(readScalar());
+        // Campos acrescentados no futuro
+        for (int i = 7; i < size; i++) {
+            skipValue(readByte());
+        }
+
+        if (id == 0) {
+            id = index + 1;
+        }
+        ApiService.Patient patient = new ApiService.Patient(id, fullname, contact, gender, stateDescription, textMessage);
+        patient.deleted = deleted;
+        return patient;
+    }
+
+    // Lê um valor escalar como texto (como o JSON o veria); nil, maps,
+    // arrays, bin e ext devolvem null
+    private String readScalar() throws IOException {
+        int type = readByte();
+        if (type <= 0x7f) {
+            return String.valueOf(type);            // positive fixint
+        }
+        if (type >= 0xe0) {
+            return String.valueOf((byte) type);     // negative fixint
+        }
+        if ((type & 0xe0) == 0xa0) {
+            return readString(type & 0x1f);         // fixstr
+        }
+        switch (type) {
+            case 0xc0:
+                return null;
+            case 0xc2:
+                return "false";
+            case 0xc3:
+                return "true";
+            case 0xd9:
+                return readString(readByte());
+            case 0xda:
+                return readString(readUnsignedShort());
+            case 0xdb:
+                return readString(readLength());
+            case 0xcc:
+                return String.valueOf(readByte());
+            case 0xcd:
+                return String.valueOf(readUnsignedShort());
+            case 0xce:
+                return String.valueOf(readInt() & 0xffffffffL);
+            case 0xcf:
+                return Long.toUnsignedString(readLong());
+            case 0xd0:
+                return String.valueOf((byte) readByte());
+            case 0xd1:
+                return String.valueOf((short) readUnsignedShort());
+            case 0xd2:
+                return String.valueOf(readInt());
+            case 0xd3:
+                return String.valueOf(readLong());
+            case 0xca:
+                return String.valueOf(Float.intBitsToFloat(readInt()));
+            case 0xcb:
+                return String.valueOf(Double.longBitsToDouble(readLong()));
+            default:
+                skipValue(type);
+                return null;
+        }
+    }
+
+    private void skipValue(int type) throws IOException {
+        int size;
+        if ((size = readMapHeader(type)) >= 0) {
+            for (int i = 0; i < size * 2; i++) {
+                skipValue(readByte());
+            }
+            return;
+        }
+        if ((size = readArrayHeader(type)) >= 0) {
+            for (int i = 0; i < size; i++) {
+                skipValue(readByte());
+            }
+            return;
+        }
+        if (type <= 0x7f || type >= 0xe0) {
+            return;
+        }
+        if ((type & 0xe0) == 0xa0) {
+            skip(type & 0x1f);
+            return;
+        }
+        switch (type) {
+            case 0xc0:
+            case 0xc2:
+            case 0xc3:
+                return;
+            case 0xcc:
+            case 0xd0:
+                skip(1);
+                return;
+            case 0xcd:
+            case 0xd1:
+                skip(2);
+                return;
+            case 0xca:
+            case 0xce:
+            case 0xd2:
+                skip(4);
+                return;
+            case 0xcb:
+            case 0xcf:
+            case 0xd3:
+                skip(8);
+                return;
+            case 0xc4:
+            case 0xd9:
+                skip(readByte());
+                return;
+            case 0xc5:
+            case 0xda:
+                skip(readUnsignedShort());
+                return;
+            case 0xc6:
+            case 0xdb:
+                skip(readLength());
+                return;
+            case 0xd4:
+                skip(2);
+                return;
+            case 0xd5:
+                skip(3);
+                return;
+            case 0xd6:
+                skip(5);
+                return;
+            case 0xd7:
+                skip(9);
+                return;
+            case 0xd8:
+                skip(17);
+                return;
+            case 0xc7:
+                skip(readByte() + 1);
+                return;
+            case 0xc8:
+                skip(readUnsignedShort() + 1);
+                return;
+            case 0xc9:
+                skip(readLength() + 1);
+                return;
+            default:
+                throw formatError("Tipo MessagePack inválido 0x" + Integer.toHexString(type));
+        }
+    }
+
+    // -1 se o tipo não for array
+    private int readArrayHeader(int type) throws IOException {
+        if ((type & 0xf0) == 0x90) {
+            return type & 0x0f;
+        }
+        if (type == 0xdc) {
+            return readUnsignedShort();
+        }
+        if (type == 0xdd) {
+            return readLength();
+        }
+        return -1;
+    }
+
+    // -1 se o tipo não for map
+    private int readMapHeader(int type) throws IOException {
+        if ((type & 0xf0) == 0x80) {
+            return type & 0x0f;
+        }
+        if (type == 0xde) {
+            return readUnsignedShort();
+        }
+        if (type == 0xdf) {
+            return readLength();
+        }
+        return -1;
+    }
+
+    private String readString(int length) throws IOException {
+        if (length == 0) {
+            return "";
+        }
+        require(length);
+        String value = new String(buffer, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return value;
+    }
+
+    private int readByte() throws IOException {
+        require(1);
+        return buffer[pos++] & 0xff;
+    }
+
+    private int readUnsignedShort() throws IOException {
+        require(2);
+        int value = ((buffer[pos] & 0xff) << 8) | (buffer[pos + 1] & 0xff);
+        pos += 2;
+        return value;
+    }
+
+    private int readInt() throws IOException {
+        require(4);
+        int value = ((buffer[pos] & 0xff) << 24) | ((buffer[pos + 1] & 0xff) << 16)
+                | ((buffer[pos + 2] & 0xff) << 8) | (buffer[pos + 3] & 0xff);
+        pos += 4;
+        return value;
+    }
+
+    private long readLong() throws IOException {
+        long high = readInt() & 0xffffffffL;
+        long low = readInt() & 0xffffffffL;
+        return (high << 32) | low;
+    }
+
+    // Tamanhos de 32 bits: acima de Integer.MAX_VALUE só com dados corrompidos
+    private int readLength() throws IOException {
+        int length = readInt();
+        if (length < 0) {
+            throw formatError("Tamanho inválido");
+        }
+        return length;
+    }
+
+    private void skip(int length) throws IOException {
+        while (length > 0) {
+            if (pos >= limit && !fill()) {
+                throw formatError("Fim inesperado da resposta");
+            }
+            int n = Math.min(length, limit - pos);
+            pos += n;
+            length -= n;
+        }
+    }
+
+    private void require(int length) throws IOException {
+        if (!ensure(length)) {
+            throw formatError("Fim inesperado da resposta");
+        }
+    }
+
+    // Garante length bytes contíguos no buffer (cresce para strings grandes)
+    private boolean ensure(int length) throws IOException {
+        if (limit - pos >= length) {
+            return true;
+        }
+        if (length > buffer.length) {
+            byte[] bigger = new byte[Math.max(length, buffer.length * 2)];
+            System.arraycopy(buffer, pos, bigger, 0, limit - pos);
+            buffer = bigger;
+        } else {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+        }
+        limit -= pos;
+        pos = 0;
+        while (limit < length) {
+            int n = in.read(buffer, limit, buffer.length - limit);
+            if (n <= 0) {
+                return false;
+            }
+            limit += n;
+        }
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            pos = 0;
+            limit = 0;
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    // Mesmo comportamento de optInt: aceita números e strings numéricas
+    private static int toInt(String value, int fallback) {
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            try {
+                return (int) Double.parseDouble(value);
+            } catch (NumberFormatException ignored) {
+                return fallback;
+            }
+        }
+    }
+
+    private static String orDefault(String value, String fallback) {
+        return value != null ? value : fallback;
+    }
+
+    private IOException formatError(String message) {
+        return new IOException(message + " (registo " + totalCount + ")");
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Armazenamento local dos pacientes (SQLite), para que a lista e o ciclo
+// sobrevivam à morte do processo e abram sem esperar pela rede.
+// Índices: id (chave primária), contacto normalizado e estado.
+public class PatientStore extends SQLiteOpenHelper {
+    private static final String TAG = "PatientStore";
+    private static final String DB_NAME = "pisaude.db";
+    private static final int DB_VERSION = 1;
+
+    private static final String TABLE = "patients";
+    private static final String COLUMNS = "id, fullname, contact, gender, text_message, state_description";
+
+    private static PatientStore instance;
+
+    private PatientStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public static synchronized PatientStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new PatientStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " (" +
+                "id INTEGER PRIMARY KEY, " +
+                "fullname TEXT, " +
+                "contact TEXT, " +
+                "contact_key TEXT NOT NULL, " +
+                "gender TEXT, " +
+                "text_message TEXT, " +
+                "state_description TEXT, " +
+                "state_key TEXT NOT NULL, " +
+                "updated_at INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX idx_patients_contact_key ON " + TABLE + " (contact_key)");
+        db.execSQL("CREATE INDEX idx_patients_state_key ON " + TABLE + " (state_key)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        onCreate(db);
+    }
+
+    // Mesma normalização usada na remoção de duplicados do ciclo
+    public static String normalizeContact(String contact) {
+        if (contact == null) {
+            return "";
+        }
+        return contact.trim().replace("+", "").replace(" ", "");
+    }
+
+    private static String stateKey(String stateDescription) {
+        return stateDescription != null ? stateDescription.trim().toLowerCase(Locale.ROOT) : "";
+    }
+
+    // ============ ESCRITA (chamar fora da thread principal) ============
+
+    // Sincronização completa: substitui todo o conteúdo numa transação
+    public void replaceAll(List<ApiService.Patient> patients) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE, null, null);
+            upsert(db, patients);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "💾 " + patients.size() + " pacientes gravados (substituição)");
+    }
+
+    // Sincronização incremental: insere ou atualiza pelo id e apaga os
+    // tombstones, na mesma transação
+    public int merge(List<ApiService.Patient> patients, List<Integer> deletedIds) {
+        if (patients.isEmpty() && deletedIds.isEmpty()) {
+            return 0;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            upsert(db, patients);
+            SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE + " WHERE id = ?");
+            try {
+                for (Integer id : deletedIds) {
+                    delete.bindLong(1, id);
+                    delete.executeUpdateDelete();
+                }
+            } finally {
+                delete.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "💾 " + patients.size() + " pacientes atualizados, " + deletedIds.size() + " removidos (delta)");
+        return patients.size() + deletedIds.size();
+    }
+
+    private void upsert(SQLiteDatabase db, List<ApiService.Patient> patients) {
+        SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE +
+                " (id, fullname, contact, contact_key, gender, text_message, state_description, state_key, updated_at)" +
+                " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        try {
+            long now = System.currentTimeMillis();
+            for (ApiService.Patient patient : patients) {
+                insert.clearBindings();
+                insert.bindLong(1, patient.id);
+                bindText(insert, 2, patient.fullname);
+                bindText(insert, 3, patient.contact);
+                insert.bindString(4, normalizeContact(patient.contact));
+                bindText(insert, 5, patient.gender);
+                bindText(insert, 6, patient.textMessageDescription);
+                bindText(insert, 7, patient.stateDescription);
+                insert.bindString(8, stateKey(patient.stateDescription));
+                insert.bindLong(9, now);
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    private static void bindText(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    // ============ LEITURA ============
+
+    public List<ApiService.Patient> getAll() {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT " + COLUMNS + " FROM " + TABLE + " ORDER BY id", null);
+        return readPatients(cursor);
+    }
+
+    // Um paciente por contacto normalizado (o de menor id), usando o índice de contacto
+    public List<ApiService.Patient> getUniqueByContact() {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT " + COLUMNS + ", MIN(id) FROM " + TABLE +
+                        " WHERE contact_key <> '' GROUP BY contact_key ORDER BY id", null);
+        return readPatients(cursor);
+    }
+
+    public List<ApiService.Patient> findByContact(String contact) {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT " + COLUMNS + " FROM " + TABLE + " WHERE contact_key = ? ORDER BY id",
+                new String[]{normalizeContact(contact)});
+        return readPatients(cursor);
+    }
+
+    // Contagem por estado (em minúsculas), usando o índice de estado
+    public Map<String, Integer> getStateCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT state_key, COUNT(*) FROM " + TABLE + " GROUP BY state_key", null);
+        try {
+            while (cursor.moveToNext()) {
+                counts.put(cursor.getString(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return counts;
+    }
+
+    public long count() {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE);
+    }
+
+    public boolean isEmpty() {
+        return count() == 0;
+    }
+
+    private static List<ApiService.Patient> readPatients(Cursor cursor) {
+        List<ApiService.Patient> patients = new ArrayList<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                patients.add(new ApiService.Patient(
+                        cursor.getInt(0),
+                        cursor.getString(1),
+                        cursor.getString(2),
+                        cursor.getString(3),
+                        cursor.getString(5),
+                        cursor.getString(4)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return patients;
+    }
+}
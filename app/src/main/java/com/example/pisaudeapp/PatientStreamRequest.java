@@ -0,0 +1,260 @@
+package com.example.pisaudeapp;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Request Volley que decodifica /api/observation com o PatientJsonStreamParser.
+// O parse acontece na thread de rede do Volley; a thread principal recebe
+// apenas a página final de pacientes.
+// Pede MessagePack no Accept; servidores que não o suportam respondem em
+// JSON e o parser é escolhido pelo Content-Type da resposta.
+public class PatientStreamRequest extends Request<ApiService.PatientPage> {
+
+    // Cursor opcional devolvido pelo servidor quando pagina por cursor
+    static final String HEADER_NEXT_CURSOR = "X-Next-Cursor";
+    // "true": as respostas com updatedSince trazem os removidos como
+    // registos {"id": ..., "deleted": true}
+    static final String HEADER_TOMBSTONES = "X-Delta-Tombstones";
+
+    static final String ACCEPT = PatientMsgPackParser.CONTENT_TYPE + ", application/json;q=0.9";
+
+    private final Object lock = new Object();
+    private final Map<String, String> headers = new HashMap<>();
+    private Response.Listener<ApiService.PatientPage> listener;
+    private Response.ErrorListener errorListener;
+    // Já houve resposta, erro ou cancelamento entregue: nada mais é entregue
+    private boolean delivered = false;
+
+    // Cache em disco opcional (pedido condicional + 304 servido do disco)
+    private ResponseDiskCache responseCache;
+    private ResponseDiskCache.Entry cachedEntry;
+
+    public PatientStreamRequest(String url,
+                                Response.Listener<ApiService.PatientPage> listener,
+                                Response.ErrorListener errorListener) {
+        super(Method.GET, url, errorListener);
+        this.listener = listener;
+        this.errorListener = errorListener;
+        headers.put("Accept", ACCEPT);
+    }
+
+    public void addHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    // Revalida a entrada em cache: 304 devolve o corpo do disco, 200 substitui-o
+    public void setResponseCache(ResponseDiskCache cache, ResponseDiskCache.Entry entry) {
+        this.responseCache = cache;
+        this.cachedEntry = entry;
+        if (entry != null) {
+            if (entry.etag != null) {
+                headers.put("If-None-Match", entry.etag);
+            }
+            if (entry.lastModified != null) {
+                headers.put("If-Modified-Since", entry.lastModified);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    // O Volley não chama nenhum listener de um pedido cancelado; quem espera
+    // por ele (ex.: os callbacks juntos no getPatients) recebe um erro, na
+    // thread principal como as restantes entregas
+    @Override
+    public void cancel() {
+        super.cancel();
+        final Response.ErrorListener current;
+        synchronized (lock) {
+            current = delivered ? null : errorListener;
+            delivered = true;
+            listener = null;
+            errorListener = null;
+        }
+        if (current != null) {
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    current.onErrorResponse(new VolleyError("Pedido cancelado"));
+                }
+            });
+        }
+    }
+
+    @Override
+    protected Response<ApiService.PatientPage> parseNetworkResponse(NetworkResponse response) {
+        try {
+            ApiService.PatientPage page = responseCache != null ? parseWithCache(response) : parseBody(response);
+            return Response.success(page, HttpHeaderParser.parseCacheHeaders(response));
+        } catch (IOException | RuntimeException e) {
+            return Response.error(new ParseError(e));
+        }
+    }
+
+    @Override
+    protected void deliverResponse(ApiService.PatientPage response) {
+        Response.Listener<ApiService.PatientPage> current;
+        synchronized (lock) {
+            current = delivered ? null : listener;
+            delivered = true;
+        }
+        if (current != null) {
+            current.onResponse(response);
+        }
+    }
+
+    @Override
+    public void deliverError(VolleyError error) {
+        synchronized (lock) {
+            if (delivered) {
+                return;
+            }
+            delivered = true;
+        }
+        super.deliverError(error);
+    }
+
+    // Corre na thread de rede do Volley, tal como o parse
+    private ApiService.PatientPage parseWithCache(NetworkResponse response) throws IOException {
+        boolean notModified = response.notModified || response.statusCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+        if (notModified && cachedEntry != null) {
+            byte[] body = responseCache.readBody(cachedEntry);
+            if (body == null) {
+                // Corpo perdido: o próximo pedido vai sem validadores
+                responseCache.remove(getUrl());
+                throw new IOException("Resposta 304 sem corpo em cache");
+            }
+            responseCache.touch(cachedEntry, response.headers);
+            Map<String, String> cachedHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            if (response.headers != null) {
+                cachedHeaders.putAll(response.headers);
+            }
+            if (cachedEntry.contentType != null) {
+                cachedHeaders.put("Content-Type", cachedEntry.contentType);
+            }
+            ApiService.PatientPage page = parseData(body, cachedHeaders);
+            // Mesmo conteúdo que já estava gravado
+            return new ApiService.PatientPage(page.patients, page.recordCount, page.nextCursor,
+                    true, page.etag, page.serverDate, page.deletedIds, page.tombstones, page.digest);
+        }
+
+        ApiService.PatientPage page = parseBody(response);
+        if (!notModified && response.statusCode == HttpURLConnection.HTTP_OK
+                && response.data != null && response.data.length > 0) {
+            responseCache.put(getUrl(), response.data, response.headers);
+        }
+        return page;
+    }
+
+    // Corpo lido do ResponseDiskCache, fora de qualquer pedido
+    static ApiService.PatientPage parseCached(ResponseDiskCache.Entry entry, byte[] body) throws IOException {
+        Map<String, String> cachedHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (entry.contentType != null) {
+            cachedHeaders.put("Content-Type", entry.contentType);
+        }
+        if (entry.etag != null) {
+            cachedHeaders.put("ETag", entry.etag);
+        }
+        return parseData(body, cachedHeaders);
+    }
+
+    static ApiService.PatientPage parseBody(NetworkResponse response) throws IOException {
+        String etag = header(response, "ETag");
+        String date = header(response, "Date");
+        long serverDate = date != null ? HttpHeaderParser.parseDateAsEpoch(date) : 0;
+
+        if (response.notModified || response.statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            return new ApiService.PatientPage(new ArrayList<>(), 0, null, true, etag, serverDate);
+        }
+        return parseData(response.data, response.headers);
+    }
+
+    private static ApiService.PatientPage parseData(byte[] data, Map<String, String> responseHeaders) throws IOException {
+        String nextCursor = header(responseHeaders, HEADER_NEXT_CURSOR);
+        String etag = header(responseHeaders, "ETag");
+        String date = header(responseHeaders, "Date");
+        long serverDate = date != null ? HttpHeaderParser.parseDateAsEpoch(date) : 0;
+        boolean tombstones = "true".equalsIgnoreCase(header(responseHeaders, HEADER_TOMBSTONES));
+
+        final List<ApiService.Patient> patients = new ArrayList<>();
+        final List<Integer> deletedIds = new ArrayList<>();
+        if (data == null || data.length == 0) {
+            return new ApiService.PatientPage(patients, 0, nextCursor, false, etag, serverDate,
+                    deletedIds, tombstones);
+        }
+
+        PatientJsonStreamParser.PatientSink sink = new PatientJsonStreamParser.PatientSink() {
+            @Override
+            public void onPatient(ApiService.Patient patient) {
+                patients.add(patient);
+            }
+
+            @Override
+            public void onDeleted(int id) {
+                deletedIds.add(id);
+            }
+        };
+
+        int totalCount;
+        if (PatientMsgPackParser.isMsgPack(header(responseHeaders, "Content-Type"))) {
+            PatientMsgPackParser parser = new PatientMsgPackParser(new ByteArrayInputStream(data));
+            parser.parse(sink);
+            totalCount = parser.getTotalCount();
+        } else {
+            Charset charset = Charset.forName(HttpHeaderParser.parseCharset(responseHeaders, "utf-8"));
+            PatientJsonStreamParser parser = new PatientJsonStreamParser(new ByteArrayInputStream(data), charset);
+            parser.parse(sink);
+            totalCount = parser.getTotalCount();
+        }
+        return new ApiService.PatientPage(patients, totalCount, nextCursor, false, etag, serverDate,
+                deletedIds, tombstones, digest(data));
+    }
+
+    // Identifica o corpo da página (deteção de páginas repetidas pelo ApiService)
+    static String digest(byte[] data) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    private static String header(NetworkResponse response, String name) {
+        return header(response.headers, name);
+    }
+
+    private static String header(Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        String value = headers.get(name);
+        return value != null && !value.trim().isEmpty() ? value.trim() : null;
+    }
+}
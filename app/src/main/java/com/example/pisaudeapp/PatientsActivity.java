@@ -25,6 +25,7 @@ public class PatientsActivity extends AppCompatActivity implements PatientsAdapt
     private TextView tvEmpty, tvTitle, tvFilterLabel;
     private Spinner spinnerFilter;
     private ApiService apiService;
+    private PatientStore patientStore;
     private List<ApiService.Patient> allPatients = new ArrayList<>();
     private List<ApiService.Patient> filteredPatients = new ArrayList<>();
     private LogManager logManager;
@@ -71,10 +72,11 @@ public class PatientsActivity extends AppCompatActivity implements PatientsAdapt
         recyclerView.setAdapter(adapter);
 
         // Inicializar API
-        apiService = new ApiService(this);
+        apiService = ApiService.getInstance(this);
+        patientStore = PatientStore.getInstance(this);
 
-        // Carregar pacientes
-        loadPatients();
+        // Mostrar primeiro o que está gravado e depois atualizar pela rede
+        loadPatientsFromStore();
 
         // Adicionar log
         logManager.addLog("📋 Tela de pacientes aberta");
@@ -114,8 +116,41 @@ public class PatientsActivity extends AppCompatActivity implements PatientsAdapt
         });
     }
 
-    private void loadPatients() {
+    private void loadPatientsFromStore() {
         showLoading(true);
+
+        new Thread(() -> {
+            List<ApiService.Patient> stored;
+            try {
+                stored = patientStore.getAll();
+            } catch (Exception e) {
+                Log.e(TAG, "Erro ao ler armazenamento local", e);
+                stored = new ArrayList<>();
+            }
+
+            final List<ApiService.Patient> finalStored = stored;
+            runOnUiThread(() -> {
+                if (!finalStored.isEmpty() && allPatients.isEmpty()) {
+                    allPatients.addAll(finalStored);
+                    filterPatients(getSelectedEstado());
+                    showLoading(false);
+                    logManager.addLog("💾 " + finalStored.size() + " pacientes do armazenamento local");
+                }
+                loadPatients();
+            });
+        }).start();
+    }
+
+    private String getSelectedEstado() {
+        int position = spinnerFilter.getSelectedItemPosition();
+        return position >= 0 && position < estados.length ? estados[position] : "chamada";
+    }
+
+    private void loadPatients() {
+        // Só bloquear a tela se não houver nada para mostrar
+        if (allPatients.isEmpty()) {
+            showLoading(true);
+        }
         logManager.addLog("📥 Carregando lista de pacientes...");
 
         new Thread(() -> {
@@ -126,8 +161,8 @@ public class PatientsActivity extends AppCompatActivity implements PatientsAdapt
                         allPatients.clear();
                         allPatients.addAll(patients);
 
-                        // Filtrar com estado padrão "chamada"
-                        filterPatients("chamada");
+                        // Manter o filtro escolhido (padrão "chamada")
+                        filterPatients(getSelectedEstado());
 
                         showLoading(false);
                         logManager.addLog("✅ " + patients.size() + " pacientes carregados");
@@ -137,6 +172,11 @@ public class PatientsActivity extends AppCompatActivity implements PatientsAdapt
                 @Override
                 public void onError(String error) {
                     runOnUiThread(() -> {
+                        if (!allPatients.isEmpty()) {
+                            // Continuar a mostrar os dados locais
+                            logManager.addLog("⚠️ Rede indisponível, mostrando dados locais: " + error);
+                            return;
+                        }
                         tvEmpty.setVisibility(View.VISIBLE);
                         tvEmpty.setText("Erro ao carregar pacientes: " + error);
                         tvTitle.setText("Erro no carregamento");
@@ -0,0 +1,168 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Fila persistente (write-ahead) das atualizações de estado de SMS.
+// Cada transição é gravada antes de ir para a rede e só sai daqui quando
+// o servidor a confirmar; uma linha por paciente (a transição mais recente).
+public class PendingStatusStore extends SQLiteOpenHelper {
+    private static final String DB_NAME = "status_queue.db";
+    private static final int DB_VERSION = 1;
+    private static final String TABLE = "status_queue";
+
+    private static PendingStatusStore instance;
+
+    public static class Entry {
+        public final int patientId;
+        public final String smsStatus;
+        public final String statusMessage;
+        public final long timestamp;
+        public final String idempotencyKey;
+        public final int attempts;
+
+        Entry(int patientId, String smsStatus, String statusMessage, long timestamp,
+              String idempotencyKey, int attempts) {
+            this.patientId = patientId;
+            this.smsStatus = smsStatus;
+            this.statusMessage = statusMessage;
+            this.timestamp = timestamp;
+            this.idempotencyKey = idempotencyKey;
+            this.attempts = attempts;
+        }
+    }
+
+    private PendingStatusStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public static synchronized PendingStatusStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new PendingStatusStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " (" +
+                "patient_id INTEGER PRIMARY KEY, " +
+                "sms_status TEXT NOT NULL, " +
+                "status_message TEXT, " +
+                "timestamp INTEGER NOT NULL, " +
+                "idempotency_key TEXT NOT NULL, " +
+                "attempts INTEGER NOT NULL DEFAULT 0, " +
+                "next_attempt_at INTEGER NOT NULL DEFAULT 0, " +
+                "leased INTEGER NOT NULL DEFAULT 0, " +
+                "last_error TEXT)");
+        db.execSQL("CREATE INDEX idx_status_queue_next ON " + TABLE + " (next_attempt_at)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Sem migrações ainda
+    }
+
+    // Nova transição: substitui a anterior do mesmo paciente e fica pronta a enviar
+    public void put(int patientId, String smsStatus, String statusMessage, long timestamp, String idempotencyKey) {
+        getWritableDatabase().execSQL("INSERT OR REPLACE INTO " + TABLE +
+                        " (patient_id, sms_status, status_message, timestamp, idempotency_key, attempts, next_attempt_at, leased)" +
+                        " VALUES (?, ?, ?, ?, ?, 0, 0, 0)",
+                new Object[]{patientId, smsStatus, statusMessage, timestamp, idempotencyKey});
+    }
+
+    // Chave da transição do paciente que ainda não está na rede (ou cuja
+    // reserva expirou): é a que um put() novo substitui sem ser enviada
+    public String getUnsentKey(int patientId, long now) {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT idempotency_key FROM " + TABLE +
+                        " WHERE patient_id = ? AND (leased = 0 OR next_attempt_at <= ?)",
+                new String[]{String.valueOf(patientId), String.valueOf(now)});
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public List<Entry> getDue(long now, int limit) {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT patient_id, sms_status, status_message, timestamp, idempotency_key, attempts FROM " + TABLE +
+                        " WHERE next_attempt_at <= ? ORDER BY next_attempt_at, timestamp LIMIT " + limit,
+                new String[]{String.valueOf(now)});
+        List<Entry> entries = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                entries.add(new Entry(cursor.getInt(0), cursor.getString(1), cursor.getString(2),
+                        cursor.getLong(3), cursor.getString(4), cursor.getInt(5)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return entries;
+    }
+
+    // Confirmado pelo servidor; se entretanto chegou outra transição, essa fica
+    public void remove(Entry entry) {
+        getWritableDatabase().execSQL("DELETE FROM " + TABLE + " WHERE patient_id = ? AND idempotency_key = ?",
+                new Object[]{entry.patientId, entry.idempotencyKey});
+    }
+
+    public void reschedule(Entry entry, long nextAttemptAt, String error) {
+        getWritableDatabase().execSQL("UPDATE " + TABLE +
+                        " SET attempts = attempts + 1, next_attempt_at = ?, leased = 0, last_error = ?" +
+                        " WHERE patient_id = ? AND idempotency_key = ?",
+                new Object[]{nextAttemptAt, error, entry.patientId, entry.idempotencyKey});
+    }
+
+    // Reserva as entradas enquanto o pedido está na rede; se o processo
+    // morrer, voltam a ficar disponíveis quando a reserva expirar
+    public void lease(List<Entry> entries, long until) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Entry entry : entries) {
+                db.execSQL("UPDATE " + TABLE + " SET next_attempt_at = ?, leased = 1" +
+                                " WHERE patient_id = ? AND idempotency_key = ?",
+                        new Object[]{until, entry.patientId, entry.idempotencyKey});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Rede voltou: o que está em backoff pode ser tentado já. As entradas
+    // reservadas ainda estão na rede e só voltam quando a reserva expirar,
+    // senão seriam enviadas duas vezes
+    public void makeAllDue(long now) {
+        getWritableDatabase().execSQL("UPDATE " + TABLE + " SET next_attempt_at = 0, leased = 0" +
+                        " WHERE leased = 0 OR next_attempt_at <= ?",
+                new Object[]{now});
+    }
+
+    // Próximo instante com trabalho pendente (-1 se a fila estiver vazia)
+    public long getNextAttemptAt() {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT MIN(next_attempt_at) FROM " + TABLE, null);
+        try {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+            return -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public long count() {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE);
+    }
+}
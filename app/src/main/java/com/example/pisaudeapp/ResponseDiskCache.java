@@ -0,0 +1,197 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+// Cache em disco da última resposta completa de um GET (usado para
+// /api/observation). Guarda o corpo tal como veio da rede e os validadores
+// (ETag / Last-Modified), para pedir com If-None-Match / If-Modified-Since
+// e responder aos 304 a partir do disco.
+// Cada entrada são dois ficheiros: <chave>.meta e <chave>.body, escritos
+// num temporário e renomeados para nunca ficarem a meio.
+public class ResponseDiskCache {
+    private static final String TAG = "ResponseDiskCache";
+    private static final String DIR = "http_responses";
+    private static final int META_VERSION = 1;
+
+    private static ResponseDiskCache instance;
+
+    private final File dir;
+
+    public static class Entry {
+        public final String url;
+        public final String etag;           // null se o servidor não enviou
+        public final String lastModified;   // null se o servidor não enviou
+        public final String contentType;
+        public final long storedAt;         // Última vez que o servidor confirmou o corpo
+        public final long size;
+
+        Entry(String url, String etag, String lastModified, String contentType, long storedAt, long size) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.storedAt = storedAt;
+            this.size = size;
+        }
+
+        public long ageMs() {
+            return System.currentTimeMillis() - storedAt;
+        }
+    }
+
+    private ResponseDiskCache(Context context) {
+        this.dir = new File(context.getCacheDir(), DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "⚠️ Não foi possível criar " + dir);
+        }
+    }
+
+    public static synchronized ResponseDiskCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new ResponseDiskCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Metadados da entrada (sem ler o corpo); null se não houver
+    public synchronized Entry get(String url) {
+        File meta = metaFile(url);
+        if (!meta.exists() || !bodyFile(url).exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(meta))) {
+            if (in.readInt() != META_VERSION) {
+                return null;
+            }
+            String storedUrl = in.readUTF();
+            if (!url.equals(storedUrl)) {
+                return null; // Colisão de hash
+            }
+            return new Entry(storedUrl, readOptional(in), readOptional(in), readOptional(in),
+                    in.readLong(), in.readLong());
+        } catch (IOException e) {
+            Log.w(TAG, "⚠️ Metadados ilegíveis para " + url, e);
+            return null;
+        }
+    }
+
+    public synchronized byte[] readBody(Entry entry) {
+        File body = bodyFile(entry.url);
+        if (body.length() != entry.size) {
+            return null;
+        }
+        byte[] data = new byte[(int) entry.size];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(body))) {
+            in.readFully(data);
+            return data;
+        } catch (IOException e) {
+            Log.w(TAG, "⚠️ Corpo ilegível para " + entry.url, e);
+            return null;
+        }
+    }
+
+    // Resposta 200: substitui corpo e validadores
+    public synchronized void put(String url, byte[] data, Map<String, String> headers) {
+        String etag = header(headers, "ETag");
+        String lastModified = header(headers, "Last-Modified");
+        if (etag == null && lastModified == null) {
+            // Sem validadores não há como revalidar; não vale a pena guardar
+            remove(url);
+            return;
+        }
+        try {
+            writeAtomically(bodyFile(url), data);
+            writeMeta(new Entry(url, etag, lastModified, header(headers, "Content-Type"),
+                    System.currentTimeMillis(), data.length));
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Erro ao gravar resposta em cache", e);
+            remove(url);
+        }
+    }
+
+    // Resposta 304: o corpo em disco continua válido a partir de agora
+    public synchronized void touch(Entry entry, Map<String, String> headers) {
+        String etag = header(headers, "ETag");
+        try {
+            writeMeta(new Entry(entry.url, etag != null ? etag : entry.etag, entry.lastModified,
+                    entry.contentType, System.currentTimeMillis(), entry.size));
+        } catch (IOException e) {
+            Log.w(TAG, "⚠️ Erro ao atualizar metadados", e);
+        }
+    }
+
+    public synchronized void remove(String url) {
+        metaFile(url).delete();
+        bodyFile(url).delete();
+    }
+
+    private void writeMeta(Entry entry) throws IOException {
+        File tmp = new File(dir, key(entry.url) + ".meta.tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeInt(META_VERSION);
+            out.writeUTF(entry.url);
+            writeOptional(out, entry.etag);
+            writeOptional(out, entry.lastModified);
+            writeOptional(out, entry.contentType);
+            out.writeLong(entry.storedAt);
+            out.writeLong(entry.size);
+        }
+        rename(tmp, metaFile(entry.url));
+    }
+
+    private void writeAtomically(File target, byte[] data) throws IOException {
+        File tmp = new File(dir, target.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+            out.getFD().sync();
+        }
+        rename(tmp, target);
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            from.delete();
+            throw new IOException("Falha ao renomear " + from.getName());
+        }
+    }
+
+    private static void writeOptional(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readOptional(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static String header(Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        String value = headers.get(name);
+        return value != null && !value.trim().isEmpty() ? value.trim() : null;
+    }
+
+    private File metaFile(String url) {
+        return new File(dir, key(url) + ".meta");
+    }
+
+    private File bodyFile(String url) {
+        return new File(dir, key(url) + ".body");
+    }
+
+    private static String key(String url) {
+        return Integer.toHexString(url.hashCode());
+    }
+}
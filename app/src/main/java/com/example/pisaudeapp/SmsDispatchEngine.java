@@ -0,0 +1,392 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Motor de envio de SMS fora da thread principal. Uma única thread de
+// trabalho é dona da outbox, do ritmo (SmsRateGovernor de cada SIM, via
+// MultiSimDispatcher) e do resultado dos envios; a UI só observa o
+// progresso, agregado num LiveData.
+// Vive enquanto o processo viver, independentemente da Activity.
+public class SmsDispatchEngine {
+    private static final String TAG = "SmsDispatch";
+
+    // Espera por novas páginas quando a fila esgota antes da busca terminar
+    private static final long FETCH_POLL_MS = 500;
+    // Intervalo mínimo entre atualizações de progresso para a UI
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    // Tempo máximo à espera dos resultados do rádio no fim de um lote
+    private static final long RESULT_WAIT_MS = 2 * 60 * 1000L;
+
+    public interface CycleBatchCallback {
+        void onResume(SmsOutbox.Batch batch, int interrupted);
+
+        void onNewBatch(String batchId);
+    }
+
+    // Decide no momento do envio se este aparelho ainda envia para o contacto
+    // (modo multi-gateway: a partição pode ter passado para outro gateway)
+    public interface RecipientFilter {
+        boolean accept(String phone);
+    }
+
+    public interface EnqueueCallback {
+        void onEnqueued(int queued);
+    }
+
+    // Fim de um lote, na thread do motor (para quem não tem Activity, como o CycleEngine)
+    public interface BatchFinishedListener {
+        void onBatchFinished(DispatchProgress progress);
+    }
+
+    public static class DispatchProgress {
+        public static final int STATE_RUNNING = 1;
+        public static final int STATE_FINISHED = 2;
+        public static final int STATE_SUSPENDED = 3;
+
+        public final String batchId;
+        public final int cycleNumber;
+        public final int state;
+        public final int sent;
+        public final int failed;
+        public final int total;
+        public final long timestamp;
+
+        DispatchProgress(String batchId, int cycleNumber, int state, SmsOutbox.Progress progress) {
+            this.batchId = batchId;
+            this.cycleNumber = cycleNumber;
+            this.state = state;
+            this.sent = progress.sent;
+            this.failed = progress.failed;
+            this.total = progress.total();
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+
+    private static SmsDispatchEngine instance;
+
+    // null nos testes na JVM (SIM fixos)
+    private final Context context;
+    private final OutboxStore outbox;
+    private final LogManager logManager;
+    private final ScheduledExecutorService executor;
+    // Relido a cada lote (os SIM ativos podem mudar); só usado na thread do motor
+    private MultiSimDispatcher dispatcher;
+    private final MutableLiveData<DispatchProgress> progress = new MutableLiveData<>();
+    private volatile RecipientFilter recipientFilter;
+    private volatile BatchFinishedListener batchFinishedListener;
+
+    // Escritos na thread do motor; lidos também pela UI
+    private volatile String activeBatchId;
+    private volatile int activeCycleNumber;
+    // Invalida passos agendados de um lote anterior
+    private int generation = 0;
+    private long lastProgressPost = 0;
+    private long lastSubmitAt = 0;
+
+    private SmsDispatchEngine(Context context) {
+        this(context, SmsOutbox.getInstance(context), MultiSimDispatcher.getInstance(context));
+    }
+
+    // Testes de carga: outbox em memória e gateways falsos
+    SmsDispatchEngine(Context context, OutboxStore outbox, MultiSimDispatcher dispatcher) {
+        this.context = context;
+        this.outbox = outbox;
+        this.dispatcher = dispatcher;
+        this.logManager = LogManager.getInstance();
+
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "sms-dispatch");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        pool.setRemoveOnCancelPolicy(true);
+        this.executor = pool;
+    }
+
+    public static synchronized SmsDispatchEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new SmsDispatchEngine(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Só para os testes: em produção o motor vive tanto quanto o processo
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public LiveData<DispatchProgress> getProgress() {
+        return progress;
+    }
+
+    // null envia para todos
+    public void setRecipientFilter(RecipientFilter filter) {
+        this.recipientFilter = filter;
+    }
+
+    public void setBatchFinishedListener(BatchFinishedListener listener) {
+        this.batchFinishedListener = listener;
+    }
+
+    public boolean isDispatching() {
+        return activeBatchId != null;
+    }
+
+    // ============ LOTES (tudo corre na thread do motor) ============
+
+    // Retoma um lote que ficou a meio ou cria um novo para o ciclo
+    public void prepareCycle(final int cycleNumber, final CycleBatchCallback callback) {
+        executor.execute(() -> {
+            SmsOutbox.Batch openBatch;
+            while ((openBatch = outbox.findOpenBatch()) != null) {
+                if (openBatch.batchId.equals(activeBatchId)) {
+                    break;
+                }
+                SmsOutbox.Progress pending = outbox.getProgress(openBatch.batchId);
+                if (pending.pending > 0 || pending.sending > 0) {
+                    break;
+                }
+                // Nada por enviar: apenas fechar o lote
+                outbox.finishBatch(openBatch.batchId);
+            }
+
+            if (openBatch != null) {
+                int interrupted = 0;
+                if (!openBatch.batchId.equals(activeBatchId)) {
+                    interrupted = outbox.recoverInterrupted(openBatch.batchId);
+                }
+                // A busca desse lote não pode continuar: envia-se o que já está na outbox
+                outbox.markFetchComplete(openBatch.batchId);
+                callback.onResume(openBatch, interrupted);
+            } else {
+                callback.onNewBatch(outbox.createBatch(cycleNumber));
+            }
+        });
+    }
+
+    // Lote completo de uma vez (envio manual)
+    public void startBatch(final int cycleNumber, final List<ApiService.Patient> patients,
+                           final SmsOutbox.MessageFactory factory, final CycleBatchCallback callback) {
+        executor.execute(() -> {
+            String batchId = outbox.createBatch(cycleNumber);
+            outbox.enqueue(batchId, patients, factory);
+            outbox.markFetchComplete(batchId);
+            start(batchId, cycleNumber);
+            callback.onNewBatch(batchId);
+        });
+    }
+
+    // Grava uma página na outbox pela ordem de chegada
+    public void enqueue(final String batchId, final List<ApiService.Patient> patients,
+                        final SmsOutbox.MessageFactory factory, final EnqueueCallback callback) {
+        executor.execute(() -> {
+            int queued = outbox.enqueue(batchId, patients, factory);
+            if (callback != null) {
+                callback.onEnqueued(queued);
+            }
+        });
+    }
+
+    // Corre depois de todas as páginas já pedidas a enqueue()
+    public void markFetchComplete(final String batchId, final Runnable then) {
+        executor.execute(() -> {
+            outbox.markFetchComplete(batchId);
+            if (then != null) {
+                then.run();
+            }
+        });
+    }
+
+    public void finishBatch(final String batchId) {
+        executor.execute(() -> outbox.finishBatch(batchId));
+    }
+
+    public void discardBatch(final String batchId) {
+        executor.execute(() -> outbox.discardBatch(batchId));
+    }
+
+    // ============ ENVIO ============
+
+    public void start(final String batchId, final int cycleNumber) {
+        executor.execute(() -> {
+            if (batchId.equals(activeBatchId)) {
+                return;
+            }
+            activeBatchId = batchId;
+            activeCycleNumber = cycleNumber;
+            // Um lote novo (ou retomado) apanha a configuração de SIM atual
+            if (context != null) {
+                dispatcher = MultiSimDispatcher.getInstance(context);
+            }
+            generation++;
+            lastProgressPost = 0;
+            Log.d(TAG, "🚀 [Ciclo #" + cycleNumber + "] Enviando SMS do lote " + batchId);
+            scheduleStep(generation, 0);
+        });
+    }
+
+    // Para o envio em curso; o lote continua aberto na outbox
+    public void suspend() {
+        executor.execute(() -> {
+            String batchId = activeBatchId;
+            if (batchId == null) {
+                return;
+            }
+            activeBatchId = null;
+            generation++;
+            Log.w(TAG, "⏸️ Envio do lote " + batchId + " suspenso");
+            progress.postValue(new DispatchProgress(batchId, activeCycleNumber,
+                    DispatchProgress.STATE_SUSPENDED, outbox.getProgress(batchId)));
+        });
+    }
+
+    private void scheduleStep(final int stepGeneration, long delayMs) {
+        Runnable step = () -> {
+            if (stepGeneration == generation) {
+                try {
+                    step(stepGeneration);
+                } catch (RuntimeException e) {
+                    // Falha da base de dados: tentar de novo mais tarde, sem perder o lote
+                    Log.e(TAG, "❌ Erro no envio, nova tentativa em breve", e);
+                    scheduleStep(stepGeneration, FETCH_POLL_MS);
+                }
+            }
+        };
+        if (delayMs <= 0) {
+            executor.execute(step);
+        } else {
+            executor.schedule(step, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void step(int stepGeneration) {
+        final String batchId = activeBatchId;
+        final int cycleNumber = activeCycleNumber;
+        if (batchId == null) {
+            return;
+        }
+
+        // Respeitar o ritmo antes de reservar a mensagem, para que uma
+        // espera nunca deixe uma mensagem presa em "sending". Com vários SIM
+        // basta um deles ter folga.
+        final MultiSimDispatcher.Lane lane = dispatcher.nextLane();
+        if (lane == null) {
+            scheduleStep(stepGeneration, Math.max(1, dispatcher.getDelayMs()));
+            return;
+        }
+
+        SmsOutbox.Item item = outbox.claimNext(batchId);
+
+        if (item == null) {
+            if (!outbox.isFetchComplete(batchId)) {
+                // Fila esgotada mas ainda há páginas a chegar: aguardar
+                scheduleStep(stepGeneration, FETCH_POLL_MS);
+                return;
+            }
+
+            SmsOutbox.Progress done = outbox.getProgress(batchId);
+            if (done.sending > 0 && System.currentTimeMillis() - lastSubmitAt < RESULT_WAIT_MS) {
+                // Ainda há resultados do rádio por chegar
+                scheduleStep(stepGeneration, FETCH_POLL_MS);
+                return;
+            }
+
+            // Todos os SMS foram processados
+            outbox.finishBatch(batchId);
+            activeBatchId = null;
+            generation++;
+
+            Log.d(TAG, "✅ [Ciclo #" + cycleNumber + "] Envio concluído: " + done.sent + "/" + done.total());
+            logManager.addLog("✅ [Ciclo #" + cycleNumber + "] Envio concluído: " + done.sent + "/" + done.total());
+            if (dispatcher.getLaneCount() > 1) {
+                dispatcher.logStats();
+            }
+            DispatchProgress finished = new DispatchProgress(batchId, cycleNumber,
+                    DispatchProgress.STATE_FINISHED, done);
+            progress.postValue(finished);
+            BatchFinishedListener listener = batchFinishedListener;
+            if (listener != null) {
+                listener.onBatchFinished(finished);
+            }
+            return;
+        }
+
+        RecipientFilter filter = recipientFilter;
+        if (filter != null && !filter.accept(item.phone)) {
+            // Outro gateway envia esta mensagem; seguir logo para a próxima
+            outbox.markReassigned(item.id);
+            Log.d(TAG, "🧩 [Ciclo #" + cycleNumber + "] Paciente " + item.patientId + " noutro gateway");
+            scheduleStep(stepGeneration, 0);
+            return;
+        }
+
+        // Verificar se o número é válido (mínimo 9 dígitos)
+        if (item.phone.length() < 9) {
+            Log.w(TAG, "❌ [Ciclo #" + cycleNumber + "] Número inválido: " + item.phone);
+            logManager.addLog("❌ Número inválido: " + item.patientName);
+            outbox.markFailed(item.id, "Número inválido");
+        } else {
+            // A mensagem fica em "sending" até o rádio responder por todas as partes
+            try {
+                int parts = dispatcher.send(lane, item.phone, item.message, false, new SmsGateway.Callback() {
+                    @Override
+                    public void onSent(boolean success, int resultCode) {
+                        executor.execute(() -> onSentResult(item, lane, success, resultCode));
+                    }
+
+                    @Override
+                    public void onDelivered(boolean delivered) {
+                        // Entrega não é acompanhada na outbox
+                    }
+                });
+                lastSubmitAt = System.currentTimeMillis();
+                Log.d(TAG, "📤 SMS entregue ao rádio (" + lane.getName() + ") para: " + item.phone +
+                        " (" + parts + " partes)");
+
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Falha ao enviar SMS para: " + item.phone, e);
+                outbox.markFailed(item.id, e.getMessage());
+                logManager.addLog("❌ Falha ao enviar SMS para " + item.patientName + " (" + item.phone + ")");
+            }
+        }
+
+        publishProgress(batchId, cycleNumber);
+
+        // O próximo envio espera o que o controlo de ritmo indicar
+        scheduleStep(stepGeneration, 0);
+    }
+
+    // Agrega o progresso: no máximo uma atualização por intervalo, e o
+    // postValue do LiveData só entrega à UI o valor mais recente
+    private void publishProgress(String batchId, int cycleNumber) {
+        long now = System.currentTimeMillis();
+        if (now - lastProgressPost < PROGRESS_INTERVAL_MS) {
+            return;
+        }
+        lastProgressPost = now;
+        progress.postValue(new DispatchProgress(batchId, cycleNumber,
+                DispatchProgress.STATE_RUNNING, outbox.getProgress(batchId)));
+    }
+
+    private void onSentResult(SmsOutbox.Item item, MultiSimDispatcher.Lane lane, boolean success, int resultCode) {
+        if (success) {
+            outbox.markSent(item.id);
+            Log.d(TAG, "✅ SMS enviado para: " + item.phone);
+            logManager.addLog("📱 SMS enviado para " + item.patientName + " (" + item.phone + ")");
+        } else {
+            outbox.markFailed(item.id, "Erro do rádio " + resultCode);
+            Log.w(TAG, "📶 Rádio devolveu erro " + resultCode + " para " + item.phone + " (ritmo " +
+                    Math.round(lane.getRateGovernor().getCurrentRatePerMinute()) + " SMS/min, " + lane.getName() + ")");
+            logManager.addLog("❌ Falha ao enviar SMS para " + item.patientName + " (erro " + resultCode + ")");
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.pisaudeapp;
+
+import java.util.List;
+
+// Um canal de envio de SMS (um SIM). A implementação real é o
+// SmsManagerGateway; nos testes na JVM usa-se um gateway falso.
+// Os códigos de resultado são os do SmsManager (Activity.RESULT_OK = -1
+// ou SmsManager.RESULT_ERROR_*).
+public interface SmsGateway {
+
+    interface Callback {
+        // Todas as partes enviadas (ou a primeira falha, com o seu código)
+        void onSent(boolean success, int resultCode);
+
+        // Todas as partes entregues (só quando pedido no envio)
+        void onDelivered(boolean delivered);
+    }
+
+    // Nome para os logs, ex. "SIM 1 (Operadora)"
+    String getName();
+
+    List<String> divideMessage(String message);
+
+    // Entrega a mensagem ao rádio e devolve o número de partes.
+    // Uma RuntimeException significa que a mensagem foi recusada logo e que
+    // o callback não vai ser chamado.
+    int send(String destination, String message, boolean trackDelivery, Callback callback);
+}
@@ -0,0 +1,88 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.os.Build;
+import android.telephony.SmsManager;
+import android.telephony.SubscriptionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// SmsGateway de um SIM: SmsManager da subscrição, com os resultados do
+// rádio recebidos pelo SmsResultCorrelator partilhado.
+public class SmsManagerGateway implements SmsGateway {
+
+    private final SmsManager smsManager;
+    private final SmsResultCorrelator resultCorrelator;
+    private final int subscriptionId;
+    private final String name;
+
+    // SubscriptionManager.INVALID_SUBSCRIPTION_ID usa o SIM padrão do sistema
+    public SmsManagerGateway(Context context, int subscriptionId, String name) {
+        this.smsManager = smsManagerFor(context, subscriptionId);
+        this.resultCorrelator = SmsResultCorrelator.getInstance(context);
+        this.subscriptionId = subscriptionId;
+        this.name = name;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static SmsManager smsManagerFor(Context context, int subscriptionId) {
+        if (subscriptionId == SubscriptionManager.INVALID_SUBSCRIPTION_ID) {
+            return SmsManager.getDefault();
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return context.getSystemService(SmsManager.class).createForSubscriptionId(subscriptionId);
+        }
+        return SmsManager.getSmsManagerForSubscriptionId(subscriptionId);
+    }
+
+    public int getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public List<String> divideMessage(String message) {
+        return smsManager.divideMessage(message);
+    }
+
+    @Override
+    public int send(String destination, String message, boolean trackDelivery, final Callback callback) {
+        final long messageId = resultCorrelator.newMessageId();
+        ArrayList<String> parts = smsManager.divideMessage(message);
+
+        // Registar antes de entregar os PendingIntents ao SmsManager
+        resultCorrelator.track(messageId, parts.size(), trackDelivery, new SmsResultCorrelator.ResultListener() {
+            @Override
+            public void onSent(long id, boolean success, int resultCode) {
+                callback.onSent(success, resultCode);
+            }
+
+            @Override
+            public void onDelivered(long id, boolean delivered) {
+                callback.onDelivered(delivered);
+            }
+        });
+
+        try {
+            if (parts.size() > 1) {
+                smsManager.sendMultipartTextMessage(destination, null, parts,
+                        resultCorrelator.sentIntents(messageId, parts.size()),
+                        trackDelivery ? resultCorrelator.deliveredIntents(messageId, parts.size()) : null);
+            } else {
+                smsManager.sendTextMessage(destination, null, message,
+                        resultCorrelator.sentIntent(messageId),
+                        trackDelivery ? resultCorrelator.deliveredIntent(messageId) : null);
+            }
+        } catch (RuntimeException e) {
+            // Recusada pelo SmsManager: não vão chegar resultados
+            resultCorrelator.cancel(messageId);
+            throw e;
+        }
+        return parts.size();
+    }
+}
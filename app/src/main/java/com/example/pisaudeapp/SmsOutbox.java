@@ -0,0 +1,273 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.List;
+
+// Fila persistente de SMS (outbox). Cada ciclo cria um lote e cada mensagem
+// passa por pending -> sending -> sent/failed. Se o processo morrer a meio,
+// o próximo ciclo retoma o lote no ponto exato em que parou; mensagens que
+// ficaram em "sending" passam a "interrupted" e não são reenviadas, para
+// nunca mandar o mesmo SMS duas vezes.
+public class SmsOutbox extends SQLiteOpenHelper implements OutboxStore {
+    private static final String TAG = "SmsOutbox";
+    private static final String DB_NAME = "sms_outbox.db";
+    private static final int DB_VERSION = 1;
+
+    // Lotes terminados mais antigos que isto são apagados
+    private static final long RETENTION_MS = 7 * 24 * 60 * 60 * 1000L;
+
+    public static final String STATE_PENDING = "pending";
+    public static final String STATE_SENDING = "sending";
+    public static final String STATE_SENT = "sent";
+    public static final String STATE_FAILED = "failed";
+    public static final String STATE_INTERRUPTED = "interrupted";
+    // Paciente de uma partição que passou para outro gateway (modo multi-gateway)
+    public static final String STATE_REASSIGNED = "reassigned";
+
+    private static SmsOutbox instance;
+
+    private SmsOutbox(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public static synchronized SmsOutbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new SmsOutbox(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE batches (" +
+                "batch_id TEXT PRIMARY KEY, " +
+                "cycle_number INTEGER NOT NULL, " +
+                "created_at INTEGER NOT NULL, " +
+                "fetch_complete INTEGER NOT NULL DEFAULT 0, " +
+                "finished_at INTEGER)");
+        db.execSQL("CREATE TABLE outbox (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "batch_id TEXT NOT NULL, " +
+                "patient_id INTEGER NOT NULL, " +
+                "patient_name TEXT, " +
+                "phone TEXT NOT NULL, " +
+                "message TEXT NOT NULL, " +
+                "state TEXT NOT NULL, " +
+                "attempts INTEGER NOT NULL DEFAULT 0, " +
+                "error TEXT, " +
+                "updated_at INTEGER NOT NULL, " +
+                "UNIQUE (batch_id, phone))");
+        db.execSQL("CREATE INDEX idx_outbox_batch_state ON outbox (batch_id, state, id)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Sem migrações ainda
+    }
+
+    // ============ LOTES ============
+
+    @Override
+    public String createBatch(int cycleNumber) {
+        String batchId = "cycle-" + cycleNumber + "-" + System.currentTimeMillis();
+        SQLiteDatabase db = getWritableDatabase();
+        db.execSQL("INSERT INTO batches (batch_id, cycle_number, created_at) VALUES (?, ?, ?)",
+                new Object[]{batchId, cycleNumber, System.currentTimeMillis()});
+        Log.d(TAG, "📦 Lote criado: " + batchId);
+        return batchId;
+    }
+
+    // Lote mais antigo ainda não terminado (de um processo anterior ou deste)
+    @Override
+    public Batch findOpenBatch() {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT batch_id, cycle_number, fetch_complete FROM batches " +
+                        "WHERE finished_at IS NULL ORDER BY created_at LIMIT 1", null);
+        try {
+            if (cursor.moveToFirst()) {
+                return new Batch(cursor.getString(0), cursor.getInt(1), cursor.getInt(2) != 0);
+            }
+            return null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Enfileira mensagens; contactos repetidos no mesmo lote são ignorados
+    @Override
+    public int enqueue(String batchId, List<ApiService.Patient> patients, MessageFactory factory) {
+        SQLiteDatabase db = getWritableDatabase();
+        int added = 0;
+        long now = System.currentTimeMillis();
+        db.beginTransaction();
+        SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO outbox " +
+                "(batch_id, patient_id, patient_name, phone, message, state, updated_at) " +
+                "VALUES (?, ?, ?, ?, ?, '" + STATE_PENDING + "', ?)");
+        try {
+            for (ApiService.Patient patient : patients) {
+                String phone = PatientStore.normalizeContact(patient.contact);
+                if (phone.isEmpty()) {
+                    continue;
+                }
+                insert.clearBindings();
+                insert.bindString(1, batchId);
+                insert.bindLong(2, patient.id);
+                insert.bindString(3, patient.fullname != null ? patient.fullname : "Paciente");
+                insert.bindString(4, phone);
+                insert.bindString(5, factory.build(patient));
+                insert.bindLong(6, now);
+                if (insert.executeInsert() != -1) {
+                    added++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insert.close();
+            db.endTransaction();
+        }
+        return added;
+    }
+
+    @Override
+    public void markFetchComplete(String batchId) {
+        getWritableDatabase().execSQL("UPDATE batches SET fetch_complete = 1 WHERE batch_id = ?",
+                new Object[]{batchId});
+    }
+
+    @Override
+    public boolean isFetchComplete(String batchId) {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT fetch_complete FROM batches WHERE batch_id = ?", new String[]{batchId});
+        try {
+            return !cursor.moveToFirst() || cursor.getInt(0) != 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void finishBatch(String batchId) {
+        SQLiteDatabase db = getWritableDatabase();
+        long now = System.currentTimeMillis();
+        db.execSQL("UPDATE batches SET finished_at = ?, fetch_complete = 1 WHERE batch_id = ?",
+                new Object[]{now, batchId});
+
+        // Limpeza de lotes antigos
+        long cutoff = now - RETENTION_MS;
+        db.execSQL("DELETE FROM outbox WHERE batch_id IN " +
+                "(SELECT batch_id FROM batches WHERE finished_at IS NOT NULL AND finished_at < ?)",
+                new Object[]{cutoff});
+        db.execSQL("DELETE FROM batches WHERE finished_at IS NOT NULL AND finished_at < ?",
+                new Object[]{cutoff});
+    }
+
+    // Lote que falhou antes de enviar qualquer mensagem
+    @Override
+    public void discardBatch(String batchId) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.execSQL("DELETE FROM outbox WHERE batch_id = ?", new Object[]{batchId});
+        db.execSQL("DELETE FROM batches WHERE batch_id = ?", new Object[]{batchId});
+    }
+
+    // Após morte do processo: mensagens que estavam "sending" podem ter saído
+    @Override
+    public int recoverInterrupted(String batchId) {
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement update = db.compileStatement("UPDATE outbox SET state = '" + STATE_INTERRUPTED +
+                "', error = 'Processo interrompido durante o envio', updated_at = ? " +
+                "WHERE batch_id = ? AND state = '" + STATE_SENDING + "'");
+        try {
+            update.bindLong(1, System.currentTimeMillis());
+            update.bindString(2, batchId);
+            return update.executeUpdateDelete();
+        } finally {
+            update.close();
+        }
+    }
+
+    // ============ MENSAGENS ============
+
+    // Próxima mensagem pendente, já marcada como "sending"
+    @Override
+    public Item claimNext(String batchId) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.rawQuery("SELECT id, patient_id, patient_name, phone, message, attempts " +
+                    "FROM outbox WHERE batch_id = ? AND state = '" + STATE_PENDING + "' ORDER BY id LIMIT 1",
+                    new String[]{batchId});
+            Item item = null;
+            try {
+                if (cursor.moveToFirst()) {
+                    item = new Item(cursor.getLong(0), batchId, cursor.getInt(1), cursor.getString(2),
+                            cursor.getString(3), cursor.getString(4), cursor.getInt(5) + 1);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            if (item != null) {
+                db.execSQL("UPDATE outbox SET state = '" + STATE_SENDING + "', attempts = attempts + 1, " +
+                        "updated_at = ? WHERE id = ?", new Object[]{System.currentTimeMillis(), item.id});
+            }
+            db.setTransactionSuccessful();
+            return item;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void markSent(long itemId) {
+        setState(itemId, STATE_SENT, null);
+    }
+
+    @Override
+    public void markFailed(long itemId, String error) {
+        setState(itemId, STATE_FAILED, error);
+    }
+
+    // Não conta para o progresso deste gateway: outro envia esta mensagem
+    @Override
+    public void markReassigned(long itemId) {
+        setState(itemId, STATE_REASSIGNED, null);
+    }
+
+    private void setState(long itemId, String state, String error) {
+        getWritableDatabase().execSQL("UPDATE outbox SET state = ?, error = ?, updated_at = ? WHERE id = ?",
+                new Object[]{state, error, System.currentTimeMillis(), itemId});
+    }
+
+    @Override
+    public Progress getProgress(String batchId) {
+        Progress progress = new Progress();
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT state, COUNT(*) FROM outbox WHERE batch_id = ? GROUP BY state",
+                new String[]{batchId});
+        try {
+            while (cursor.moveToNext()) {
+                String state = cursor.getString(0);
+                int count = cursor.getInt(1);
+                if (STATE_PENDING.equals(state)) {
+                    progress.pending += count;
+                } else if (STATE_SENDING.equals(state)) {
+                    progress.sending += count;
+                } else if (STATE_SENT.equals(state)) {
+                    progress.sent += count;
+                } else if (!STATE_REASSIGNED.equals(state)) {
+                    progress.failed += count;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return progress;
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.pisaudeapp;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.telephony.SubscriptionManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Controlo de ritmo dos SMS (token bucket) partilhado por todos os envios.
+// - burst: quantos SMS podem sair seguidos sem espera
+// - taxa sustentada (SMS/minuto): ritmo a que os tokens são repostos
+// - limite por hora: janela deslizante de 60 minutos
+// A taxa adapta-se (AIMD): cai para metade quando o rádio devolve
+// RESULT_ERROR_* e sobe aos poucos, até à taxa configurada, com sucessos.
+// Em telemóveis com vários SIM cada subscrição tem o seu próprio controlo
+// (forSubscription), com a mesma configuração.
+public class SmsRateGovernor {
+    private static final String TAG = "SmsRateGovernor";
+
+    private static final String PREFS = "AppPrefs";
+    private static final String KEY_BURST = "sms_burst";
+    private static final String KEY_RATE_PER_MINUTE = "sms_rate_per_minute";
+    private static final String KEY_HOURLY_CAP = "sms_hourly_cap";
+
+    public static final int DEFAULT_BURST = 5;
+    public static final int DEFAULT_RATE_PER_MINUTE = 30;   // antigo ritmo fixo de 1 SMS / 2 s
+    public static final int DEFAULT_HOURLY_CAP = 1800;
+
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+    // Nunca abrandar abaixo de 1 SMS por minuto
+    private static final double MIN_RATE_PER_MS = 1.0 / 60000.0;
+    // Sucessos seguidos necessários por cada passo de subida
+    private static final int SUCCESSES_PER_STEP = 10;
+    private static final int STEPS_TO_FULL_RATE = 10;
+
+    private static SmsRateGovernor instance;
+    private static final Map<Integer, SmsRateGovernor> bySubscription = new HashMap<>();
+
+    private int burst;
+    private double maxRatePerMs;
+    private double ratePerMs;
+    private double tokens;
+    private long lastRefill;
+
+    // Instantes dos envios da última hora (buffer circular)
+    private long[] sendTimes;
+    private int sendHead = 0;
+    private int sendCount = 0;
+
+    private int consecutiveSuccesses = 0;
+
+    public SmsRateGovernor(int burst, int ratePerMinute, int hourlyCap) {
+        configure(burst, ratePerMinute, hourlyCap);
+    }
+
+    public static synchronized SmsRateGovernor getInstance(Context context) {
+        if (instance == null) {
+            instance = fromPrefs(context);
+        }
+        return instance;
+    }
+
+    // Controlo de ritmo de um SIM; o SIM padrão usa a instância partilhada
+    public static synchronized SmsRateGovernor forSubscription(Context context, int subscriptionId) {
+        if (subscriptionId == SubscriptionManager.INVALID_SUBSCRIPTION_ID) {
+            return getInstance(context);
+        }
+        SmsRateGovernor governor = bySubscription.get(subscriptionId);
+        if (governor == null) {
+            governor = fromPrefs(context);
+            bySubscription.put(subscriptionId, governor);
+        }
+        return governor;
+    }
+
+    private static SmsRateGovernor fromPrefs(Context context) {
+        SharedPreferences prefs = context.getApplicationContext()
+                .getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        return new SmsRateGovernor(
+                prefs.getInt(KEY_BURST, DEFAULT_BURST),
+                prefs.getInt(KEY_RATE_PER_MINUTE, DEFAULT_RATE_PER_MINUTE),
+                prefs.getInt(KEY_HOURLY_CAP, DEFAULT_HOURLY_CAP));
+    }
+
+    // Grava a configuração e aplica-a às instâncias em uso (todos os SIM)
+    public static void updateConfig(Context context, int burst, int ratePerMinute, int hourlyCap) {
+        try {
+            SharedPreferences prefs = context.getApplicationContext()
+                    .getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+            prefs.edit()
+                    .putInt(KEY_BURST, burst)
+                    .putInt(KEY_RATE_PER_MINUTE, ratePerMinute)
+                    .putInt(KEY_HOURLY_CAP, hourlyCap)
+                    .apply();
+            List<SmsRateGovernor> governors;
+            synchronized (SmsRateGovernor.class) {
+                governors = new ArrayList<>(bySubscription.values());
+                governors.add(getInstance(context));
+            }
+            for (SmsRateGovernor governor : governors) {
+                governor.configure(burst, ratePerMinute, hourlyCap);
+            }
+            Log.d(TAG, "⚙️ Ritmo de SMS: burst " + burst + ", " + ratePerMinute + "/min, " + hourlyCap + "/hora");
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Erro ao atualizar ritmo de SMS", e);
+        }
+    }
+
+    public synchronized void configure(int burst, int ratePerMinute, int hourlyCap) {
+        this.burst = Math.max(1, burst);
+        this.maxRatePerMs = Math.max(1, ratePerMinute) / 60000.0;
+        this.ratePerMs = maxRatePerMs;
+        this.tokens = this.burst;
+        this.lastRefill = now();
+
+        int cap = Math.max(1, hourlyCap);
+        long[] resized = new long[cap];
+        int keep = Math.min(sendCount, cap);
+        for (int i = 0; i < keep; i++) {
+            // Manter os envios mais recentes
+            resized[i] = sendTimes[(sendHead - keep + i + sendTimes.length) % sendTimes.length];
+        }
+        this.sendTimes = resized;
+        this.sendCount = keep;
+        this.sendHead = keep % cap;
+        this.consecutiveSuccesses = 0;
+    }
+
+    // Milissegundos até ser permitido o próximo envio (0 = pode enviar já).
+    // Não consome: chamar recordSend() quando o SMS for mesmo entregue ao rádio.
+    public long getDelayMs() {
+        return getDelayMs(now());
+    }
+
+    public synchronized long getDelayMs(long nowMs) {
+        refill(nowMs);
+
+        long delay = 0;
+        if (tokens < 1.0) {
+            delay = (long) Math.ceil((1.0 - tokens) / ratePerMs);
+        }
+
+        pruneHourWindow(nowMs);
+        if (sendCount >= sendTimes.length) {
+            long oldest = sendTimes[sendHead];   // buffer cheio: head aponta para o mais antigo
+            delay = Math.max(delay, oldest + HOUR_MS - nowMs);
+        }
+        return Math.max(0, delay);
+    }
+
+    public void recordSend() {
+        recordSend(now());
+    }
+
+    public synchronized void recordSend(long nowMs) {
+        refill(nowMs);
+        tokens = Math.max(0, tokens - 1.0);
+
+        sendTimes[sendHead] = nowMs;
+        sendHead = (sendHead + 1) % sendTimes.length;
+        if (sendCount < sendTimes.length) {
+            sendCount++;
+        }
+    }
+
+    // Resultado do PendingIntent de envio (Activity.RESULT_OK = -1)
+    public void onSendResult(int resultCode) {
+        if (resultCode == Activity.RESULT_OK) {
+            onSendSuccess();
+        } else {
+            onSendError(resultCode);
+        }
+    }
+
+    public synchronized void onSendSuccess() {
+        if (ratePerMs >= maxRatePerMs) {
+            return;
+        }
+        consecutiveSuccesses++;
+        if (consecutiveSuccesses >= SUCCESSES_PER_STEP) {
+            consecutiveSuccesses = 0;
+            ratePerMs = Math.min(maxRatePerMs, ratePerMs + maxRatePerMs / STEPS_TO_FULL_RATE);
+            Log.d(TAG, "📈 Ritmo de SMS aumentado para " + formatRate(ratePerMs) + "/min");
+        }
+    }
+
+    public synchronized void onSendError(int resultCode) {
+        consecutiveSuccesses = 0;
+        ratePerMs = Math.max(MIN_RATE_PER_MS, ratePerMs / 2.0);
+        // Sem burst enquanto o rádio recupera
+        tokens = Math.min(tokens, 0);
+        Log.w(TAG, "📉 Erro de envio (" + resultCode + "): ritmo reduzido para " + formatRate(ratePerMs) + "/min");
+    }
+
+    public synchronized double getCurrentRatePerMinute() {
+        return ratePerMs * 60000.0;
+    }
+
+    public synchronized int getSentLastHour() {
+        pruneHourWindow(now());
+        return sendCount;
+    }
+
+    private void refill(long nowMs) {
+        long elapsed = nowMs - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed * ratePerMs);
+            lastRefill = nowMs;
+        }
+    }
+
+    private void pruneHourWindow(long nowMs) {
+        while (sendCount > 0) {
+            int oldestIndex = (sendHead - sendCount + sendTimes.length) % sendTimes.length;
+            if (sendTimes[oldestIndex] + HOUR_MS > nowMs) {
+                break;
+            }
+            sendCount--;
+        }
+    }
+
+    private static String formatRate(double perMs) {
+        return String.valueOf(Math.round(perMs * 60000.0 * 10) / 10.0);
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.pisaudeapp;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Um único receiver, registado uma vez, para os resultados de envio e de
+// entrega de todos os SMS. Cada PendingIntent leva o id da mensagem e o
+// número da parte nos extras; o resultado só é entregue quando todas as
+// partes de uma mensagem multipart tiverem respondido.
+public class SmsResultCorrelator {
+    private static final String TAG = "SmsResultCorrelator";
+
+    private static final String ACTION_SENT = "com.example.pisaudeapp.SMS_RESULT_SENT";
+    private static final String ACTION_DELIVERED = "com.example.pisaudeapp.SMS_RESULT_DELIVERED";
+    private static final String SCHEME = "pisaude-sms";
+    private static final String EXTRA_MESSAGE_ID = "MESSAGE_ID";
+    private static final String EXTRA_PART = "PART";
+
+    // Mensagens sem resposta há mais tempo do que isto são esquecidas
+    private static final long EXPIRY_MS = 24 * 60 * 60 * 1000L;
+    private static final int SWEEP_EVERY = 256;
+
+    public interface ResultListener {
+        // Todas as partes enviadas (ou a primeira falha, com o seu código)
+        void onSent(long messageId, boolean success, int resultCode);
+
+        // Todas as partes entregues (só quando pedido em track)
+        void onDelivered(long messageId, boolean success);
+    }
+
+    private static class Pending {
+        final int partCount;
+        final boolean trackDelivery;
+        final ResultListener listener;
+        final long createdAt = System.currentTimeMillis();
+        int sentParts = 0;
+        int sentResult = Activity.RESULT_OK;
+        int deliveredParts = 0;
+        boolean deliveryFailed = false;
+
+        Pending(int partCount, boolean trackDelivery, ResultListener listener) {
+            this.partCount = partCount;
+            this.trackDelivery = trackDelivery;
+            this.listener = listener;
+        }
+    }
+
+    private static SmsResultCorrelator instance;
+
+    private final Context context;
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    // Semente no relógio para não repetir ids de um processo anterior
+    private final AtomicLong nextId = new AtomicLong(System.currentTimeMillis() * 1000L);
+    // track() é chamado da thread de envio e da principal
+    private final AtomicInteger trackedSinceSweep = new AtomicInteger();
+
+    private SmsResultCorrelator(Context context) {
+        this.context = context;
+
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                long messageId = intent.getLongExtra(EXTRA_MESSAGE_ID, -1);
+                int part = intent.getIntExtra(EXTRA_PART, 0);
+                if (ACTION_SENT.equals(intent.getAction())) {
+                    onSentPart(messageId, part, getResultCode());
+                } else if (ACTION_DELIVERED.equals(intent.getAction())) {
+                    onDeliveredPart(messageId, part, getResultCode());
+                }
+            }
+        };
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(ACTION_SENT);
+        filter.addAction(ACTION_DELIVERED);
+        filter.addDataScheme(SCHEME);
+        // Só os nossos PendingIntents chegam aqui: outra app não pode forjar
+        // resultados (os ids são sequenciais)
+        ContextCompat.registerReceiver(context, receiver, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
+    }
+
+    public static synchronized SmsResultCorrelator getInstance(Context context) {
+        if (instance == null) {
+            instance = new SmsResultCorrelator(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public long newMessageId() {
+        return nextId.incrementAndGet();
+    }
+
+    // Registar antes de entregar os PendingIntents ao SmsManager
+    public void track(long messageId, int partCount, boolean trackDelivery, ResultListener listener) {
+        pending.put(messageId, new Pending(Math.max(1, partCount), trackDelivery, listener));
+        if (trackedSinceSweep.incrementAndGet() >= SWEEP_EVERY) {
+            trackedSinceSweep.set(0);
+            sweepExpired();
+        }
+    }
+
+    // O SmsManager recusou a mensagem: não vão chegar resultados
+    public void cancel(long messageId) {
+        pending.remove(messageId);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public ArrayList<PendingIntent> sentIntents(long messageId, int partCount) {
+        ArrayList<PendingIntent> intents = new ArrayList<>(partCount);
+        for (int part = 0; part < partCount; part++) {
+            intents.add(buildIntent(ACTION_SENT, messageId, part));
+        }
+        return intents;
+    }
+
+    public ArrayList<PendingIntent> deliveredIntents(long messageId, int partCount) {
+        ArrayList<PendingIntent> intents = new ArrayList<>(partCount);
+        for (int part = 0; part < partCount; part++) {
+            intents.add(buildIntent(ACTION_DELIVERED, messageId, part));
+        }
+        return intents;
+    }
+
+    public PendingIntent sentIntent(long messageId) {
+        return buildIntent(ACTION_SENT, messageId, 0);
+    }
+
+    public PendingIntent deliveredIntent(long messageId) {
+        return buildIntent(ACTION_DELIVERED, messageId, 0);
+    }
+
+    // O URI torna cada PendingIntent único (os extras não contam para isso)
+    private PendingIntent buildIntent(String action, long messageId, int part) {
+        Intent intent = new Intent(action, Uri.parse(SCHEME + "://" + messageId + "/" + part));
+        intent.setPackage(context.getPackageName());
+        intent.putExtra(EXTRA_MESSAGE_ID, messageId);
+        intent.putExtra(EXTRA_PART, part);
+        return PendingIntent.getBroadcast(context, 0, intent,
+                PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private void onSentPart(long messageId, int part, int resultCode) {
+        Pending entry = pending.get(messageId);
+        if (entry == null) {
+            Log.w(TAG, "⚠️ Resultado de envio sem mensagem associada: " + messageId + "/" + part);
+            return;
+        }
+
+        boolean complete;
+        synchronized (entry) {
+            entry.sentParts++;
+            if (resultCode != Activity.RESULT_OK && entry.sentResult == Activity.RESULT_OK) {
+                entry.sentResult = resultCode;
+            }
+            complete = entry.sentParts == entry.partCount;
+        }
+        if (!complete) {
+            return;
+        }
+
+        if (!entry.trackDelivery || entry.sentResult != Activity.RESULT_OK) {
+            pending.remove(messageId);
+        }
+        entry.listener.onSent(messageId, entry.sentResult == Activity.RESULT_OK, entry.sentResult);
+    }
+
+    private void onDeliveredPart(long messageId, int part, int resultCode) {
+        Pending entry = pending.get(messageId);
+        if (entry == null || !entry.trackDelivery) {
+            return;
+        }
+
+        boolean complete;
+        synchronized (entry) {
+            entry.deliveredParts++;
+            if (resultCode != Activity.RESULT_OK) {
+                entry.deliveryFailed = true;
+            }
+            complete = entry.deliveredParts == entry.partCount;
+        }
+        if (!complete) {
+            return;
+        }
+
+        pending.remove(messageId);
+        entry.listener.onDelivered(messageId, !entry.deliveryFailed);
+    }
+
+    private void sweepExpired() {
+        long cutoff = System.currentTimeMillis() - EXPIRY_MS;
+        Iterator<Map.Entry<Long, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue().createdAt < cutoff) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.StringRequest;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Buffer de atualizações de estado de SMS. Em vez de um PUT por transição
+// (pending, sent, delivered...), guarda só a última transição de cada
+// paciente e envia tudo num único pedido para /api/observation/smsstatus
+// quando o buffer enche ou após um curto intervalo. Se o servidor não tiver
+// a rota em lote, volta ao PUT por id.
+// Cada transição é gravada primeiro no PendingStatusStore (write-ahead) com
+// uma chave de idempotência, e só é apagada quando o servidor confirma; as
+// falhas voltam a ser tentadas com backoff exponencial e a fila é esvaziada
+// assim que a rede volta.
+public class SmsStatusBuffer {
+    private static final String TAG = "API_STATUS";
+
+    private static final String BATCH_URL = ApiService.BASE_URL + "/api/observation/smsstatus";
+    private static final String SINGLE_URL = ApiService.BASE_URL + "/api/observation/smsstatus/";
+    private static final String HEADER_IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    // Limites para esvaziar o buffer
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final long FLUSH_DELAY_MS = 3000;
+    // Depois de o servidor recusar a rota em lote, voltar a tentar daqui a 1 hora
+    private static final long BATCH_RETRY_MS = 60 * 60 * 1000L;
+
+    // Backoff das novas tentativas: 5 s, 10 s, 20 s... até 30 minutos
+    private static final long BACKOFF_BASE_MS = 5000;
+    private static final long BACKOFF_MAX_MS = 30 * 60 * 1000L;
+    // Reserva de uma entrada enquanto o pedido está na rede
+    private static final long LEASE_MS = 2 * 60 * 1000L;
+
+    private static SmsStatusBuffer instance;
+
+    private final Context context;
+    private final PendingStatusStore store;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Thread única para a fila: base de dados e agendamento
+    private final ScheduledExecutorService worker;
+    private final Random random = new Random();
+
+    // Apenas na thread da fila
+    // Callbacks à espera da confirmação de cada transição (chave de idempotência)
+    private final Map<String, List<ApiService.StatusUpdateCallback>> callbacks = new HashMap<>();
+    private ScheduledFuture<?> scheduledDrain;
+    private long scheduledDrainAt = Long.MAX_VALUE;
+    private int submittedSinceDrain = 0;
+    private long batchUnsupportedUntil = 0;
+
+    // Métricas simples para os logs
+    private int transitionsSubmitted = 0;
+    private int requestsSent = 0;
+
+    private SmsStatusBuffer(Context context) {
+        this.context = context;
+        this.store = PendingStatusStore.getInstance(context);
+        this.worker = new ScheduledThreadPoolExecutor(1, runnable -> new Thread(runnable, "status-queue"));
+
+        // Rede de volta: tentar já tudo o que ficou em fila
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager != null) {
+            try {
+                connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                    @Override
+                    public void onAvailable(Network network) {
+                        worker.execute(() -> {
+                            if (store.count() > 0) {
+                                Log.d(TAG, "📶 Rede disponível, reenviando status em fila");
+                                store.makeAllDue(System.currentTimeMillis());
+                                drain();
+                            }
+                        });
+                    }
+                });
+            } catch (RuntimeException e) {
+                Log.w(TAG, "⚠️ Não foi possível acompanhar a conectividade", e);
+            }
+        }
+
+        // Status que ficaram por enviar numa execução anterior
+        worker.execute(this::drain);
+    }
+
+    public static synchronized SmsStatusBuffer getInstance(Context context) {
+        if (instance == null) {
+            instance = new SmsStatusBuffer(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Regista uma transição; a mais recente de cada paciente substitui as anteriores
+    // A gravação corre na thread da fila, nunca em quem chama (muitas vezes a principal)
+    public void submit(final int patientId, final String smsStatus, final String statusMessage,
+                       final ApiService.StatusUpdateCallback callback) {
+        final long timestamp = System.currentTimeMillis();
+        Log.d(TAG, "🔄 Status em fila para ID " + patientId + ": " + smsStatus);
+
+        worker.execute(() -> {
+            String key = UUID.randomUUID().toString();
+            // A transição anterior ainda não enviada é substituída: quem esperava
+            // por ela recebe o resultado desta. Uma já na rede é confirmada à parte
+            String replacedKey = store.getUnsentKey(patientId, timestamp);
+            // Write-ahead: gravada antes de qualquer tentativa de rede
+            store.put(patientId, smsStatus, statusMessage, timestamp, key);
+
+            List<ApiService.StatusUpdateCallback> waiting = replacedKey != null ? callbacks.remove(replacedKey) : null;
+            if (waiting == null && callback != null) {
+                waiting = new ArrayList<>(2);
+            }
+            if (waiting != null) {
+                if (callback != null) {
+                    waiting.add(callback);
+                }
+                callbacks.put(key, waiting);
+            }
+
+            transitionsSubmitted++;
+            submittedSinceDrain++;
+            if (submittedSinceDrain >= MAX_BATCH_SIZE) {
+                drain();
+            } else {
+                scheduleDrain(FLUSH_DELAY_MS);
+            }
+        });
+    }
+
+    public void flush() {
+        worker.execute(this::drain);
+    }
+
+    public long getQueuedCount() {
+        return store.count();
+    }
+
+    // ============ FILA (thread da fila) ============
+
+    private void scheduleDrain(long delayMs) {
+        long at = System.currentTimeMillis() + delayMs;
+        if (scheduledDrain != null && scheduledDrainAt <= at) {
+            return; // Já há um esvaziamento mais cedo
+        }
+        if (scheduledDrain != null) {
+            scheduledDrain.cancel(false);
+        }
+        scheduledDrainAt = at;
+        scheduledDrain = worker.schedule(this::drain, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void drain() {
+        if (scheduledDrain != null) {
+            scheduledDrain.cancel(false);
+            scheduledDrain = null;
+            scheduledDrainAt = Long.MAX_VALUE;
+        }
+        submittedSinceDrain = 0;
+
+        // Servidor em baixo: nem montar pedidos, esperar pela sonda do circuito
+        long retryAfter = CircuitBreaker.getInstance().getRetryAfterMs();
+        if (retryAfter > 0) {
+            Log.d(TAG, "⏸️ Circuito aberto, fila de status adiada " + (retryAfter / 1000) + "s");
+            scheduleDrain(retryAfter);
+            return;
+        }
+
+        try {
+            long now = System.currentTimeMillis();
+            List<PendingStatusStore.Entry> due;
+            while (!(due = store.getDue(now, MAX_BATCH_SIZE)).isEmpty()) {
+                store.lease(due, now + LEASE_MS);
+                if (now >= batchUnsupportedUntil && due.size() > 1) {
+                    sendBatch(due);
+                } else {
+                    for (PendingStatusStore.Entry entry : due) {
+                        sendSingle(entry);
+                    }
+                }
+            }
+
+            // Próxima tentativa (backoff ou reserva a expirar)
+            long next = store.getNextAttemptAt();
+            if (next >= 0) {
+                scheduleDrain(Math.max(FLUSH_DELAY_MS, next - now));
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "❌ Erro na fila de status", e);
+            scheduleDrain(BACKOFF_BASE_MS);
+        }
+    }
+
+    private void onConfirmed(List<PendingStatusStore.Entry> entries, String message) {
+        worker.execute(() -> {
+            for (PendingStatusStore.Entry entry : entries) {
+                store.remove(entry);
+                notifyCallbacks(entry, true, message);
+            }
+        });
+    }
+
+    // Falha temporária: fica na fila com backoff exponencial
+    private void onRetryLater(List<PendingStatusStore.Entry> entries, String error) {
+        worker.execute(() -> {
+            long now = System.currentTimeMillis();
+            long maxDelay = 0;
+            for (PendingStatusStore.Entry entry : entries) {
+                long delay = backoffDelay(entry.attempts);
+                maxDelay = Math.max(maxDelay, delay);
+                store.reschedule(entry, now + delay, error);
+                notifyCallbacks(entry, false, "Em fila para nova tentativa: " + error);
+            }
+            Log.w(TAG, "⏳ " + entries.size() + " status em fila, nova tentativa em até " + (maxDelay / 1000) + "s");
+            scheduleDrain(BACKOFF_BASE_MS);
+        });
+    }
+
+    // Recusado pelo servidor (4xx): não adianta repetir
+    private void onRejected(List<PendingStatusStore.Entry> entries, String error) {
+        worker.execute(() -> {
+            for (PendingStatusStore.Entry entry : entries) {
+                store.remove(entry);
+                notifyCallbacks(entry, false, "Falha: " + error);
+            }
+        });
+    }
+
+    private long backoffDelay(int attempts) {
+        long delay = BACKOFF_BASE_MS << Math.min(attempts, 20);
+        delay = Math.min(delay, BACKOFF_MAX_MS);
+        // Jitter de ±20% para não sincronizar vários aparelhos
+        double jitter = 0.8 + random.nextDouble() * 0.4;
+        return (long) (delay * jitter);
+    }
+
+    private static boolean isRetryable(VolleyError error) {
+        if (error.networkResponse == null) {
+            return true; // Timeout, sem rede, etc.
+        }
+        int statusCode = error.networkResponse.statusCode;
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+
+    // ============ PEDIDO EM LOTE ============
+
+    private void sendBatch(final List<PendingStatusStore.Entry> entries) {
+        final String body;
+        try {
+            JSONArray items = new JSONArray();
+            for (PendingStatusStore.Entry entry : entries) {
+                JSONObject item = new JSONObject();
+                item.put("id", entry.patientId);
+                item.put("smsStatus", entry.smsStatus);
+                item.put("statusMessage", entry.statusMessage);
+                item.put("timestamp", entry.timestamp);
+                item.put("idempotencyKey", entry.idempotencyKey);
+                items.put(item);
+            }
+            body = new JSONObject().put("updates", items).toString();
+        } catch (JSONException e) {
+            Log.e(TAG, "❌ Erro ao criar corpo do lote", e);
+            for (PendingStatusStore.Entry entry : entries) {
+                sendSingle(entry);
+            }
+            return;
+        }
+
+        requestsSent++;
+        Log.d(TAG, "📦 Enviando " + entries.size() + " status num lote (" +
+                transitionsSubmitted + " transições, " + requestsSent + " pedidos até agora)");
+
+        StringRequest request = new StringRequest(Request.Method.PUT, BATCH_URL,
+                new Response.Listener<String>() {
+                    @Override
+                    public void onResponse(String response) {
+                        Log.d(TAG, "✅ Lote de " + entries.size() + " status atualizado");
+                        onConfirmed(entries, "Status atualizado (lote)");
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        int statusCode = error.networkResponse != null ? error.networkResponse.statusCode : 0;
+                        if (statusCode == 404 || statusCode == 405 || statusCode == 501) {
+                            // Servidor sem a rota em lote: usar o PUT por id
+                            Log.w(TAG, "⚠️ Rota em lote indisponível (HTTP " + statusCode + "), usando PUT por id");
+                            worker.execute(() -> {
+                                batchUnsupportedUntil = System.currentTimeMillis() + BATCH_RETRY_MS;
+                                for (PendingStatusStore.Entry entry : entries) {
+                                    sendSingle(entry);
+                                }
+                            });
+                            return;
+                        }
+
+                        String errorMsg = ApiService.getVolleyErrorMessage(error);
+                        Log.e(TAG, "❌ Erro ao atualizar lote de status: " + errorMsg);
+                        if (isRetryable(error)) {
+                            onRetryLater(entries, errorMsg);
+                        } else {
+                            onRejected(entries, errorMsg);
+                        }
+                    }
+                }) {
+            @Override
+            public byte[] getBody() {
+                try {
+                    return body.getBytes("utf-8");
+                } catch (Exception e) {
+                    return null;
+                }
+            }
+
+            @Override
+            public String getBodyContentType() {
+                return "application/json; charset=utf-8";
+            }
+        };
+
+        request.setRetryPolicy(new AdaptiveRetryPolicy(1));
+        NetworkClient.getInstance(context).add(request);
+    }
+
+    // ============ PUT POR ID (fallback) ============
+
+    private void sendSingle(final PendingStatusStore.Entry entry) {
+        String url = SINGLE_URL + entry.patientId;
+        final List<PendingStatusStore.Entry> entries = Collections.singletonList(entry);
+        requestsSent++;
+        Log.d(TAG, "🔄 Atualizando SMS status para ID " + entry.patientId +
+                ": status=" + entry.smsStatus + ", mensagem=" + entry.statusMessage);
+
+        StringRequest stringRequest = new StringRequest(Request.Method.PUT, url,
+                new Response.Listener<String>() {
+                    @Override
+                    public void onResponse(String response) {
+                        try {
+                            JSONObject jsonResponse = new JSONObject(response);
+                            String message = jsonResponse.optString("message", "Status atualizado");
+                            Log.d(TAG, "✅ Status atualizado: " + message);
+                            onConfirmed(entries, message);
+                        } catch (JSONException e) {
+                            Log.w(TAG, "⚠️ Resposta não é JSON válido: " + response);
+                            onConfirmed(entries, "Status atualizado (resposta inválida)");
+                        }
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        String errorMsg = ApiService.getVolleyErrorMessage(error);
+                        Log.e(TAG, "❌ Erro ao atualizar status: " + errorMsg);
+                        if (isRetryable(error)) {
+                            onRetryLater(entries, errorMsg);
+                        } else {
+                            onRejected(entries, errorMsg);
+                        }
+                    }
+                }) {
+            @Override
+            public byte[] getBody() {
+                try {
+                    JSONObject jsonBody = new JSONObject();
+                    jsonBody.put("smsStatus", entry.smsStatus);  // Campo correto para status de SMS
+                    jsonBody.put("statusMessage", entry.statusMessage);  // Mensagem detalhada
+                    jsonBody.put("timestamp", entry.timestamp);  // Timestamp
+                    return jsonBody.toString().getBytes("utf-8");
+                } catch (Exception e) {
+                    Log.e(TAG, "❌ Erro ao criar corpo da requisição", e);
+                    return null;
+                }
+            }
+
+            @Override
+            public String getBodyContentType() {
+                return "application/json; charset=utf-8";
+            }
+
+            @Override
+            public Map<String, String> getHeaders() {
+                Map<String, String> headers = new HashMap<>();
+                headers.put("Content-Type", "application/json");
+                // O servidor ignora repetições da mesma transição
+                headers.put(HEADER_IDEMPOTENCY_KEY, entry.idempotencyKey);
+                return headers;
+            }
+        };
+
+        stringRequest.setRetryPolicy(new AdaptiveRetryPolicy(2));
+
+        NetworkClient.getInstance(context).add(stringRequest);
+    }
+
+    // Só os callbacks desta transição; os de uma mais recente do mesmo paciente
+    // esperam pela sua própria confirmação.
+    // Os callbacks correm na thread principal, como as respostas do Volley
+    private void notifyCallbacks(PendingStatusStore.Entry entry, final boolean success, final String message) {
+        final List<ApiService.StatusUpdateCallback> pending = callbacks.remove(entry.idempotencyKey);
+        if (pending == null) {
+            return;
+        }
+        mainHandler.post(() -> {
+            for (ApiService.StatusUpdateCallback callback : pending) {
+                callback.onStatusUpdated(success, message);
+            }
+        });
+    }
+}
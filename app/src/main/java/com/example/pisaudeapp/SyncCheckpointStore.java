@@ -0,0 +1,65 @@
+package com.example.pisaudeapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+// Marca d'água (high-water mark) da sincronização por endpoint, guardada em
+// SharedPreferences para sobreviver a reinícios do processo.
+public class SyncCheckpointStore {
+    private static final String PREFS_NAME = "SyncPrefs";
+
+    private final SharedPreferences prefs;
+
+    public static class Checkpoint {
+        public final long since;          // updatedSince a pedir na próxima sincronização
+        public final String etag;         // Versão da coleção para If-None-Match (pode ser null)
+        public final long lastFullSync;   // Última sincronização completa
+        public final boolean tombstones;  // O feed incremental traz os removidos
+
+        public Checkpoint(long since, String etag, long lastFullSync, boolean tombstones) {
+            this.since = since;
+            this.etag = etag;
+            this.lastFullSync = lastFullSync;
+            this.tombstones = tombstones;
+        }
+    }
+
+    public SyncCheckpointStore(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public Checkpoint get(String endpoint) {
+        long since = prefs.getLong(endpoint + "_since", 0);
+        if (since <= 0) {
+            return null;
+        }
+        return new Checkpoint(since,
+                prefs.getString(endpoint + "_etag", null),
+                prefs.getLong(endpoint + "_full", 0),
+                prefs.getBoolean(endpoint + "_tombstones", false));
+    }
+
+    // commit() síncrono: chamado na thread do armazenamento, e quem espera pela
+    // sincronização só é avisado depois de o checkpoint estar gravado
+    public void put(String endpoint, Checkpoint checkpoint) {
+        SharedPreferences.Editor editor = prefs.edit()
+                .putLong(endpoint + "_since", checkpoint.since)
+                .putLong(endpoint + "_full", checkpoint.lastFullSync)
+                .putBoolean(endpoint + "_tombstones", checkpoint.tombstones);
+        if (checkpoint.etag != null) {
+            editor.putString(endpoint + "_etag", checkpoint.etag);
+        } else {
+            editor.remove(endpoint + "_etag");
+        }
+        editor.commit();
+    }
+
+    public void clear(String endpoint) {
+        prefs.edit()
+                .remove(endpoint + "_since")
+                .remove(endpoint + "_etag")
+                .remove(endpoint + "_full")
+                .remove(endpoint + "_tombstones")
+                .apply();
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.pisaudeapp;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Header;
+import com.android.volley.Request;
+import com.android.volley.toolbox.BaseHttpStack;
+import com.android.volley.toolbox.HttpResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Liga o Volley (BasicNetwork) a um HttpTransport, no lugar do HurlStack
+public class TransportHttpStack extends BaseHttpStack {
+    private final HttpTransport transport;
+
+    public TransportHttpStack(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public HttpResponse executeRequest(Request<?> request, Map<String, String> additionalHeaders)
+            throws IOException, AuthFailureError {
+        Map<String, String> headers = new HashMap<>(request.getHeaders());
+        headers.putAll(additionalHeaders);
+
+        byte[] body = request.getBody();
+        if (body != null && !containsHeader(headers, "Content-Type")) {
+            headers.put("Content-Type", request.getBodyContentType());
+        }
+
+        HttpTransport.Response response = transport.execute(new HttpTransport.Request(
+                methodName(request.getMethod(), body), request.getUrl(), headers, body, request.getTimeoutMs()));
+
+        List<Header> responseHeaders = new ArrayList<>(response.headers.size());
+        for (Map.Entry<String, List<String>> header : response.headers.entrySet()) {
+            for (String value : header.getValue()) {
+                responseHeaders.add(new Header(header.getKey(), value));
+            }
+        }
+
+        if (response.body == null) {
+            return new HttpResponse(response.statusCode, responseHeaders);
+        }
+        return new HttpResponse(response.statusCode, responseHeaders, response.contentLength, response.body);
+    }
+
+    private static String methodName(int method, byte[] body) {
+        switch (method) {
+            case Request.Method.GET:
+                return "GET";
+            case Request.Method.POST:
+                return "POST";
+            case Request.Method.PUT:
+                return "PUT";
+            case Request.Method.DELETE:
+                return "DELETE";
+            case Request.Method.HEAD:
+                return "HEAD";
+            case Request.Method.PATCH:
+                return "PATCH";
+            default:
+                // DEPRECATED_GET_OR_POST
+                return body != null ? "POST" : "GET";
+        }
+    }
+
+    private static boolean containsHeader(Map<String, String> headers, String name) {
+        for (String key : headers.keySet()) {
+            if (name.equalsIgnoreCase(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
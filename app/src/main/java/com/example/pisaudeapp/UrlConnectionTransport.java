@@ -0,0 +1,122 @@
+package com.example.pisaudeapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+// Transporte sobre HttpURLConnection com:
+// - conexões persistentes: o pool de keep-alive do sistema reutiliza o
+//   socket desde que o corpo seja lido até ao fim e fechado (nunca se chama
+//   disconnect(), que mataria a conexão);
+// - gzip explícito: pedimos "Accept-Encoding: gzip" e descomprimimos aqui,
+//   o que funciona igual no Android e na JVM dos testes e permite contar
+//   os bytes que realmente passaram na rede.
+public class UrlConnectionTransport implements HttpTransport {
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    private final boolean compression;
+
+    public UrlConnectionTransport(boolean compression, int maxIdleConnections) {
+        this.compression = compression;
+        // O pool do HttpURLConnection é configurado por propriedades do processo
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(Math.max(1, maxIdleConnections)));
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(request.url).openConnection();
+        connection.setConnectTimeout(request.timeoutMs);
+        connection.setReadTimeout(request.timeoutMs);
+        connection.setUseCaches(false);
+        connection.setDoInput(true);
+        connection.setRequestMethod(request.method);
+
+        for (Map.Entry<String, String> header : request.headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        // Com o header definido por nós o HttpURLConnection não descomprime sozinho
+        connection.setRequestProperty("Accept-Encoding", compression ? "gzip" : "identity");
+
+        if (request.body != null) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(request.body.length);
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(request.body);
+            } finally {
+                out.close();
+            }
+        }
+
+        int statusCode = connection.getResponseCode();
+        if (statusCode == -1) {
+            throw new IOException("Resposta HTTP inválida de " + request.url);
+        }
+
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (header.getKey() != null) {
+                headers.put(header.getKey(), new ArrayList<>(header.getValue()));
+            }
+        }
+
+        if (!hasResponseBody(request.method, statusCode)) {
+            closeQuietly(statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream());
+            return new Response(statusCode, headers, null, 0, null);
+        }
+
+        InputStream raw;
+        try {
+            raw = connection.getInputStream();
+        } catch (IOException e) {
+            raw = connection.getErrorStream();
+        }
+        if (raw == null) {
+            return new Response(statusCode, headers, null, 0, null);
+        }
+
+        CountingInputStream wire = new CountingInputStream(raw);
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            // O corpo entregue já vem descomprimido: os headers de tamanho deixam de valer
+            removeHeader(headers, "Content-Encoding");
+            removeHeader(headers, "Content-Length");
+            return new Response(statusCode, headers, new GZIPInputStream(wire, GZIP_BUFFER_SIZE), -1, wire);
+        }
+        return new Response(statusCode, headers, wire, connection.getContentLength(), wire);
+    }
+
+    private static boolean hasResponseBody(String method, int statusCode) {
+        return !"HEAD".equals(method)
+                && !(100 <= statusCode && statusCode < 200)
+                && statusCode != HttpURLConnection.HTTP_NO_CONTENT
+                && statusCode != HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    private static void removeHeader(Map<String, List<String>> headers, String name) {
+        Iterator<String> it = headers.keySet().iterator();
+        while (it.hasNext()) {
+            if (name.equalsIgnoreCase(it.next())) {
+                it.remove();
+            }
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.pisaudeapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Deteção de páginas repetidas na busca paginada: um servidor que ignora
+ * limit/offset (ou devolve o mesmo cursor) não pode prender a busca num ciclo,
+ * e um feed sem ids (ids pela posição na resposta) não pode parar na 1ª página.
+ */
+public class ApiServicePagingTest {
+
+    @Test
+    public void firstPage_isNeverRepeated() throws Exception {
+        assertFalse(ApiService.isRepeatedPage(page(body(1, 100)), new HashSet<String>(), null));
+    }
+
+    @Test
+    public void sameBodyAgain_isRepeated() throws Exception {
+        Set<String> seen = new HashSet<>();
+        assertFalse(ApiService.isRepeatedPage(page(body(1, 100)), seen, null));
+        assertFalse(ApiService.isRepeatedPage(page(body(101, 100)), seen, null));
+        // Também quando volta a uma página anterior que não a última
+        assertTrue(ApiService.isRepeatedPage(page(body(1, 100)), seen, null));
+    }
+
+    @Test
+    public void feedWithoutIds_nextPageIsNotARepeat() throws Exception {
+        ApiService.PatientPage first = page(bodyWithoutIds(1, 50));
+        ApiService.PatientPage second = page(bodyWithoutIds(51, 50));
+        // O parser numera as duas pela posição: mesmos ids, contactos diferentes
+        assertEquals(first.patients.get(0).id, second.patients.get(0).id);
+
+        Set<String> seen = new HashSet<>();
+        assertFalse(ApiService.isRepeatedPage(first, seen, null));
+        assertFalse(ApiService.isRepeatedPage(second, seen, null));
+    }
+
+    @Test
+    public void pageWithOnlyInvalidRecords_repeatedIsDetected() throws Exception {
+        String invalid = "[{\"id\":1,\"fullname\":\"Sem contacto\",\"contact\":\"\"}," +
+                "{\"id\":2,\"fullname\":\"Sem contacto\",\"contact\":\"\"}]";
+        ApiService.PatientPage page = page(invalid);
+        assertTrue(page.patients.isEmpty());
+
+        Set<String> seen = new HashSet<>();
+        assertFalse(ApiService.isRepeatedPage(page, seen, null));
+        assertTrue(ApiService.isRepeatedPage(page(invalid), seen, null));
+    }
+
+    @Test
+    public void cursorPaging_sameCursorBack_isRepeated() {
+        ApiService.PatientPage next = new ApiService.PatientPage(new ArrayList<ApiService.Patient>(), 10, "abc");
+        assertTrue(ApiService.isRepeatedPage(next, new HashSet<String>(), "abc"));
+        assertFalse(ApiService.isRepeatedPage(next, new HashSet<String>(), "xyz"));
+    }
+
+    @Test
+    public void emptyPage_isNotRepeated() throws Exception {
+        Set<String> seen = new HashSet<>();
+        assertFalse(ApiService.isRepeatedPage(page("[]"), seen, null));
+        assertFalse(ApiService.isRepeatedPage(page("[]"), seen, null));
+    }
+
+    // Página como o PatientStreamRequest a entrega: pacientes do parser e hash do corpo
+    private static ApiService.PatientPage page(String json) throws Exception {
+        byte[] data = json.getBytes(StandardCharsets.UTF_8);
+        PatientJsonStreamParser parser = new PatientJsonStreamParser(new ByteArrayInputStream(data),
+                StandardCharsets.UTF_8);
+        final List<ApiService.Patient> patients = new ArrayList<>();
+        parser.parse(patients::add);
+        return new ApiService.PatientPage(patients, parser.getTotalCount(), null, false, null, 0,
+                new ArrayList<Integer>(), false, PatientStreamRequest.digest(data));
+    }
+
+    private static String body(int firstId, int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"id\":").append(firstId + i)
+                    .append(",\"fullname\":\"P").append(firstId + i)
+                    .append("\",\"contact\":\"84").append(1000000 + firstId + i)
+                    .append("\",\"textMessageDescription\":\"msg\"}");
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String bodyWithoutIds(int first, int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"fullname\":\"P").append(first + i)
+                    .append("\",\"contact\":\"84").append(1000000 + first + i)
+                    .append("\",\"textMessageDescription\":\"msg\"}");
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.pisaudeapp;
+
+import org.junit.Assume;
+
+import java.util.Locale;
+
+/**
+ * Benchmarks e testes de carga ficam fora do {@code ./gradlew test} normal:
+ * só correm com {@code ./gradlew test -Pbenchmarks}, que passa a propriedade
+ * {@link #PROPERTY} à JVM dos testes (ver app/build.gradle.kts). Sem ela são
+ * saltados; os testes de correção não imprimem nada.
+ */
+final class Benchmarks {
+
+    static final String PROPERTY = "pisaude.benchmarks";
+
+    private Benchmarks() {
+    }
+
+    // Primeira linha de cada benchmark
+    static void assumeEnabled() {
+        Assume.assumeTrue("benchmark: correr com -Pbenchmarks", Boolean.getBoolean(PROPERTY));
+    }
+
+    static void report(String format, Object... args) {
+        System.out.println(String.format(Locale.ROOT, format, args));
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.pisaudeapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes das fronteiras do {@link CycleScheduler}: os ciclos ficam presos ao
+ * epoch (o atraso de um ciclo não empurra os seguintes) e as fronteiras
+ * perdidas com o aparelho em repouso são saltadas e contadas.
+ */
+public class CycleSchedulerTest {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long INTERVAL = 15 * MINUTE;
+    private static final long EPOCH = 1700000000000L;
+
+    @Test
+    public void beforeEpoch_firstSlotIsTheEpoch() {
+        CycleScheduler.Slot slot = CycleScheduler.nextSlot(EPOCH, 0, INTERVAL, EPOCH - 10 * 1000L);
+        assertEquals(0, slot.cycleNumber);
+        assertEquals(EPOCH, slot.plannedAt);
+    }
+
+    @Test
+    public void lateCycles_doNotDrift() {
+        // Cada ciclo arranca 40 s atrasado e demora 3 min: as fronteiras não mudam
+        long now = EPOCH;
+        for (int cycle = 1; cycle <= 20; cycle++) {
+            CycleScheduler.Slot next = CycleScheduler.nextSlot(EPOCH, 0, INTERVAL, now);
+            assertEquals(cycle, next.cycleNumber);
+            assertEquals(EPOCH + cycle * INTERVAL, next.plannedAt);
+            now = next.plannedAt + 40 * 1000L + 3 * MINUTE;
+        }
+    }
+
+    @Test
+    public void alarmExactlyOnBoundary_schedulesTheNextOne() {
+        CycleScheduler.Slot next = CycleScheduler.nextSlot(EPOCH, 5, INTERVAL, EPOCH + 2 * INTERVAL);
+        assertEquals(8, next.cycleNumber);
+        assertEquals(EPOCH + 3 * INTERVAL, next.plannedAt);
+    }
+
+    @Test
+    public void dozeDelay_skipsAndCountsMissedSlots() {
+        CycleScheduler.Slot fired = new CycleScheduler.Slot(4, EPOCH + 4 * INTERVAL);
+        // O alarme só chegou 50 min depois da hora planeada
+        CycleScheduler.Slot next = CycleScheduler.nextSlot(EPOCH, 0, INTERVAL, fired.plannedAt + 50 * MINUTE);
+
+        assertEquals(8, next.cycleNumber);
+        assertEquals(EPOCH + 8 * INTERVAL, next.plannedAt);
+        assertEquals(3, CycleScheduler.missedSlots(fired, next));
+    }
+
+    @Test
+    public void onTimeAlarm_missesNothing() {
+        CycleScheduler.Slot fired = new CycleScheduler.Slot(2, EPOCH + 2 * INTERVAL);
+        CycleScheduler.Slot next = CycleScheduler.nextSlot(EPOCH, 0, INTERVAL, fired.plannedAt + 1500);
+        assertEquals(0, CycleScheduler.missedSlots(fired, next));
+    }
+
+    @Test
+    public void interval_hasAFiveMinuteFloor() {
+        assertEquals(5 * MINUTE, CycleScheduler.intervalMs(1));
+        assertEquals(30 * MINUTE, CycleScheduler.intervalMs(30));
+    }
+
+    @Test
+    public void lagStats_trackLastAverageMaxAndMissed() {
+        CycleScheduler.LagStats stats = new CycleScheduler.LagStats();
+        stats.record(1000, 0);
+        stats.record(5000, 2);
+        stats.record(3000, 0);
+
+        assertEquals(3000, stats.getLastMs());
+        assertEquals(3000, stats.getAverageMs());
+        assertEquals(5000, stats.getMaxMs());
+        assertEquals(2, stats.getMissed());
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.pisaudeapp;
+
+import android.telephony.SmsManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link SmsGateway} em memória para testes de carga na JVM. Simula um rádio:
+ * resultado de envio depois de uma latência aleatória, códigos de erro
+ * (RESULT_ERROR_NO_SERVICE, NULL_PDU, RADIO_OFF...) com uma dada
+ * probabilidade, relatórios de entrega e recusas imediatas. O gerador é
+ * semeado para que cada execução faça as mesmas escolhas.
+ */
+public class FakeSmsGateway implements SmsGateway {
+
+    static final int RESULT_OK = -1;   // Activity.RESULT_OK
+    private static final int SINGLE_PART_LENGTH = 160;
+    private static final int MULTI_PART_LENGTH = 153;
+
+    private final String name;
+    private final Random random;
+    private final ScheduledExecutorService radio;
+
+    private volatile long minLatencyMs = 0;
+    private volatile long maxLatencyMs = 0;
+    private volatile double failureRate = 0;
+    private volatile int[] failureCodes = {
+            SmsManager.RESULT_ERROR_NO_SERVICE,
+            SmsManager.RESULT_ERROR_NULL_PDU,
+            SmsManager.RESULT_ERROR_RADIO_OFF
+    };
+    private volatile double rejectRate = 0;
+    private volatile long deliveryDelayMs = 0;
+    private volatile double deliveryFailureRate = 0;
+
+    final AtomicLong submitted = new AtomicLong();
+    final AtomicLong parts = new AtomicLong();
+    final AtomicLong sent = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+    final AtomicLong delivered = new AtomicLong();
+    final AtomicLong undelivered = new AtomicLong();
+    final Map<Integer, AtomicLong> failuresByCode = new ConcurrentHashMap<>();
+
+    public FakeSmsGateway(String name, long seed) {
+        this.name = name;
+        this.random = new Random(seed);
+        this.radio = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "fake-radio-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Tempo entre a entrega ao rádio e o resultado de envio
+    public FakeSmsGateway setLatency(long minMs, long maxMs) {
+        this.minLatencyMs = minMs;
+        this.maxLatencyMs = Math.max(minMs, maxMs);
+        return this;
+    }
+
+    // Fração de envios que falham, com um dos códigos indicados ao acaso
+    public FakeSmsGateway setFailures(double rate, int... codes) {
+        this.failureRate = rate;
+        if (codes.length > 0) {
+            this.failureCodes = codes.clone();
+        }
+        return this;
+    }
+
+    // Fração de envios recusados logo pelo SmsManager (exceção em send)
+    public FakeSmsGateway setRejectRate(double rate) {
+        this.rejectRate = rate;
+        return this;
+    }
+
+    // Relatório de entrega depois do resultado de envio, quando pedido
+    public FakeSmsGateway setDeliveryReports(long delayMs, double failureRate) {
+        this.deliveryDelayMs = delayMs;
+        this.deliveryFailureRate = failureRate;
+        return this;
+    }
+
+    public void close() {
+        radio.shutdownNow();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public List<String> divideMessage(String message) {
+        List<String> result = new ArrayList<>();
+        if (message.length() <= SINGLE_PART_LENGTH) {
+            result.add(message);
+            return result;
+        }
+        for (int start = 0; start < message.length(); start += MULTI_PART_LENGTH) {
+            result.add(message.substring(start, Math.min(message.length(), start + MULTI_PART_LENGTH)));
+        }
+        return result;
+    }
+
+    @Override
+    public int send(String destination, String message, final boolean trackDelivery, final Callback callback) {
+        // Escolhas feitas já, pela ordem dos envios, para serem reprodutíveis
+        final boolean reject;
+        final int resultCode;
+        final long latencyMs;
+        final boolean deliveredOk;
+        synchronized (random) {
+            reject = random.nextDouble() < rejectRate;
+            resultCode = random.nextDouble() < failureRate ?
+                    failureCodes[random.nextInt(failureCodes.length)] : RESULT_OK;
+            latencyMs = minLatencyMs + (maxLatencyMs > minLatencyMs ?
+                    (long) (random.nextDouble() * (maxLatencyMs - minLatencyMs)) : 0);
+            deliveredOk = random.nextDouble() >= deliveryFailureRate;
+        }
+        if (reject) {
+            rejected.incrementAndGet();
+            throw new IllegalArgumentException("Mensagem recusada pelo rádio simulado");
+        }
+
+        int partCount = divideMessage(message).size();
+        submitted.incrementAndGet();
+        parts.addAndGet(partCount);
+
+        radio.schedule(() -> {
+            if (resultCode == RESULT_OK) {
+                sent.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+                failuresByCode.computeIfAbsent(resultCode, code -> new AtomicLong()).incrementAndGet();
+            }
+            callback.onSent(resultCode == RESULT_OK, resultCode);
+
+            if (trackDelivery && resultCode == RESULT_OK) {
+                radio.schedule(() -> {
+                    (deliveredOk ? delivered : undelivered).incrementAndGet();
+                    callback.onDelivered(deliveredOk);
+                }, deliveryDelayMs, TimeUnit.MILLISECONDS);
+            }
+        }, latencyMs, TimeUnit.MILLISECONDS);
+        return partCount;
+    }
+}
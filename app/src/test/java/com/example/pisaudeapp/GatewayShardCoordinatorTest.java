@@ -0,0 +1,285 @@
+package com.example.pisaudeapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do {@link GatewayShardCoordinator} contra um servidor HTTP local que
+ * faz de /api/gateways com leases em memória e um relógio controlado pelo
+ * teste, simulando vários gateways: partições disjuntas e completas,
+ * reatribuição quando um gateway morre e pouco movimento quando entra outro.
+ */
+public class GatewayShardCoordinatorTest {
+
+    private static final int ROUNDS = 4;
+
+    private HttpServer server;
+    private String baseUrl;
+    private final FakeLeaseServer leases = new FakeLeaseServer();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/gateways/lease", exchange -> {
+            try {
+                JSONObject request = readJson(exchange);
+                JSONArray partitions = request.getJSONArray("partitions");
+                Set<Integer> requested = new HashSet<>();
+                for (int i = 0; i < partitions.length(); i++) {
+                    requested.add(partitions.getInt(i));
+                }
+                JSONObject response = leases.lease(request.getString("gatewayId"), requested,
+                        request.getLong("ttlMs"));
+                writeJson(exchange, response);
+            } catch (JSONException e) {
+                throw new IOException(e);
+            }
+        });
+        server.createContext("/api/gateways/release", exchange -> {
+            try {
+                leases.release(readJson(exchange).getString("gatewayId"));
+            } catch (JSONException e) {
+                throw new IOException(e);
+            }
+            writeJson(exchange, new JSONObject());
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void threeGateways_partitionsAreDisjointAndComplete() {
+        List<GatewayShardCoordinator> gateways = gateways("gw-a", "gw-b", "gw-c");
+        converge(gateways);
+
+        assertDisjointAndComplete(gateways);
+        for (GatewayShardCoordinator gateway : gateways) {
+            assertFalse(gateway.getOwnedPartitions().isEmpty());
+            assertEquals(3, gateway.getGateways().size());
+        }
+    }
+
+    @Test
+    public void eachPatient_hasExactlyOneGateway() {
+        List<GatewayShardCoordinator> gateways = gateways("gw-a", "gw-b", "gw-c");
+        converge(gateways);
+
+        for (int i = 1; i <= 5000; i++) {
+            String contact = "84" + (1000000 + i);
+            int owners = 0;
+            for (GatewayShardCoordinator gateway : gateways) {
+                if (gateway.owns(contact)) {
+                    owners++;
+                }
+            }
+            assertEquals("contacto " + contact, 1, owners);
+        }
+    }
+
+    @Test
+    public void sameContactInAnotherFormat_staysInTheSamePartition() {
+        // Dois registos com o mesmo número têm de cair no mesmo gateway,
+        // senão a remoção de duplicados por ciclo não os apanha
+        int partition = GatewayShardCoordinator.partitionOf("841234567");
+        assertEquals(partition, GatewayShardCoordinator.partitionOf("+84 123 4567"));
+        assertEquals(partition, GatewayShardCoordinator.partitionOf(" 841234567 "));
+    }
+
+    @Test
+    public void deadGateway_partitionsAreReassignedAfterExpiry() {
+        List<GatewayShardCoordinator> gateways = gateways("gw-a", "gw-b", "gw-c");
+        converge(gateways);
+        Set<Integer> orphaned = new TreeSet<>(gateways.get(2).getOwnedPartitions());
+
+        // gw-c deixa de renovar: até o lease expirar ninguém fica com as suas partições
+        List<GatewayShardCoordinator> survivors = gateways.subList(0, 2);
+        converge(survivors);
+        for (GatewayShardCoordinator gateway : survivors) {
+            for (int partition : orphaned) {
+                assertFalse(gateway.getOwnedPartitions().contains(partition));
+            }
+        }
+
+        leases.advance(GatewayShardCoordinator.LEASE_TTL_MS + 1);
+        converge(survivors);
+
+        assertDisjointAndComplete(survivors);
+        for (GatewayShardCoordinator gateway : survivors) {
+            assertEquals(2, gateway.getGateways().size());
+        }
+    }
+
+    @Test
+    public void releasedPartitions_areClaimedOnNextRefresh() throws Exception {
+        List<GatewayShardCoordinator> gateways = gateways("gw-a", "gw-b");
+        converge(gateways);
+
+        new GatewayShardCoordinator.HttpLeaseApi(baseUrl, new UrlConnectionTransport(false, 2)).release("gw-b");
+        List<GatewayShardCoordinator> remaining = gateways.subList(0, 1);
+        converge(remaining);
+
+        assertEquals(GatewayShardCoordinator.PARTITIONS, gateways.get(0).getOwnedPartitions().size());
+    }
+
+    @Test
+    public void joiningGateway_movesOnlyItsShare() {
+        List<GatewayShardCoordinator> gateways = gateways("gw-a", "gw-b", "gw-c");
+        converge(gateways);
+        Map<Integer, String> before = owners(gateways);
+
+        gateways.addAll(gateways("gw-d"));
+        converge(gateways);
+        assertDisjointAndComplete(gateways);
+        Map<Integer, String> after = owners(gateways);
+
+        int moved = 0;
+        for (int partition = 0; partition < GatewayShardCoordinator.PARTITIONS; partition++) {
+            if (!before.get(partition).equals(after.get(partition))) {
+                moved++;
+                // Hash consistente: só passam partições para o gateway novo
+                assertEquals("gw-d", after.get(partition));
+            }
+        }
+        assertTrue(moved > 0);
+        assertTrue(moved <= GatewayShardCoordinator.PARTITIONS / 2);
+    }
+
+    // ============ AUXILIARES ============
+
+    private List<GatewayShardCoordinator> gateways(String... ids) {
+        List<GatewayShardCoordinator> gateways = new ArrayList<>();
+        for (String id : ids) {
+            gateways.add(new GatewayShardCoordinator(id,
+                    new GatewayShardCoordinator.HttpLeaseApi(baseUrl, new UrlConnectionTransport(false, 2))));
+        }
+        return gateways;
+    }
+
+    // Renovações intercaladas, como os ciclos de vários aparelhos
+    private static void converge(List<GatewayShardCoordinator> gateways) {
+        for (int round = 0; round < ROUNDS; round++) {
+            for (GatewayShardCoordinator gateway : gateways) {
+                assertTrue(gateway.refresh());
+            }
+        }
+    }
+
+    private static void assertDisjointAndComplete(List<GatewayShardCoordinator> gateways) {
+        Set<Integer> all = new HashSet<>();
+        int total = 0;
+        for (GatewayShardCoordinator gateway : gateways) {
+            all.addAll(gateway.getOwnedPartitions());
+            total += gateway.getOwnedPartitions().size();
+        }
+        assertEquals(GatewayShardCoordinator.PARTITIONS, all.size());
+        assertEquals(GatewayShardCoordinator.PARTITIONS, total);
+    }
+
+    private static Map<Integer, String> owners(List<GatewayShardCoordinator> gateways) {
+        Map<Integer, String> owners = new HashMap<>();
+        for (GatewayShardCoordinator gateway : gateways) {
+            for (int partition : gateway.getOwnedPartitions()) {
+                owners.put(partition, gateway.getGatewayId());
+            }
+        }
+        return owners;
+    }
+
+    private static JSONObject readJson(HttpExchange exchange) throws IOException, JSONException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return new JSONObject(new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static void writeJson(HttpExchange exchange, JSONObject json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // Servidor de leases: concede partições livres, expiradas ou já do gateway,
+    // liberta as que deixou de pedir e devolve os gateways com heartbeat válido
+    private static class FakeLeaseServer {
+        private final Map<Integer, String> holders = new HashMap<>();
+        private final Map<Integer, Long> expiresAt = new HashMap<>();
+        private final Map<String, Long> heartbeats = new HashMap<>();
+        private long now = 0;
+
+        synchronized void advance(long ms) {
+            now += ms;
+        }
+
+        synchronized JSONObject lease(String gatewayId, Set<Integer> requested, long ttlMs) throws JSONException {
+            heartbeats.put(gatewayId, now + ttlMs);
+            JSONArray granted = new JSONArray();
+            for (int partition = 0; partition < GatewayShardCoordinator.PARTITIONS; partition++) {
+                String holder = holders.get(partition);
+                boolean expired = holder != null && expiresAt.get(partition) <= now;
+                if (requested.contains(partition)) {
+                    if (holder == null || expired || holder.equals(gatewayId)) {
+                        holders.put(partition, gatewayId);
+                        expiresAt.put(partition, now + ttlMs);
+                        granted.put(partition);
+                    }
+                } else if (gatewayId.equals(holder)) {
+                    holders.remove(partition);
+                }
+            }
+
+            JSONArray live = new JSONArray();
+            Iterator<Map.Entry<String, Long>> it = heartbeats.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Long> entry = it.next();
+                if (entry.getValue() <= now) {
+                    it.remove();
+                } else {
+                    live.put(entry.getKey());
+                }
+            }
+            return new JSONObject().put("granted", granted).put("gateways", live);
+        }
+
+        synchronized void release(String gatewayId) {
+            heartbeats.remove(gatewayId);
+            holders.values().removeIf(gatewayId::equals);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.pisaudeapp;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link OutboxStore} em memória com as mesmas regras do SmsOutbox (um
+ * contacto por lote, pending -> sending -> sent/failed), para correr o
+ * SmsDispatchEngine na JVM. Regista os instantes de cada mensagem (nanoTime)
+ * para medir latências.
+ */
+public class InMemoryOutbox implements OutboxStore {
+
+    static class Entry {
+        final Item item;
+        String state = SmsOutbox.STATE_PENDING;
+        final long enqueuedAt = System.nanoTime();
+        long claimedAt;
+        long finishedAt;
+
+        Entry(Item item) {
+            this.item = item;
+        }
+    }
+
+    private static class BatchState {
+        final int cycleNumber;
+        boolean fetchComplete;
+        boolean finished;
+        final List<Entry> entries = new ArrayList<>();
+        final Set<String> phones = new HashSet<>();
+        int nextPending = 0;
+
+        BatchState(int cycleNumber) {
+            this.cycleNumber = cycleNumber;
+        }
+    }
+
+    private final Map<String, BatchState> batches = new LinkedHashMap<>();
+    private final Map<Long, Entry> byId = new LinkedHashMap<>();
+    private long nextId = 1;
+    private int batchCounter = 0;
+
+    @Override
+    public synchronized String createBatch(int cycleNumber) {
+        String batchId = "cycle-" + cycleNumber + "-" + (++batchCounter);
+        batches.put(batchId, new BatchState(cycleNumber));
+        return batchId;
+    }
+
+    @Override
+    public synchronized Batch findOpenBatch() {
+        for (Map.Entry<String, BatchState> entry : batches.entrySet()) {
+            if (!entry.getValue().finished) {
+                return new Batch(entry.getKey(), entry.getValue().cycleNumber, entry.getValue().fetchComplete);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized int enqueue(String batchId, List<ApiService.Patient> patients, MessageFactory factory) {
+        BatchState batch = batches.get(batchId);
+        int added = 0;
+        for (ApiService.Patient patient : patients) {
+            String phone = PatientStore.normalizeContact(patient.contact);
+            if (phone.isEmpty() || !batch.phones.add(phone)) {
+                continue;
+            }
+            Entry entry = new Entry(new Item(nextId++, batchId, patient.id,
+                    patient.fullname != null ? patient.fullname : "Paciente", phone, factory.build(patient), 0));
+            batch.entries.add(entry);
+            byId.put(entry.item.id, entry);
+            added++;
+        }
+        return added;
+    }
+
+    @Override
+    public synchronized void markFetchComplete(String batchId) {
+        batches.get(batchId).fetchComplete = true;
+    }
+
+    @Override
+    public synchronized boolean isFetchComplete(String batchId) {
+        BatchState batch = batches.get(batchId);
+        return batch == null || batch.fetchComplete;
+    }
+
+    @Override
+    public synchronized void finishBatch(String batchId) {
+        BatchState batch = batches.get(batchId);
+        batch.finished = true;
+        batch.fetchComplete = true;
+    }
+
+    @Override
+    public synchronized void discardBatch(String batchId) {
+        BatchState batch = batches.remove(batchId);
+        for (Entry entry : batch.entries) {
+            byId.remove(entry.item.id);
+        }
+    }
+
+    @Override
+    public synchronized int recoverInterrupted(String batchId) {
+        int recovered = 0;
+        for (Entry entry : batches.get(batchId).entries) {
+            if (SmsOutbox.STATE_SENDING.equals(entry.state)) {
+                entry.state = SmsOutbox.STATE_INTERRUPTED;
+                recovered++;
+            }
+        }
+        return recovered;
+    }
+
+    @Override
+    public synchronized Item claimNext(String batchId) {
+        BatchState batch = batches.get(batchId);
+        while (batch.nextPending < batch.entries.size()) {
+            Entry entry = batch.entries.get(batch.nextPending++);
+            if (SmsOutbox.STATE_PENDING.equals(entry.state)) {
+                entry.state = SmsOutbox.STATE_SENDING;
+                entry.claimedAt = System.nanoTime();
+                return entry.item;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void markSent(long itemId) {
+        finish(itemId, SmsOutbox.STATE_SENT);
+    }
+
+    @Override
+    public synchronized void markFailed(long itemId, String error) {
+        finish(itemId, SmsOutbox.STATE_FAILED);
+    }
+
+    @Override
+    public synchronized void markReassigned(long itemId) {
+        finish(itemId, SmsOutbox.STATE_REASSIGNED);
+    }
+
+    private void finish(long itemId, String state) {
+        Entry entry = byId.get(itemId);
+        entry.state = state;
+        entry.finishedAt = System.nanoTime();
+    }
+
+    @Override
+    public synchronized Progress getProgress(String batchId) {
+        Progress progress = new Progress();
+        for (Entry entry : batches.get(batchId).entries) {
+            if (SmsOutbox.STATE_PENDING.equals(entry.state)) {
+                progress.pending++;
+            } else if (SmsOutbox.STATE_SENDING.equals(entry.state)) {
+                progress.sending++;
+            } else if (SmsOutbox.STATE_SENT.equals(entry.state)) {
+                progress.sent++;
+            } else if (!SmsOutbox.STATE_REASSIGNED.equals(entry.state)) {
+                progress.failed++;
+            }
+        }
+        return progress;
+    }
+
+    synchronized boolean isFinished(String batchId) {
+        BatchState batch = batches.get(batchId);
+        return batch != null && batch.finished;
+    }
+
+    synchronized List<Entry> entries(String batchId) {
+        return new ArrayList<>(batches.get(batchId).entries);
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.pisaudeapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do {@link LogJournal}: registos binários gravados e lidos de volta,
+ * rotação por tamanho com os ficheiros mais antigos apagados, retoma depois
+ * de reabrir, leitura paginada entre ficheiros, procura por hora e filtro por
+ * ciclo.
+ */
+public class LogJournalTest {
+
+    private static final long T0 = 1700000000000L;
+    // Cabe um punhado de registos curtos por ficheiro
+    private static final int SEGMENT_SIZE = 1024;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("log-journal").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void appendAndRead_roundTripsEveryField() {
+        LogJournal journal = new LogJournal(dir, SEGMENT_SIZE, 8);
+        journal.append(T0, LogManager.LEVEL_INFO, 0, "📱 Enviando SMS");
+        journal.append(T0 + 1000, LogManager.LEVEL_ERROR, 7, "❌ Falha ção");
+
+        LogJournal.Page page = journal.read(journal.start(), 10, 0);
+        assertEquals(2, page.records.size());
+        LogJournal.Record error = page.records.get(1);
+        assertEquals(T0 + 1000, error.timestamp);
+        assertEquals(LogManager.LEVEL_ERROR, error.level);
+        assertEquals(7, error.cycleId);
+        assertEquals("❌ Falha ção", error.message);
+        assertTrue(error.format(), error.format().endsWith("] [Ciclo #7] ❌ Falha ção"));
+
+        // Nada de novo a partir do fim
+        assertTrue(journal.read(page.next, 10, 0).records.isEmpty());
+    }
+
+    @Test
+    public void rotation_keepsOnlyTheNewestSegments() {
+        LogJournal journal = new LogJournal(dir, SEGMENT_SIZE, 3);
+        for (int i = 0; i < 500; i++) {
+            journal.append(T0 + i, LogManager.LEVEL_INFO, 0, "log " + i);
+        }
+
+        String[] files = dir.list();
+        assertNotNull(files);
+        assertEquals(3, files.length);
+        for (String file : files) {
+            assertEquals(SEGMENT_SIZE, new File(dir, file).length());
+        }
+
+        // Os registos que sobram são os mais recentes, seguidos
+        List<LogJournal.Record> records = readAll(journal, 1000, 0);
+        assertTrue(records.size() > 0 && records.size() < 500);
+        assertEquals("log 499", records.get(records.size() - 1).message);
+        int first = 500 - records.size();
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals("log " + (first + i), records.get(i).message);
+        }
+    }
+
+    @Test
+    public void reopen_resumesAfterTheLastRecord() {
+        LogJournal journal = new LogJournal(dir, SEGMENT_SIZE, 8);
+        journal.append(T0, LogManager.LEVEL_INFO, 1, "antes");
+        journal.append(T0 + 1, LogManager.LEVEL_WARN, 1, "⚠️ antes");
+
+        // Novo processo: mesma pasta
+        LogJournal reopened = new LogJournal(dir, SEGMENT_SIZE, 8);
+        reopened.append(T0 + 2, LogManager.LEVEL_INFO, 2, "depois");
+
+        assertEquals(Arrays.asList("antes", "⚠️ antes", "depois"), messages(readAll(reopened, 10, 0)));
+        assertEquals(1, dir.list().length);
+    }
+
+    @Test
+    public void pagedRead_crossesSegmentsWithoutGapsOrRepeats() {
+        LogJournal journal = new LogJournal(dir, SEGMENT_SIZE, 64);
+        for (int i = 0; i < 300; i++) {
+            journal.append(T0 + i, LogManager.LEVEL_INFO, 0, "log " + i);
+        }
+        assertTrue(dir.list().length > 5);
+
+        List<LogJournal.Record> records = readAll(journal, 7, 0);
+        assertEquals(300, records.size());
+        for (int i = 0; i < 300; i++) {
+            assertEquals("log " + i, records.get(i).message);
+        }
+    }
+
+    @Test
+    public void readerPosition_survivesNewAppends() {
+        LogJournal journal = new LogJournal(dir, SEGMENT_SIZE, 64);
+        journal.append(T0, LogManager.LEVEL_INFO, 0, "um");
+        LogJournal.Page first = journal.read(journal.start(), 10, 0);
+        assertEquals(1, first.records.size());
+
+        for (int i = 0; i < 100; i++) {
+            journal.append(T0 + 1 + i, LogManager.LEVEL_INFO, 0, "novo " + i);
+        }
+        List<LogJournal.Record> rest = new ArrayList<>();
+        LogJournal.Position position = first.next;
+        LogJournal.Page page;
+        while (!(page = journal.read(position, 10, 0)).records.isEmpty()) {
+            rest.addAll(page.records);
+            position = page.next;
+        }
+        assertEquals(100, rest.size());
+        assertEquals("novo 0", rest.get(0).message);
+    }
+
+    @Test
+    public void seek_findsTheFirstRecordAtOrAfterATime() {
+        LogJournal journal = new LogJournal(dir, SEGMENT_SIZE, 64);
+        for (int i = 0; i < 300; i++) {
+            journal.append(T0 + i * 1000L, LogManager.LEVEL_INFO, 0, "log " + i);
+        }
+
+        assertEquals("log 0", journal.read(journal.seek(T0 - 5000), 1, 0).records.get(0).message);
+        assertEquals("log 150", journal.read(journal.seek(T0 + 150 * 1000L), 1, 0).records.get(0).message);
+        assertEquals("log 201", journal.read(journal.seek(T0 + 200 * 1000L + 1), 1, 0).records.get(0).message);
+        assertTrue(journal.read(journal.seek(T0 + 400 * 1000L), 1, 0).records.isEmpty());
+    }
+
+    @Test
+    public void cycleFilter_returnsOnlyThatCycle() {
+        LogJournal journal = new LogJournal(dir, SEGMENT_SIZE, 64);
+        for (int i = 0; i < 90; i++) {
+            journal.append(T0 + i, LogManager.LEVEL_INFO, i % 3, "log " + i);
+        }
+
+        List<LogJournal.Record> records = readAll(journal, 4, 2);
+        assertEquals(30, records.size());
+        for (LogJournal.Record record : records) {
+            assertEquals(2, record.cycleId);
+        }
+    }
+
+    @Test
+    public void longMessages_areTruncated() {
+        LogJournal journal = new LogJournal(dir, 16 * 1024, 4);
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < LogJournal.MAX_MESSAGE_BYTES + 500; i++) {
+            message.append('x');
+        }
+        journal.append(T0, LogManager.LEVEL_INFO, 0, message.toString());
+        journal.append(T0 + 1, LogManager.LEVEL_INFO, 0, "seguinte");
+
+        List<LogJournal.Record> records = readAll(journal, 10, 0);
+        assertEquals(2, records.size());
+        assertEquals(LogJournal.MAX_MESSAGE_BYTES, records.get(0).message.length());
+        assertEquals("seguinte", records.get(1).message);
+    }
+
+    @Test
+    public void longMessages_areCutOnACharacterBoundary() {
+        LogJournal journal = new LogJournal(dir, 16 * 1024, 4);
+        // "x" + "ç" (2 bytes) repetido: o limite cai a meio de um "ç"
+        StringBuilder message = new StringBuilder("x");
+        while (message.length() < LogJournal.MAX_MESSAGE_BYTES) {
+            message.append('ç');
+        }
+        journal.append(T0, LogManager.LEVEL_INFO, 0, message.toString());
+
+        String stored = readAll(journal, 10, 0).get(0).message;
+        assertEquals(LogJournal.MAX_MESSAGE_BYTES - 1, stored.getBytes(StandardCharsets.UTF_8).length);
+        assertTrue(message.toString().startsWith(stored));
+        assertFalse(stored.contains("\uFFFD"));
+    }
+
+    @Test
+    public void strayFiles_inTheFolderAreIgnored() throws Exception {
+        LogJournal journal = new LogJournal(dir, SEGMENT_SIZE, 3);
+        for (int i = 0; i < 200; i++) {
+            journal.append(T0 + i, LogManager.LEVEL_INFO, 0, "log " + i);
+        }
+        List<String> before = messages(readAll(journal, 1000, 0));
+        assertTrue(new File(dir, "journal-copia.bin").createNewFile());
+
+        // Sem o segmento 0 fantasma: a leitura começa no ficheiro mais antigo
+        LogJournal reopened = new LogJournal(dir, SEGMENT_SIZE, 3);
+        assertEquals(before, messages(readAll(reopened, 1000, 0)));
+        assertTrue(reopened.start().segment > 0);
+    }
+
+    @Test
+    public void attachedJournal_recordsLevelAndCycleFromTheRing() throws Exception {
+        LogManager logManager = new LogManager(64);
+        LogJournal journal = new LogJournal(dir, SEGMENT_SIZE, 8);
+        journal.attach(logManager);
+
+        logManager.addLog("fora do ciclo");
+        logManager.setCycleId(12);
+        logManager.addLog("⚠️ Servidor lento");
+        logManager.addLog("❌ Ciclo #12 falhou");
+        logManager.setCycleId(0);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        List<LogJournal.Record> records = readAll(journal, 10, 0);
+        while (records.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            records = readAll(journal, 10, 0);
+        }
+
+        assertEquals(3, records.size());
+        assertEquals(0, records.get(0).cycleId);
+        assertEquals(LogManager.LEVEL_INFO, records.get(0).level);
+        assertEquals(12, records.get(1).cycleId);
+        assertEquals(LogManager.LEVEL_WARN, records.get(1).level);
+        assertEquals(LogManager.LEVEL_ERROR, records.get(2).level);
+        assertEquals(2, readAll(journal, 10, 12).size());
+    }
+
+    // ============ AUXILIARES ============
+
+    private static List<LogJournal.Record> readAll(LogJournal journal, int pageSize, int cycleId) {
+        List<LogJournal.Record> records = new ArrayList<>();
+        LogJournal.Position position = journal.start();
+        while (true) {
+            LogJournal.Page page = journal.read(position, pageSize, cycleId);
+            records.addAll(page.records);
+            if (page.records.size() < pageSize) {
+                return records;
+            }
+            position = page.next;
+        }
+    }
+
+    private static List<String> messages(List<LogJournal.Record> records) {
+        List<String> messages = new ArrayList<>();
+        for (LogJournal.Record record : records) {
+            messages.add(record.message);
+        }
+        return messages;
+    }
+}
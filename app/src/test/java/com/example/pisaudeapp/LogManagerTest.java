@@ -0,0 +1,301 @@
+package com.example.pisaudeapp;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do anel do {@link LogManager} (ordem, capacidade, limpeza, várias
+ * threads a escrever) e das entregas agregadas num relógio manual: no máximo
+ * uma lista por intervalo, com contagem de logs agregados e perdidos. Com
+ * -Pbenchmarks, também um microbenchmark do custo de cada addLog com 1 e 8
+ * threads, comparado com a lista sincronizada anterior (add(0, ...) e
+ * SimpleDateFormat partilhado).
+ */
+public class LogManagerTest {
+
+    private static final int PRODUCERS = 8;
+    private static final int APPENDS_PER_THREAD = 200000;
+    private static final int WARMUP_ROUNDS = 2;
+
+    @Test
+    public void logs_newestFirst_withFormattedTime() {
+        LogManager logManager = new LogManager(16);
+        logManager.addLog("primeiro");
+        logManager.addLog("segundo");
+
+        List<String> logs = logManager.getLogs();
+        assertEquals(2, logs.size());
+        assertTrue(logs.get(0), logs.get(0).matches("\\[\\d{2}:\\d{2}:\\d{2}] segundo"));
+        assertTrue(logs.get(1).endsWith("] primeiro"));
+        assertEquals(logs.get(0) + "\n" + logs.get(1) + "\n", logManager.getAllLogsAsString());
+    }
+
+    @Test
+    public void fullRing_keepsOnlyTheLatestEntries() {
+        LogManager logManager = new LogManager(8);
+        for (int i = 0; i < 20; i++) {
+            logManager.addLog("log " + i);
+        }
+
+        List<LogManager.Entry> entries = logManager.snapshot();
+        assertEquals(8, entries.size());
+        assertEquals("log 12", entries.get(0).message);
+        assertEquals("log 19", entries.get(7).message);
+    }
+
+    @Test
+    public void clear_hidesOlderEntries() {
+        LogManager logManager = new LogManager(8);
+        final int[] cleared = {0};
+        logManager.registerListener(new LogManager.LogUpdateListener() {
+            @Override
+            public void onLogsUpdated(String newLog) {
+            }
+
+            @Override
+            public void onLogsCleared() {
+                cleared[0]++;
+            }
+        });
+        logManager.addLog("antes");
+        logManager.clearLogs();
+        logManager.addLog("depois");
+
+        assertEquals(1, cleared[0]);
+        assertEquals(1, logManager.getLogs().size());
+        assertTrue(logManager.getLogs().get(0).endsWith("] depois"));
+    }
+
+    @Test
+    public void concurrentProducers_loseNothingWithinCapacity() throws Exception {
+        final int perThread = 5000;
+        final LogManager logManager = new LogManager(1 << 16);
+        runProducers(PRODUCERS, perThread, logManager::addLog);
+
+        List<LogManager.Entry> entries = logManager.snapshot();
+        assertEquals(PRODUCERS * perThread, entries.size());
+
+        // Cada thread vê as suas entradas pela ordem em que as escreveu
+        Set<String> seen = new HashSet<>();
+        int[] lastIndex = new int[PRODUCERS];
+        Arrays.fill(lastIndex, -1);
+        for (LogManager.Entry entry : entries) {
+            assertTrue(seen.add(entry.message));
+            String[] parts = entry.message.split(":");
+            int thread = Integer.parseInt(parts[0]);
+            int index = Integer.parseInt(parts[1]);
+            assertTrue(index > lastIndex[thread]);
+            lastIndex[thread] = index;
+        }
+    }
+
+    @Test
+    public void microbenchmark_appendCostAndContention() throws Exception {
+        Benchmarks.assumeEnabled();
+        LegacyLogManager legacy = new LegacyLogManager();
+        LogManager ring = new LogManager(LogManager.MAX_LOGS);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runProducers(PRODUCERS, APPENDS_PER_THREAD / 4, legacy::addLog);
+            runProducers(PRODUCERS, APPENDS_PER_THREAD / 4, ring::addLog);
+        }
+
+        double legacySingle = nsPerAppend(1, legacy::addLog);
+        double ringSingle = nsPerAppend(1, ring::addLog);
+        double legacyContended = nsPerAppend(PRODUCERS, legacy::addLog);
+        double ringContended = nsPerAppend(PRODUCERS, ring::addLog);
+
+        Benchmarks.report("addLog, 1 thread: lista sincronizada %.0f ns, anel %.0f ns (x%.1f)",
+                legacySingle, ringSingle, legacySingle / ringSingle);
+        Benchmarks.report("addLog, %d threads: lista sincronizada %.0f ns, anel %.0f ns (x%.1f) por append e thread",
+                PRODUCERS, legacyContended, ringContended, legacyContended / ringContended);
+
+        // Sem listeners nem formatação, o anel tem de ser mais barato nos dois casos
+        assertTrue(ringSingle < legacySingle);
+        assertTrue(ringContended < legacyContended);
+        assertEquals(LogManager.MAX_LOGS, ring.snapshot().size());
+    }
+
+    @Test
+    public void batchedDelivery_coalescesABurstIntoOneUpdate() throws Exception {
+        ManualDeliveryScheduler scheduler = new ManualDeliveryScheduler();
+        final LogManager logManager = new LogManager(1 << 16, scheduler);
+        final int total = PRODUCERS * 5000;
+        final CollectingListener listener = new CollectingListener();
+        LogManager.Subscription subscription = logManager.subscribe(listener, Runnable::run, 50);
+
+        // Relógio parado: o primeiro log marca a entrega e os outros juntam-se a ela
+        runProducers(PRODUCERS, 5000, logManager::addLog);
+        assertEquals(0, listener.logs.size());
+        scheduler.runDue();
+
+        assertEquals(total, listener.logs.size());
+        assertEquals(0, subscription.getDropped());
+        assertEquals(total, subscription.getDelivered());
+        assertEquals(1, subscription.getBatches());
+        assertEquals(total - 1, subscription.getCoalesced());
+
+        // Todas as linhas, pela ordem do anel
+        List<LogManager.Entry> entries = logManager.snapshot();
+        for (int i = 0; i < total; i++) {
+            assertTrue(listener.logs.get(i).endsWith("] " + entries.get(i).message));
+        }
+    }
+
+    @Test
+    public void batchedDelivery_waitsForTheIntervalAfterTheLastOne() {
+        ManualDeliveryScheduler scheduler = new ManualDeliveryScheduler();
+        LogManager logManager = new LogManager(64, scheduler);
+        CollectingListener listener = new CollectingListener();
+        LogManager.Subscription subscription = logManager.subscribe(listener, Runnable::run, 50);
+
+        // Primeira entrega imediata
+        logManager.addLog("um");
+        scheduler.runDue();
+        assertEquals(Collections.singletonList("um"), listener.messages());
+
+        logManager.addLog("dois");
+        logManager.addLog("três");
+        scheduler.advance(49);
+        assertEquals(1, listener.logs.size());
+        scheduler.advance(1);
+        assertEquals(Arrays.asList("um", "dois", "três"), listener.messages());
+        assertEquals(2, subscription.getBatches());
+        assertEquals(0, scheduler.pending());
+    }
+
+    @Test
+    public void slowListener_countsEntriesOverwrittenBeforeDelivery() {
+        ManualDeliveryScheduler scheduler = new ManualDeliveryScheduler();
+        LogManager logManager = new LogManager(64, scheduler);
+        CollectingListener listener = new CollectingListener();
+        LogManager.Subscription subscription = logManager.subscribe(listener, Runnable::run, 200);
+
+        logManager.addLog("primeiro");
+        scheduler.runDue();   // primeira entrega imediata
+        for (int i = 0; i < 1000; i++) {
+            logManager.addLog("log " + i);
+        }
+        scheduler.advance(200);
+
+        // Só as últimas 64 ainda estavam no anel; as restantes contam como perdidas
+        assertEquals(1 + 64, listener.logs.size());
+        assertEquals(1000 - 64, subscription.getDropped());
+        assertTrue(listener.logs.get(listener.logs.size() - 1).endsWith("] log 999"));
+    }
+
+    @Test
+    public void batchedDelivery_reportsClearBeforeNewLogs() {
+        ManualDeliveryScheduler scheduler = new ManualDeliveryScheduler();
+        LogManager logManager = new LogManager(16, scheduler);
+        CollectingListener listener = new CollectingListener();
+        LogManager.Subscription subscription = logManager.subscribe(listener, Runnable::run, 20);
+
+        logManager.addLog("antes");
+        scheduler.runDue();
+        logManager.clearLogs();
+        logManager.addLog("depois");
+        scheduler.advance(20);
+        subscription.cancel();
+        logManager.addLog("cancelado");
+        scheduler.advance(100);
+
+        assertEquals(Arrays.asList("antes", "<limpo>", "depois"), listener.messages());
+    }
+
+    // ============ AUXILIARES ============
+
+    private static class CollectingListener implements LogManager.LogBatchListener {
+        final List<String> logs = new ArrayList<>();
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public synchronized void onLogsAppended(List<String> newLogs) {
+            logs.addAll(newLogs);
+            events.addAll(newLogs);
+        }
+
+        @Override
+        public synchronized void onLogsCleared() {
+            events.add("<limpo>");
+        }
+
+        synchronized List<String> messages() {
+            List<String> messages = new ArrayList<>();
+            for (String event : events) {
+                messages.add(event.startsWith("[") ? event.substring(event.indexOf("] ") + 2) : event);
+            }
+            return messages;
+        }
+    }
+
+    private interface Appender {
+        void addLog(String message);
+    }
+
+    // Tempo médio de um addLog visto por cada thread, com todas a escrever ao mesmo tempo
+    private static double nsPerAppend(int threads, Appender appender) throws Exception {
+        long elapsedNs = runProducers(threads, APPENDS_PER_THREAD, appender);
+        return elapsedNs / (double) APPENDS_PER_THREAD;
+    }
+
+    private static long runProducers(int threads, final int perThread, final Appender appender) throws Exception {
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            // Mensagens criadas antes de medir
+            final String[] messages = new String[perThread];
+            for (int i = 0; i < perThread; i++) {
+                messages[i] = thread + ":" + i;
+            }
+            Thread worker = new Thread(() -> {
+                ready.countDown();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (String message : messages) {
+                    appender.addLog(message);
+                }
+            }, "log-producer-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        ready.await();
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - begin;
+    }
+
+    // O LogManager anterior, para comparação
+    private static class LegacyLogManager {
+        private final List<String> logs = new ArrayList<>();
+        private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
+
+        synchronized void addLog(String message) {
+            String logEntry = "[" + timeFormat.format(new Date()) + "] " + message;
+            logs.add(0, logEntry);
+            if (logs.size() > LogManager.MAX_LOGS) {
+                logs.remove(logs.size() - 1);
+            }
+        }
+    }
+}
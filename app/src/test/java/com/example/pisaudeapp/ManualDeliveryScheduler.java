@@ -0,0 +1,69 @@
+package com.example.pisaudeapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Relógio manual para as entregas agregadas do {@link LogManager}: nada corre
+ * sozinho, as entregas marcadas só correm (na thread do teste) quando o teste
+ * avança o relógio. Sem sleeps nem dependência da velocidade da máquina.
+ */
+final class ManualDeliveryScheduler implements LogManager.DeliveryScheduler {
+
+    private static class Task {
+        final long dueAt;
+        final Runnable runnable;
+
+        Task(long dueAt, Runnable runnable) {
+            this.dueAt = dueAt;
+            this.runnable = runnable;
+        }
+    }
+
+    // Longe do zero: a primeira entrega de uma subscrição é imediata
+    private long now = 1700000000000L;
+    private final List<Task> tasks = new ArrayList<>();
+
+    @Override
+    public synchronized long now() {
+        return now;
+    }
+
+    @Override
+    public synchronized void schedule(Runnable task, long delayMs) {
+        tasks.add(new Task(now + delayMs, task));
+    }
+
+    // Corre as entregas já vencidas, incluindo as que estas marcarem para já
+    void runDue() {
+        advance(0);
+    }
+
+    void advance(long ms) {
+        long target;
+        synchronized (this) {
+            target = now + ms;
+        }
+        while (true) {
+            Task next = null;
+            synchronized (this) {
+                for (Task task : tasks) {
+                    if (task.dueAt <= target && (next == null || task.dueAt < next.dueAt)) {
+                        next = task;
+                    }
+                }
+                if (next == null) {
+                    now = target;
+                    return;
+                }
+                tasks.remove(next);
+                now = Math.max(now, next.dueAt);
+            }
+            next.runnable.run();
+        }
+    }
+
+    synchronized int pending() {
+        return tasks.size();
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.pisaudeapp;
+
+import android.telephony.SmsManager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do {@link MultiSimDispatcher} com gateways falsos na JVM: envios
+ * repartidos pelos dois SIM, ritmo independente por SIM e SIM com erros postos
+ * de parte, mais o débito com um e dois SIM (este só com -Pbenchmarks).
+ */
+public class MultiSimDispatcherTest {
+
+    private static final int RATE_PER_MINUTE = 600;   // 10 SMS/s por SIM
+    private static final long RUN_MS = 1500;
+
+    @Test
+    public void dualSim_alternatesBetweenSims() {
+        FakeGateway sim1 = new FakeGateway("SIM 1");
+        FakeGateway sim2 = new FakeGateway("SIM 2");
+        MultiSimDispatcher dispatcher = new MultiSimDispatcher(Arrays.asList(sim1, sim2), Arrays.asList(
+                new SmsRateGovernor(100, 100000, 100000),
+                new SmsRateGovernor(100, 100000, 100000)));
+
+        for (int i = 0; i < 20; i++) {
+            MultiSimDispatcher.Lane lane = dispatcher.nextLane();
+            assertNotNull(lane);
+            dispatcher.send(lane, "912345678", "Olá", false, new NoopCallback());
+        }
+
+        assertEquals(10, sim1.sent.get());
+        assertEquals(10, sim2.sent.get());
+    }
+
+    @Test
+    public void dualSim_roughlyDoublesThroughput() throws Exception {
+        Benchmarks.assumeEnabled();
+        int single = drive(dispatcher(new FakeGateway("SIM 1")), RUN_MS);
+        int dual = drive(dispatcher(new FakeGateway("SIM 1"), new FakeGateway("SIM 2")), RUN_MS);
+
+        double ratio = dual / (double) single;
+        Benchmarks.report("Débito em %d ms: 1 SIM %d SMS, 2 SIM %d SMS (x%.2f)", RUN_MS, single, dual, ratio);
+        assertTrue("x" + ratio, ratio > 1.7 && ratio < 2.3);
+    }
+
+    @Test
+    public void eachSim_keepsItsOwnRate() throws Exception {
+        FakeGateway fast = new FakeGateway("rápido");
+        FakeGateway slow = new FakeGateway("lento");
+        MultiSimDispatcher dispatcher = new MultiSimDispatcher(Arrays.asList(fast, slow), Arrays.asList(
+                new SmsRateGovernor(1, RATE_PER_MINUTE, 100000),
+                new SmsRateGovernor(1, RATE_PER_MINUTE / 5, 100000)));
+
+        drive(dispatcher, RUN_MS);
+
+        // burst + taxa * tempo, com folga para o arredondamento do sleep
+        int slowBudget = 1 + (int) Math.ceil(RATE_PER_MINUTE / 5 / 60000.0 * RUN_MS) + 1;
+        assertTrue("lento: " + slow.sent.get(), slow.sent.get() <= slowBudget);
+        assertTrue("rápido: " + fast.sent.get(), fast.sent.get() > 3 * slow.sent.get());
+    }
+
+    @Test
+    public void radioOff_pausesThatSimAndTrafficMovesToTheOther() throws Exception {
+        FakeGateway broken = new FakeGateway("SIM 1");
+        broken.resultCode = SmsManager.RESULT_ERROR_RADIO_OFF;
+        FakeGateway healthy = new FakeGateway("SIM 2");
+        MultiSimDispatcher dispatcher = dispatcher(broken, healthy);
+
+        int total = drive(dispatcher, 500);
+
+        assertEquals(1, broken.sent.get());
+        assertEquals(total - 1, healthy.sent.get());
+        assertTrue(dispatcher.getStats().get(0), dispatcher.getStats().get(0).contains("em pausa"));
+    }
+
+    @Test
+    public void rejectedSends_countAsFailures() {
+        FakeGateway rejecting = new FakeGateway("SIM 1");
+        rejecting.reject = true;
+        MultiSimDispatcher dispatcher = new MultiSimDispatcher(Collections.singletonList(rejecting),
+                Collections.singletonList(new SmsRateGovernor(100, 100000, 100000)));
+
+        MultiSimDispatcher.Lane lane = dispatcher.nextLane();
+        assertNotNull(lane);
+        for (int i = 0; i < 3; i++) {
+            try {
+                dispatcher.send(lane, "912345678", "Olá", false, new NoopCallback());
+                fail("Envio recusado devia lançar exceção");
+            } catch (IllegalStateException expected) {
+                // O SmsManager recusou a mensagem
+            }
+        }
+
+        // Três recusas seguidas: o único SIM fica em pausa (não só à espera do ritmo)
+        assertNull(dispatcher.nextLane());
+        assertTrue(dispatcher.getDelayMs() > 30 * 1000L);
+    }
+
+    // ============ AUXILIARES ============
+
+    private static MultiSimDispatcher dispatcher(FakeGateway... gateways) {
+        List<SmsRateGovernor> governors = new ArrayList<>();
+        for (int i = 0; i < gateways.length; i++) {
+            governors.add(new SmsRateGovernor(1, RATE_PER_MINUTE, 100000));
+        }
+        return new MultiSimDispatcher(Arrays.asList(gateways), governors);
+    }
+
+    // Mesmo ciclo do SmsDispatchEngine: esperar pelo ritmo, escolher o SIM, enviar
+    private static int drive(MultiSimDispatcher dispatcher, long runMs) throws InterruptedException {
+        int sent = 0;
+        long deadline = System.nanoTime() + runMs * 1000000L;
+        while (System.nanoTime() < deadline) {
+            MultiSimDispatcher.Lane lane = dispatcher.nextLane();
+            if (lane == null) {
+                Thread.sleep(Math.max(1, Math.min(dispatcher.getDelayMs(), 50)));
+                continue;
+            }
+            dispatcher.send(lane, "912345678", "Mensagem de teste", false, new NoopCallback());
+            sent++;
+        }
+        return sent;
+    }
+
+    // Gateway falso: responde logo, com o código configurado
+    private static class FakeGateway implements SmsGateway {
+        final String name;
+        final AtomicInteger sent = new AtomicInteger();
+        volatile int resultCode = -1;   // Activity.RESULT_OK
+        volatile boolean reject = false;
+
+        FakeGateway(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public List<String> divideMessage(String message) {
+            return Collections.singletonList(message);
+        }
+
+        @Override
+        public int send(String destination, String message, boolean trackDelivery, Callback callback) {
+            if (reject) {
+                throw new IllegalStateException("recusado");
+            }
+            sent.incrementAndGet();
+            callback.onSent(resultCode == -1, resultCode);
+            return 1;
+        }
+    }
+
+    private static class NoopCallback implements SmsGateway.Callback {
+        @Override
+        public void onSent(boolean success, int resultCode) {
+        }
+
+        @Override
+        public void onDelivered(boolean delivered) {
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.pisaudeapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do parser em streaming contra o parse DOM antigo ({@link #parseDom},
+ * o que o ApiService fazia antes) e benchmark dos dois, este só com
+ * -Pbenchmarks.
+ */
+public class PatientJsonStreamParserTest {
+
+    private static List<ApiService.Patient> stream(String json) throws Exception {
+        return PatientJsonStreamParser.parseAll(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void parse_matchesDomParser() throws Exception {
+        String json = "[" +
+                "{\"id\":7,\"fullname\":\"Ana Maria\",\"contact\":\"841234567\",\"gender\":\"F\"," +
+                "\"textMessageDescription\":\"Olá \\\"ana\\\"\\n\\u00e9\",\"stateDescription\":\"faltoso\"," +
+                "\"extra\":{\"a\":[1,2,{\"b\":null}]}}," +
+                "{\"patientId\":\"12\",\"fullname\":\"Sem Id\",\"contact\":851234567," +
+                "\"textMessageDescription\":\"msg\"}," +
+                "{\"fullname\":\"Sem contacto\",\"contact\":\"\",\"textMessageDescription\":\"x\"}," +
+                "{\"fullname\":\"Indice\",\"contact\":\"861234567\",\"textMessageDescription\":\"y\",\"gender\":null}" +
+                "]";
+
+        List<ApiService.Patient> expected = parseDom(new JSONArray(json));
+        List<ApiService.Patient> actual = stream(json);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).id, actual.get(i).id);
+            assertEquals(expected.get(i).fullname, actual.get(i).fullname);
+            assertEquals(expected.get(i).contact, actual.get(i).contact);
+            assertEquals(expected.get(i).textMessageDescription, actual.get(i).textMessageDescription);
+            assertEquals(expected.get(i).stateDescription, actual.get(i).stateDescription);
+        }
+        assertEquals("F", actual.get(0).gender);
+        assertEquals(12, actual.get(1).id);
+        assertEquals(4, actual.get(2).id);
+        // null explícito cai no valor por omissão
+        assertEquals("M", actual.get(2).gender);
+    }
+
+    @Test
+    public void parse_tombstones_goToOnDeletedOnly() throws Exception {
+        String json = "[{\"id\":3,\"deleted\":true}," +
+                "{\"id\":4,\"contact\":\"841234567\",\"textMessageDescription\":\"x\",\"deleted\":false}]";
+        final List<Integer> deleted = new java.util.ArrayList<>();
+        final List<ApiService.Patient> patients = new java.util.ArrayList<>();
+        new PatientJsonStreamParser(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))
+                .parse(new PatientJsonStreamParser.PatientSink() {
+                    @Override
+                    public void onPatient(ApiService.Patient patient) {
+                        patients.add(patient);
+                    }
+
+                    @Override
+                    public void onDeleted(int id) {
+                        deleted.add(id);
+                    }
+                });
+
+        assertEquals(java.util.Collections.singletonList(3), deleted);
+        assertEquals(1, patients.size());
+        assertEquals(4, patients.get(0).id);
+        // Quem não trata tombstones não os recebe como pacientes
+        assertEquals(1, stream(json).size());
+    }
+
+    @Test
+    public void parse_emptyBodies() throws Exception {
+        assertTrue(stream("").isEmpty());
+        assertTrue(stream(" [ ] ").isEmpty());
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void parse_truncatedBodyFails() throws Exception {
+        stream("[{\"id\":1,\"contact\":\"841234567\"");
+    }
+
+    @Test
+    public void parse_fixture_sameCountAsDom() throws Exception {
+        byte[] bytes = buildFixture(500).getBytes(StandardCharsets.UTF_8);
+        assertEquals(500, runStream(bytes));
+        assertEquals(runDom(bytes), runStream(bytes));
+    }
+
+    @Test
+    public void benchmark_streamVsDom() throws Exception {
+        Benchmarks.assumeEnabled();
+        String json = buildFixture(20000);
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+        // Aquecimento
+        for (int i = 0; i < 5; i++) {
+            runDom(bytes);
+            runStream(bytes);
+        }
+
+        int rounds = 10;
+        long domNanos = 0;
+        long streamNanos = 0;
+        for (int i = 0; i < rounds; i++) {
+            long t0 = System.nanoTime();
+            int domCount = runDom(bytes);
+            long t1 = System.nanoTime();
+            int streamCount = runStream(bytes);
+            long t2 = System.nanoTime();
+
+            assertEquals(domCount, streamCount);
+            domNanos += t1 - t0;
+            streamNanos += t2 - t1;
+        }
+
+        Benchmarks.report("parse de %d registos (%d KB): DOM %.1f ms, streaming %.1f ms",
+                20000, bytes.length / 1024,
+                domNanos / 1e6 / rounds, streamNanos / 1e6 / rounds);
+    }
+
+    // Mesmo caminho que o JsonArrayRequest fazia: bytes -> String -> JSONArray -> Patient
+    private static int runDom(byte[] bytes) throws Exception {
+        String body = new String(bytes, StandardCharsets.UTF_8);
+        return parseDom(new JSONArray(body)).size();
+    }
+
+    // O antigo ApiService.parsePatients: id -> patientId -> índice + 1, só pacientes válidos
+    private static List<ApiService.Patient> parseDom(JSONArray jsonArray) throws JSONException {
+        List<ApiService.Patient> patients = new ArrayList<>();
+        for (int i = 0; i < jsonArray.length(); i++) {
+            JSONObject patientJson = jsonArray.getJSONObject(i);
+            int id = patientJson.optInt("id", 0);
+            if (id == 0) {
+                id = patientJson.optInt("patientId", i + 1);
+            }
+            ApiService.Patient patient = new ApiService.Patient(id,
+                    patientJson.optString("fullname", ""),
+                    patientJson.optString("contact", ""),
+                    patientJson.optString("gender", "M"),
+                    patientJson.optString("stateDescription", ""),
+                    patientJson.optString("textMessageDescription", ""));
+            if (patient.isValid()) {
+                patients.add(patient);
+            }
+        }
+        return patients;
+    }
+
+    private static int runStream(byte[] bytes) throws Exception {
+        return PatientJsonStreamParser.parseAll(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8).size();
+    }
+
+    static String buildFixture(int count) {
+        StringBuilder sb = new StringBuilder(count * 220);
+        sb.append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":").append(i + 1)
+                    .append(",\"fullname\":\"Paciente Número ").append(i).append('"')
+                    .append(",\"contact\":\"84").append(String.format(java.util.Locale.ROOT, "%07d", i)).append('"')
+                    .append(",\"gender\":\"").append(i % 2 == 0 ? 'F' : 'M').append('"')
+                    .append(",\"textMessageDescription\":\"Por favor compareça à unidade sanitária.\"")
+                    .append(",\"stateDescription\":\"").append(i % 3 == 0 ? "faltoso" : "chamada").append('"')
+                    .append(",\"createdAt\":\"2025-01-01T00:00:00Z\"}");
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.pisaudeapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do decoder MessagePack e benchmark de tamanho/tempo contra o
+ * {@link PatientJsonStreamParser} num fixture de 50k registos (este só com
+ * -Pbenchmarks).
+ */
+public class PatientMsgPackParserTest {
+
+    private static final int BENCHMARK_RECORDS = 50000;
+
+    private static List<ApiService.Patient> decode(byte[] bytes) throws Exception {
+        return PatientMsgPackParser.parseAll(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void parse_mapRecords_matchJsonRules() throws Exception {
+        MsgPack pack = new MsgPack().array(4);
+        pack.map(5).str("id").integer(7).str("fullname").str("Ana Maria").str("contact").str("841234567")
+                .str("textMessageDescription").str("Olá \"ana\"\né").str("extra").array(2).nil().map(1).str("b").bool(true);
+        // id vindo de patientId (string) e contacto numérico
+        pack.map(3).str("patientId").str("12").str("contact").integer(851234567L).str("textMessageDescription").str("msg");
+        // Sem contacto: contado mas inválido
+        pack.map(2).str("fullname").str("Sem contacto").str("textMessageDescription").str("x");
+        // Sem id: índice + 1; género nil cai no valor por omissão
+        pack.map(3).str("contact").str("861234567").str("textMessageDescription").str("y").str("gender").nil();
+
+        PatientMsgPackParser parser = new PatientMsgPackParser(new ByteArrayInputStream(pack.bytes()));
+        final java.util.ArrayList<ApiService.Patient> patients = new java.util.ArrayList<>();
+        parser.parse(patients::add);
+
+        assertEquals(4, parser.getTotalCount());
+        assertEquals(3, parser.getValidCount());
+        assertEquals(7, patients.get(0).id);
+        assertEquals("Olá \"ana\"\né", patients.get(0).textMessageDescription);
+        assertEquals(12, patients.get(1).id);
+        assertEquals("851234567", patients.get(1).contact);
+        assertEquals(4, patients.get(2).id);
+        assertEquals("M", patients.get(2).gender);
+    }
+
+    @Test
+    public void parse_positionalRecords() throws Exception {
+        MsgPack pack = new MsgPack().array(2);
+        pack.array(6).integer(3).str("Rita").str("841111111").str("F").str("Olá").str("faltoso");
+        // Registo com campo extra no fim e sem id
+        pack.array(7).nil().str("João").str("842222222").str("M").str("Oi").str("chamada").float64(1.5);
+
+        List<ApiService.Patient> patients = decode(pack.bytes());
+        assertEquals(2, patients.size());
+        assertEquals(3, patients.get(0).id);
+        assertEquals("F", patients.get(0).gender);
+        assertEquals("faltoso", patients.get(0).stateDescription);
+        assertEquals(2, patients.get(1).id);
+        assertEquals("chamada", patients.get(1).stateDescription);
+    }
+
+    @Test
+    public void parse_tombstones_mapAndPositional() throws Exception {
+        MsgPack pack = new MsgPack().array(3);
+        pack.map(2).str("id").integer(5).str("deleted").bool(true);
+        pack.array(7).integer(6).nil().nil().nil().nil().nil().bool(true);
+        pack.array(7).integer(7).str("Rita").str("841111111").str("F").str("Olá").str("faltoso").bool(false);
+
+        final List<Integer> deleted = new java.util.ArrayList<>();
+        final List<ApiService.Patient> patients = new java.util.ArrayList<>();
+        new PatientMsgPackParser(new ByteArrayInputStream(pack.bytes()))
+                .parse(new PatientJsonStreamParser.PatientSink() {
+                    @Override
+                    public void onPatient(ApiService.Patient patient) {
+                        patients.add(patient);
+                    }
+
+                    @Override
+                    public void onDeleted(int id) {
+                        deleted.add(id);
+                    }
+                });
+
+        assertEquals(java.util.Arrays.asList(5, 6), deleted);
+        assertEquals(1, patients.size());
+        assertEquals(7, patients.get(0).id);
+    }
+
+    @Test
+    public void parse_emptyBodies() throws Exception {
+        assertTrue(decode(new byte[0]).isEmpty());
+        assertTrue(decode(new MsgPack().array(0).bytes()).isEmpty());
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void parse_truncatedBodyFails() throws Exception {
+        byte[] full = new MsgPack().array(1).map(1).str("contact").str("841234567").bytes();
+        decode(java.util.Arrays.copyOf(full, full.length - 3));
+    }
+
+    @Test
+    public void fixture_sameRecordsAsJson_inLessThanHalfTheBytes() throws Exception {
+        byte[] json = PatientJsonStreamParserTest.buildFixture(500).getBytes(StandardCharsets.UTF_8);
+        byte[] pack = buildFixture(500);
+
+        List<ApiService.Patient> fromJson = PatientJsonStreamParser.parseAll(
+                new ByteArrayInputStream(json), StandardCharsets.UTF_8);
+        List<ApiService.Patient> fromPack = decode(pack);
+        assertEquals(500, fromPack.size());
+        for (int i = 0; i < fromJson.size(); i++) {
+            assertEquals(fromJson.get(i).id, fromPack.get(i).id);
+            assertEquals(fromJson.get(i).contact, fromPack.get(i).contact);
+            assertEquals(fromJson.get(i).textMessageDescription, fromPack.get(i).textMessageDescription);
+        }
+        assertTrue(pack.length * 2 < json.length);
+    }
+
+    @Test
+    public void benchmark_msgPackVsJson() throws Exception {
+        Benchmarks.assumeEnabled();
+        byte[] json = PatientJsonStreamParserTest.buildFixture(BENCHMARK_RECORDS).getBytes(StandardCharsets.UTF_8);
+        byte[] pack = buildFixture(BENCHMARK_RECORDS);
+
+        // Aquecimento
+        for (int i = 0; i < 5; i++) {
+            runJson(json);
+            runMsgPack(pack);
+        }
+
+        int rounds = 10;
+        long jsonNanos = 0;
+        long packNanos = 0;
+        for (int i = 0; i < rounds; i++) {
+            long t0 = System.nanoTime();
+            int jsonCount = runJson(json);
+            long t1 = System.nanoTime();
+            int packCount = runMsgPack(pack);
+            long t2 = System.nanoTime();
+
+            assertEquals(jsonCount, packCount);
+            jsonNanos += t1 - t0;
+            packNanos += t2 - t1;
+        }
+
+        assertTrue(pack.length * 2 < json.length);
+        Benchmarks.report("parse de %d registos: JSON %d KB em %.1f ms, MessagePack %d KB em %.1f ms",
+                BENCHMARK_RECORDS, json.length / 1024, jsonNanos / 1e6 / rounds,
+                pack.length / 1024, packNanos / 1e6 / rounds);
+    }
+
+    private static int runJson(byte[] bytes) throws Exception {
+        return PatientJsonStreamParser.parseAll(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8).size();
+    }
+
+    private static int runMsgPack(byte[] bytes) throws Exception {
+        return decode(bytes).size();
+    }
+
+    // Mesmos registos do fixture JSON, no formato posicional
+    static byte[] buildFixture(int count) {
+        MsgPack pack = new MsgPack().array(count);
+        for (int i = 0; i < count; i++) {
+            pack.array(6)
+                    .integer(i + 1)
+                    .str("Paciente Número " + i)
+                    .str("84" + String.format(java.util.Locale.ROOT, "%07d", i))
+                    .str(i % 2 == 0 ? "F" : "M")
+                    .str("Por favor compareça à unidade sanitária.")
+                    .str(i % 3 == 0 ? "faltoso" : "chamada");
+        }
+        return pack.bytes();
+    }
+
+    // Encoder mínimo, só para montar os fixtures
+    static class MsgPack {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        MsgPack array(int size) {
+            if (size < 16) {
+                out.write(0x90 | size);
+            } else {
+                out.write(0xdd);
+                writeInt(size);
+            }
+            return this;
+        }
+
+        MsgPack map(int size) {
+            if (size < 16) {
+                out.write(0x80 | size);
+            } else {
+                out.write(0xdf);
+                writeInt(size);
+            }
+            return this;
+        }
+
+        MsgPack str(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length < 32) {
+                out.write(0xa0 | bytes.length);
+            } else if (bytes.length < 256) {
+                out.write(0xd9);
+                out.write(bytes.length);
+            } else {
+                out.write(0xdb);
+                writeInt(bytes.length);
+            }
+            out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        MsgPack integer(long value) {
+            if (value >= 0 && value < 128) {
+                out.write((int) value);
+            } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                out.write(0xd2);
+                writeInt((int) value);
+            } else {
+                out.write(0xd3);
+                writeInt((int) (value >>> 32));
+                writeInt((int) value);
+            }
+            return this;
+        }
+
+        MsgPack float64(double value) {
+            long bits = Double.doubleToLongBits(value);
+            out.write(0xcb);
+            writeInt((int) (bits >>> 32));
+            writeInt((int) bits);
+            return this;
+        }
+
+        MsgPack bool(boolean value) {
+            out.write(value ? 0xc3 : 0xc2);
+            return this;
+        }
+
+        MsgPack nil() {
+            out.write(0xc0);
+            return this;
+        }
+
+        byte[] bytes() {
+            return out.toByteArray();
+        }
+
+        private void writeInt(int value) {
+            out.write(value >>> 24);
+            out.write(value >>> 16);
+            out.write(value >>> 8);
+            out.write(value);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.pisaudeapp;
+
+import android.telephony.SmsManager;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do envio na JVM pelo SmsDispatchEngine completo (outbox, escolha do
+ * SIM, ritmo, resultados do rádio) com outbox em memória e
+ * {@link FakeSmsGateway}: contagem de falhas e recusas, relatórios de entrega
+ * e, só com -Pbenchmarks, ciclos de 10 000 mensagens que imprimem mensagens
+ * por segundo e latências (p50/p95/p99/máx) do rádio ao resultado gravado.
+ */
+public class SmsPipelineLoadTest {
+
+    private static final int MESSAGES = 10000;
+    // Ciclos dos testes de correção
+    private static final int SMALL_CYCLE = 500;
+    private static final long CYCLE_TIMEOUT_MS = 120 * 1000L;
+
+    private final List<FakeSmsGateway> gateways = new ArrayList<>();
+    private final List<SmsDispatchEngine> engines = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (SmsDispatchEngine engine : engines) {
+            engine.shutdown();
+        }
+        for (FakeSmsGateway gateway : gateways) {
+            gateway.close();
+        }
+    }
+
+    @Test
+    public void radioErrors_areRecordedAsFailures() throws Exception {
+        // Dois SIM: três erros seguidos põem um SIM de parte e o outro continua
+        FakeSmsGateway first = gateway("SIM 1", 7)
+                .setLatency(0, 5)
+                .setFailures(0.03, SmsManager.RESULT_ERROR_NULL_PDU, SmsManager.RESULT_ERROR_GENERIC_FAILURE);
+        FakeSmsGateway second = gateway("SIM 2", 8)
+                .setLatency(0, 5)
+                .setFailures(0.03, SmsManager.RESULT_ERROR_NULL_PDU, SmsManager.RESULT_ERROR_GENERIC_FAILURE);
+        CycleResult result = runCycle("erros do rádio", unlimited(first, second), SMALL_CYCLE);
+
+        assertEquals(SMALL_CYCLE, result.sent + result.failed);
+        assertEquals(first.failed.get() + second.failed.get(), result.failed);
+        assertTrue("falhas: " + result.failed, result.failed > 0 && result.failed < SMALL_CYCLE / 5);
+    }
+
+    @Test
+    public void tenThousandMessages_withLatencyAndRadioErrors() throws Exception {
+        Benchmarks.assumeEnabled();
+        // Sem limite de ritmo: mede o custo do próprio pipeline
+        FakeSmsGateway sim = gateway("SIM 1", 1)
+                .setLatency(2, 20)
+                .setFailures(0.01, SmsManager.RESULT_ERROR_NULL_PDU, SmsManager.RESULT_ERROR_GENERIC_FAILURE);
+        CycleResult result = runCycle("sem limite, 1 SIM", unlimited(sim), MESSAGES);
+        report(result);
+
+        assertEquals(MESSAGES, result.sent + result.failed);
+        assertEquals(sim.failed.get(), result.failed);
+        assertTrue("falhas: " + result.failed, result.failed > MESSAGES * 0.005 && result.failed < MESSAGES * 0.02);
+        assertTrue(sim.failuresByCode.keySet().containsAll(Arrays.asList(
+                SmsManager.RESULT_ERROR_NULL_PDU, SmsManager.RESULT_ERROR_GENERIC_FAILURE)));
+        assertEquals(2, sim.failuresByCode.size());
+    }
+
+    @Test
+    public void rejectedMessages_areMarkedFailedWithoutStallingTheCycle() throws Exception {
+        FakeSmsGateway sim = gateway("SIM 1", 2).setLatency(0, 5).setRejectRate(0.02);
+        CycleResult result = runCycle("recusas 2%", unlimited(sim), SMALL_CYCLE);
+
+        assertEquals(SMALL_CYCLE, result.sent + result.failed);
+        assertEquals(sim.rejected.get(), result.failed);
+    }
+
+    @Test
+    public void rateLimitedCycle_scalesWithSims() throws Exception {
+        Benchmarks.assumeEnabled();
+        // 60 000 SMS/min por SIM: o ritmo real em escala reduzida
+        FakeSmsGateway single = gateway("SIM 1", 3).setLatency(1, 10);
+        CycleResult one = runCycle("ritmo limitado, 1 SIM", limited(single), MESSAGES);
+        report(one);
+
+        FakeSmsGateway first = gateway("SIM 1", 4).setLatency(1, 10);
+        FakeSmsGateway second = gateway("SIM 2", 5).setLatency(1, 10);
+        CycleResult two = runCycle("ritmo limitado, 2 SIM", limited(first, second), MESSAGES);
+        report(two);
+
+        assertEquals(MESSAGES, two.sent);
+        double speedup = two.messagesPerSecond / one.messagesPerSecond;
+        Benchmarks.report("2 SIM / 1 SIM: x%.2f", speedup);
+        assertTrue("x" + speedup, speedup > 1.6);
+        // Os dois SIM partilham a carga
+        assertTrue(Math.abs(first.submitted.get() - second.submitted.get()) < MESSAGES / 10);
+    }
+
+    @Test
+    public void deliveryReports_arriveOnlyForSentMessages() throws Exception {
+        FakeSmsGateway sim = gateway("SIM 1", 6)
+                .setLatency(0, 5)
+                .setFailures(0.05, SmsManager.RESULT_ERROR_NO_SERVICE, SmsManager.RESULT_ERROR_RADIO_OFF,
+                        SmsManager.RESULT_ERROR_NULL_PDU)
+                .setDeliveryReports(5, 0.1);
+        MultiSimDispatcher dispatcher = unlimited(sim);
+
+        int total = 1000;
+        final CountDownLatch done = new CountDownLatch(total);
+        final AtomicInteger sentOk = new AtomicInteger();
+        final AtomicInteger deliveredOk = new AtomicInteger();
+        final AtomicInteger deliveryFailed = new AtomicInteger();
+        for (int i = 0; i < total; i++) {
+            // Envio direto pelo SIM (como ApiService.sendSMS), sem esperar pelo ritmo
+            dispatcher.send(dispatcher.bestLane(), phone(i), "Teste " + i, true,
+                    new SmsGateway.Callback() {
+                        @Override
+                        public void onSent(boolean success, int resultCode) {
+                            if (success) {
+                                sentOk.incrementAndGet();
+                            } else {
+                                done.countDown();
+                            }
+                        }
+
+                        @Override
+                        public void onDelivered(boolean delivered) {
+                            (delivered ? deliveredOk : deliveryFailed).incrementAndGet();
+                            done.countDown();
+                        }
+                    });
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(sentOk.get(), deliveredOk.get() + deliveryFailed.get());
+        assertTrue(deliveryFailed.get() > 0 && deliveryFailed.get() < sentOk.get() / 5);
+        assertEquals(3, sim.failuresByCode.size());
+    }
+
+    // ============ AUXILIARES ============
+
+    private static class CycleResult {
+        String label;
+        int sent;
+        int failed;
+        double elapsedSeconds;
+        double messagesPerSecond;
+        long[] latencies;   // ordenadas, em ns
+    }
+
+    private CycleResult runCycle(String label, MultiSimDispatcher dispatcher, int messages) throws Exception {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        SmsDispatchEngine engine = new SmsDispatchEngine(null, outbox, dispatcher);
+        engines.add(engine);
+
+        List<ApiService.Patient> patients = new ArrayList<>(messages);
+        for (int i = 0; i < messages; i++) {
+            patients.add(new ApiService.Patient(i + 1, "Paciente " + i, phone(i), i % 2 == 0 ? "F" : "M",
+                    "Pendente", "a sua consulta está marcada para amanhã às 09:00."));
+        }
+
+        final String[] batchId = new String[1];
+        final CountDownLatch started = new CountDownLatch(1);
+        long start = System.nanoTime();
+        engine.startBatch(1, patients, ApiService.Patient::getFormattedMessage,
+                new SmsDispatchEngine.CycleBatchCallback() {
+                    @Override
+                    public void onResume(SmsOutbox.Batch batch, int interrupted) {
+                    }
+
+                    @Override
+                    public void onNewBatch(String id) {
+                        batchId[0] = id;
+                        started.countDown();
+                    }
+                });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        long deadline = start + CYCLE_TIMEOUT_MS * 1000000L;
+        while (!outbox.isFinished(batchId[0])) {
+            assertTrue(label + ": ciclo não terminou", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+        long elapsedNs = System.nanoTime() - start;
+
+        List<InMemoryOutbox.Entry> entries = outbox.entries(batchId[0]);
+        long[] latencies = new long[entries.size()];
+        CycleResult result = new CycleResult();
+        result.label = label;
+        for (int i = 0; i < entries.size(); i++) {
+            InMemoryOutbox.Entry entry = entries.get(i);
+            latencies[i] = entry.finishedAt - entry.claimedAt;
+            if (SmsOutbox.STATE_SENT.equals(entry.state)) {
+                result.sent++;
+            } else {
+                result.failed++;
+            }
+        }
+        Arrays.sort(latencies);
+        result.latencies = latencies;
+        result.elapsedSeconds = elapsedNs / 1e9;
+        result.messagesPerSecond = entries.size() / result.elapsedSeconds;
+        return result;
+    }
+
+    private static void report(CycleResult result) {
+        long[] latencies = result.latencies;
+        Benchmarks.report("%s: %d mensagens em %.2f s = %.0f msg/s, %d falhas | latência p50 %.1f ms, " +
+                        "p95 %.1f ms, p99 %.1f ms, máx %.1f ms",
+                result.label, latencies.length, result.elapsedSeconds, result.messagesPerSecond, result.failed,
+                percentileMs(latencies, 0.50), percentileMs(latencies, 0.95),
+                percentileMs(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private FakeSmsGateway gateway(String name, long seed) {
+        FakeSmsGateway gateway = new FakeSmsGateway(name, seed);
+        gateways.add(gateway);
+        return gateway;
+    }
+
+    private static MultiSimDispatcher unlimited(FakeSmsGateway... sims) {
+        List<SmsRateGovernor> governors = new ArrayList<>();
+        for (int i = 0; i < sims.length; i++) {
+            governors.add(new SmsRateGovernor(1000, 60000000, MESSAGES * 2));
+        }
+        return new MultiSimDispatcher(Arrays.asList(sims), governors);
+    }
+
+    private static MultiSimDispatcher limited(FakeSmsGateway... sims) {
+        List<SmsRateGovernor> governors = new ArrayList<>();
+        for (int i = 0; i < sims.length; i++) {
+            governors.add(new SmsRateGovernor(5, 60000, MESSAGES * 2));
+        }
+        return new MultiSimDispatcher(Arrays.asList(sims), governors);
+    }
+
+    private static String phone(int i) {
+        return String.format(Locale.ROOT, "9%08d", i);
+    }
+}
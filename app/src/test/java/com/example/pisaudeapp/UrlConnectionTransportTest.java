@@ -0,0 +1,179 @@
+package com.example.pisaudeapp;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do {@link UrlConnectionTransport} contra um servidor HTTP local que
+ * faz de /api/observation: gzip, reutilização de conexões e comparação de
+ * bytes/latência com e sem compressão (esta só com -Pbenchmarks).
+ */
+public class UrlConnectionTransportTest {
+
+    private static final int RECORDS = 20000;
+    private static final int ROUNDS = 20;
+
+    private HttpServer server;
+    private String url;
+    private byte[] plainBody;
+    private byte[] gzipBody;
+    // Portas de origem vistas pelo servidor = conexões TCP abertas
+    private final Set<Integer> connections = Collections.synchronizedSet(new HashSet<>());
+
+    @Before
+    public void setUp() throws Exception {
+        plainBody = PatientJsonStreamParserTest.buildFixture(RECORDS).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(plainBody);
+        }
+        gzipBody = compressed.toByteArray();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/observation", exchange -> {
+            connections.add(exchange.getRemoteAddress().getPort());
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+            byte[] body = gzip ? gzipBody : plainBody;
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+            if (gzip) {
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/api/empty", exchange -> {
+            connections.add(exchange.getRemoteAddress().getPort());
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void gzipResponse_isDecodedTransparently() throws Exception {
+        HttpTransport transport = new UrlConnectionTransport(true, 5);
+        HttpTransport.Response response = get(transport, "/api/observation");
+
+        byte[] body = readFully(response.body);
+        assertEquals(200, response.statusCode);
+        assertArrayEquals(plainBody, body);
+        assertEquals(gzipBody.length, response.getWireBytes());
+        assertTrue(response.getWireBytes() * 4 < plainBody.length);
+        assertEquals(-1, response.contentLength);
+        for (String name : response.headers.keySet()) {
+            assertFalse("Content-Encoding".equalsIgnoreCase(name));
+            assertFalse("Content-Length".equalsIgnoreCase(name));
+        }
+        assertEquals(RECORDS, PatientJsonStreamParser.parseAll(
+                new java.io.ByteArrayInputStream(body), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void identityResponse_isPassedThrough() throws Exception {
+        HttpTransport transport = new UrlConnectionTransport(false, 5);
+        HttpTransport.Response response = get(transport, "/api/observation");
+
+        assertArrayEquals(plainBody, readFully(response.body));
+        assertEquals(plainBody.length, response.getWireBytes());
+        assertEquals(plainBody.length, response.contentLength);
+    }
+
+    @Test
+    public void noContent_hasNoBody() throws Exception {
+        HttpTransport.Response response = get(new UrlConnectionTransport(true, 5), "/api/empty");
+        assertEquals(204, response.statusCode);
+        assertNull(response.body);
+    }
+
+    @Test
+    public void sequentialRequests_reuseConnection() throws Exception {
+        HttpTransport transport = new UrlConnectionTransport(true, 5);
+        for (int i = 0; i < ROUNDS; i++) {
+            readFully(get(transport, "/api/observation").body);
+        }
+        // Com keep-alive, os pedidos seguidos vão todos pelo mesmo socket
+        assertTrue("conexões abertas: " + connections.size(), connections.size() <= 2);
+    }
+
+    @Test
+    public void benchmark_gzipVsIdentity() throws Exception {
+        Benchmarks.assumeEnabled();
+        HttpTransport gzip = new UrlConnectionTransport(true, 5);
+        HttpTransport identity = new UrlConnectionTransport(false, 5);
+
+        // Aquecimento
+        for (int i = 0; i < 3; i++) {
+            readFully(get(gzip, "/api/observation").body);
+            readFully(get(identity, "/api/observation").body);
+        }
+
+        long gzipNanos = 0;
+        long identityNanos = 0;
+        long gzipWire = 0;
+        long identityWire = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long t0 = System.nanoTime();
+            HttpTransport.Response compressed = get(gzip, "/api/observation");
+            int compressedSize = readFully(compressed.body).length;
+            long t1 = System.nanoTime();
+            HttpTransport.Response plain = get(identity, "/api/observation");
+            int plainSize = readFully(plain.body).length;
+            long t2 = System.nanoTime();
+
+            assertEquals(plainSize, compressedSize);
+            gzipNanos += t1 - t0;
+            identityNanos += t2 - t1;
+            gzipWire += compressed.getWireBytes();
+            identityWire += plain.getWireBytes();
+        }
+
+        assertTrue(gzipWire * 4 < identityWire);
+        Benchmarks.report("GET de %d registos: identity %d KB em %.1f ms, gzip %d KB em %.1f ms (%d conexões)",
+                RECORDS, identityWire / ROUNDS / 1024, identityNanos / 1e6 / ROUNDS,
+                gzipWire / ROUNDS / 1024, gzipNanos / 1e6 / ROUNDS, connections.size());
+    }
+
+    private HttpTransport.Response get(HttpTransport transport, String path) throws IOException {
+        return transport.execute(new HttpTransport.Request("GET", url + path, null, null, 10000));
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            // Fechar depois de ler tudo devolve a conexão ao pool
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}